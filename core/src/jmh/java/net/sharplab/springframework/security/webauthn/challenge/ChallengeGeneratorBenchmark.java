@@ -0,0 +1,81 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link ChallengeGenerator} implementations under contention.
+ * <p>
+ * Run with <code>./gradlew :spring-security-webauthn-core:jmh -PjmhInclude=ChallengeGeneratorBenchmark</code>.
+ * Each thread count is a separate benchmark method as JMH fixes the thread count per method.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChallengeGeneratorBenchmark {
+
+    @Param({"default", "striped", "batched"})
+    public String generatorType;
+
+    private ChallengeGenerator generator;
+
+    @Setup
+    public void setup() {
+        switch (generatorType) {
+            case "striped":
+                generator = new StripedChallengeGenerator();
+                break;
+            case "batched":
+                generator = new BatchedChallengeGenerator();
+                break;
+            default:
+                generator = new DefaultChallengeGenerator();
+                break;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Challenge threads01() {
+        return generator.generate();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Challenge threads04() {
+        return generator.generate();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Challenge threads16() {
+        return generator.generate();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Challenge threads64() {
+        return generator.generate();
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.options;
+
+import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.data.client.challenge.Challenge;
+import net.sharplab.springframework.security.webauthn.challenge.ChallengeRepository;
+import net.sharplab.springframework.security.webauthn.challenge.HttpSessionChallengeRepository;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserCredentials;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetails;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetailsService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares building the options of the options endpoint with separate {@link OptionsProvider#getAttestationOptions}
+ * and {@link OptionsProvider#getAssertionOptions} calls against a single {@link OptionsProvider#getOptions} call.
+ * <p>
+ * Run with <code>./gradlew :spring-security-webauthn-core:jmh -PjmhInclude=OptionsProviderBenchmark</code>.
+ * The <code>userLoads</code> and <code>challengeAccesses</code> counters report store accesses per request. Add
+ * <code>-prof gc</code> to the JMH arguments to report the allocation rate per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OptionsProviderBenchmark {
+
+    @Param({"1", "10"})
+    public int credentialCount;
+
+    private OptionsProviderImpl optionsProvider;
+    private HttpServletRequest request;
+    private AccessCounters counters;
+
+    @Setup
+    public void setup() {
+        List<WebAuthnUserCredentials.Credential> credentials = new ArrayList<>();
+        for (int i = 0; i < credentialCount; i++) {
+            byte[] credentialId = new byte[64];
+            credentialId[0] = (byte) i;
+            credentials.add(new WebAuthnUserCredentials.Credential(credentialId, null));
+        }
+        WebAuthnUserCredentials userCredentials = new WebAuthnUserCredentials(new byte[32], credentials);
+        optionsProvider = new OptionsProviderImpl(
+                new CountingUserDetailsService(userCredentials, this),
+                new CountingChallengeRepository(new HttpSessionChallengeRepository(), this));
+        optionsProvider.setRpId("example.com");
+        optionsProvider.setRpName("example");
+        request = new MockHttpServletRequest();
+    }
+
+    @Benchmark
+    public void separate(AccessCounters counters, Blackhole blackhole) {
+        this.counters = counters;
+        blackhole.consume(optionsProvider.getAttestationOptions(request, "john", null));
+        blackhole.consume(optionsProvider.getAssertionOptions(request, "john", null));
+    }
+
+    @Benchmark
+    public AttestationAndAssertionOptions combined(AccessCounters counters) {
+        this.counters = counters;
+        return optionsProvider.getOptions(request, "john", null);
+    }
+
+    /**
+     * Store accesses, reported per benchmark operation
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class AccessCounters {
+        public long userLoads;
+        public long challengeAccesses;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            userLoads = 0;
+            challengeAccesses = 0;
+        }
+    }
+
+    private static class CountingUserDetailsService implements WebAuthnUserDetailsService {
+
+        private final WebAuthnUserCredentials userCredentials;
+        private final OptionsProviderBenchmark benchmark;
+
+        CountingUserDetailsService(WebAuthnUserCredentials userCredentials, OptionsProviderBenchmark benchmark) {
+            this.userCredentials = userCredentials;
+            this.benchmark = benchmark;
+        }
+
+        @Override
+        public WebAuthnUserCredentials loadCredentialsByUsername(String username) {
+            benchmark.counters.userLoads++;
+            return userCredentials;
+        }
+
+        @Override
+        public WebAuthnUserDetails loadUserByUsername(String username) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public WebAuthnUserDetails loadUserByCredentialId(byte[] credentialId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addAuthenticator(String username, Authenticator authenticator) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void removeAuthenticator(String username, Authenticator authenticator) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void removeAuthenticator(String username, byte[] credentialId) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class CountingChallengeRepository implements ChallengeRepository {
+
+        private final ChallengeRepository delegate;
+        private final OptionsProviderBenchmark benchmark;
+
+        CountingChallengeRepository(ChallengeRepository delegate, OptionsProviderBenchmark benchmark) {
+            this.delegate = delegate;
+            this.benchmark = benchmark;
+        }
+
+        @Override
+        public Challenge generateChallenge() {
+            return delegate.generateChallenge();
+        }
+
+        @Override
+        public void saveChallenge(Challenge challenge, HttpServletRequest request) {
+            benchmark.counters.challengeAccesses++;
+            delegate.saveChallenge(challenge, request);
+        }
+
+        @Override
+        public Challenge loadChallenge(HttpServletRequest request) {
+            benchmark.counters.challengeAccesses++;
+            return delegate.loadChallenge(request);
+        }
+    }
+}
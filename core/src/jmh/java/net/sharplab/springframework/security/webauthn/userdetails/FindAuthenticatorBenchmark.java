@@ -0,0 +1,77 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.authenticator.AuthenticatorImpl;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the linear authenticator lookup with the indexed {@link WebAuthnUserDetailsImpl#findAuthenticator(byte[])}
+ * across authenticator counts.
+ * <p>
+ * Run with <code>./gradlew :spring-security-webauthn-core:jmh -PjmhInclude=FindAuthenticatorBenchmark</code>.
+ * The last registered authenticator is looked up, which is the worst case for the linear lookup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FindAuthenticatorBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int authenticatorCount;
+
+    private WebAuthnUserDetailsImpl userDetails;
+    private byte[] credentialId;
+
+    @Setup
+    public void setup() {
+        List<Authenticator> authenticators = new ArrayList<>(authenticatorCount);
+        for (int i = 0; i < authenticatorCount; i++) {
+            // credentialIds share a long prefix as real ones often do, so that each comparison is not trivial
+            byte[] id = ByteBuffer.allocate(64).putInt(60, i).array();
+            authenticators.add(new AuthenticatorImpl(new AttestedCredentialData(AAGUID.ZERO, id, null), null, 0));
+        }
+        userDetails = new WebAuthnUserDetailsImpl(new byte[32], "john", "password", authenticators, Collections.emptyList());
+        credentialId = ByteBuffer.allocate(64).putInt(60, authenticatorCount - 1).array();
+    }
+
+    @Benchmark
+    public Authenticator linear() {
+        return userDetails.getAuthenticators().stream()
+                .filter(item -> Arrays.equals(item.getAttestedCredentialData().getCredentialId(), credentialId))
+                .findFirst()
+                .orElse(null);
+    }
+
+    @Benchmark
+    public Authenticator indexed() {
+        return userDetails.findAuthenticator(credentialId);
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn;
+
+import com.webauthn4j.converter.CollectedClientDataConverter;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.client.ClientDataType;
+import com.webauthn4j.data.client.CollectedClientData;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.server.ServerProperty;
+import com.webauthn4j.util.exception.WebAuthnException;
+import net.sharplab.springframework.security.webauthn.exception.*;
+import net.sharplab.springframework.security.webauthn.request.WebAuthnAuthenticationRequest;
+import net.sharplab.springframework.security.webauthn.util.ExceptionUtil;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Validates the parts of an assertion which don't depend on the stored authenticator, so that garbage and replayed
+ * assertions are rejected before the user is looked up.
+ * <p>
+ * The checks are ordered by cost. The RP ID hash and the UP/UV flags are read from the fixed-size header of
+ * authenticatorData without decoding it. Then clientDataJSON is parsed once to check the type, the challenge and the
+ * origin. An assertion which passes is still fully validated by {@link com.webauthn4j.WebAuthnManager}.
+ */
+public class AssertionPreValidator {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+    private static final int RP_ID_HASH_LENGTH = 32;
+    private static final int FLAGS_OFFSET = RP_ID_HASH_LENGTH;
+    private static final int MIN_AUTHENTICATOR_DATA_LENGTH = RP_ID_HASH_LENGTH + 1 + 4;
+    private static final byte FLAG_UP = 0x01;
+    private static final byte FLAG_UV = 0x04;
+    private static final int MAX_CACHED_RP_IDS = 64;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final CollectedClientDataConverter collectedClientDataConverter;
+    private final ConcurrentHashMap<String, byte[]> rpIdHashes = new ConcurrentHashMap<>();
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public AssertionPreValidator(ObjectConverter objectConverter) {
+        Assert.notNull(objectConverter, "objectConverter must not be null");
+        this.collectedClientDataConverter = new CollectedClientDataConverter(objectConverter);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Validates the assertion without accessing the user store
+     *
+     * @param credentials              the assertion
+     * @param userVerificationRequired true if user verification is required regardless of the user
+     * @throws ValidationException     if the assertion is invalid
+     * @throws DataConversionException if the assertion is malformed
+     */
+    public void validate(WebAuthnAuthenticationRequest credentials, boolean userVerificationRequired) {
+        ServerProperty serverProperty = credentials.getServerProperty();
+        if (serverProperty == null) {
+            throw new MissingChallengeException("Server property is not provided");
+        }
+
+        byte[] authenticatorData = credentials.getAuthenticatorData();
+        if (authenticatorData == null || authenticatorData.length < MIN_AUTHENTICATOR_DATA_LENGTH) {
+            throw new DataConversionException("authenticatorData is too short");
+        }
+        validateRpIdHash(authenticatorData, serverProperty.getRpId());
+        validateFlags(authenticatorData[FLAGS_OFFSET], credentials.isUserPresenceRequired(), userVerificationRequired);
+
+        Challenge expectedChallenge = serverProperty.getChallenge();
+        if (expectedChallenge == null) {
+            throw new MissingChallengeException("Challenge is not stored or has already been used");
+        }
+
+        CollectedClientData collectedClientData = parseClientData(credentials.getClientDataJSON());
+        if (collectedClientData.getType() != ClientDataType.GET) {
+            throw new InconsistentClientDataTypeException("ClientData.type must be 'get' on authentication");
+        }
+        Challenge actualChallenge = collectedClientData.getChallenge();
+        if (actualChallenge == null || !MessageDigest.isEqual(actualChallenge.getValue(), expectedChallenge.getValue())) {
+            throw new BadChallengeException("The challenge doesn't match");
+        }
+        if (!Objects.equals(collectedClientData.getOrigin(), serverProperty.getOrigin())) {
+            throw new BadOriginException("The origin doesn't match");
+        }
+    }
+
+    private void validateRpIdHash(byte[] authenticatorData, String rpId) {
+        byte[] expected = rpIdHash(rpId);
+        int diff = 0;
+        for (int i = 0; i < RP_ID_HASH_LENGTH; i++) {
+            diff |= expected[i] ^ authenticatorData[i];
+        }
+        if (diff != 0) {
+            throw new BadRpIdException("rpIdHash doesn't match the hash of preconfigured rpId.");
+        }
+    }
+
+    private void validateFlags(byte flags, boolean userPresenceRequired, boolean userVerificationRequired) {
+        if (userVerificationRequired && (flags & FLAG_UV) == 0) {
+            throw new UserNotVerifiedException("Validator is configured to check user verified, but UV flag in authenticatorData is not set.");
+        }
+        if (userPresenceRequired && (flags & FLAG_UP) == 0) {
+            throw new UserNotPresentException("Validator is configured to check user present, but UP flag in authenticatorData is not set.");
+        }
+    }
+
+    private CollectedClientData parseClientData(byte[] clientDataJSON) {
+        if (clientDataJSON == null) {
+            throw new DataConversionException("clientDataJSON is not provided");
+        }
+        CollectedClientData collectedClientData;
+        try {
+            collectedClientData = collectedClientDataConverter.convert(clientDataJSON);
+        } catch (WebAuthnException e) {
+            throw ExceptionUtil.wrapWithAuthenticationException(e);
+        }
+        if (collectedClientData == null) {
+            throw new DataConversionException("clientDataJSON is empty");
+        }
+        return collectedClientData;
+    }
+
+    private byte[] rpIdHash(String rpId) {
+        if (rpId == null) {
+            throw new BadRpIdException("rpId is not configured");
+        }
+        byte[] hash = rpIdHashes.get(rpId);
+        if (hash == null) {
+            hash = sha256(rpId.getBytes(StandardCharsets.UTF_8));
+            // rpId is configured on the server side, so only a handful of values are expected
+            if (rpIdHashes.size() < MAX_CACHED_RP_IDS) {
+                rpIdHashes.putIfAbsent(rpId, hash);
+            }
+        }
+        return hash;
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -21,6 +21,7 @@ import com.webauthn4j.authenticator.Authenticator;
 import com.webauthn4j.data.AuthenticationParameters;
 import com.webauthn4j.data.AuthenticationRequest;
 import com.webauthn4j.util.exception.WebAuthnException;
+import net.sharplab.springframework.security.webauthn.authenticator.VerificationKeyCache;
 import net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticatorService;
 import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
 import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetails;
@@ -39,7 +40,6 @@ import org.springframework.security.core.userdetails.UserDetailsChecker;
 import org.springframework.util.Assert;
 
 import java.io.Serializable;
-import java.util.Arrays;
 import java.util.Objects;
 
 /**
@@ -61,6 +61,8 @@ public class WebAuthnAuthenticationProvider implements AuthenticationProvider {
     private UserDetailsChecker preAuthenticationChecks = new DefaultPreAuthenticationChecks();
     private UserDetailsChecker postAuthenticationChecks = new DefaultPostAuthenticationChecks();
     private GrantedAuthoritiesMapper authoritiesMapper = new NullAuthoritiesMapper();
+    private AssertionPreValidator assertionPreValidator;
+    private VerificationKeyCache verificationKeyCache;
 
     // ~ Constructor
     // ========================================================================================================
@@ -105,14 +107,26 @@ public class WebAuthnAuthenticationProvider implements AuthenticationProvider {
 
         byte[] credentialId = credentials.getCredentialId();
 
+        if (assertionPreValidator != null) {
+            assertionPreValidator.validate(credentials, isUserVerificationRequired(null, credentials));
+        }
+
         WebAuthnUserDetails user = retrieveWebAuthnUserDetails(credentialId);
-        Authenticator authenticator = user.getAuthenticators().stream()
-                .filter(item -> Arrays.equals(item.getAttestedCredentialData().getCredentialId(), credentialId))
-                .findFirst()
-                .orElse(null);
+        Authenticator authenticator = user.findAuthenticator(credentialId);
+        if (authenticator != null) {
+            // the stored counter may lag behind if the counter is updated asynchronously
+            Long latestCounter = authenticatorService.getLatestCounter(credentialId);
+            if (latestCounter != null && latestCounter > authenticator.getCounter()) {
+                authenticator.setCounter(latestCounter);
+            }
+        }
 
         preAuthenticationChecks.check(user);
-        doAuthenticate(authenticationToken, authenticator, user);
+        if (verificationKeyCache != null) {
+            doAuthenticate(authenticationToken, verificationKeyCache.wrap(authenticator), user);
+        } else {
+            doAuthenticate(authenticationToken, authenticator, user);
+        }
         postAuthenticationChecks.check(user);
 
         //noinspection ConstantConditions
@@ -197,6 +211,34 @@ public class WebAuthnAuthenticationProvider implements AuthenticationProvider {
         this.hideCredentialIdNotFoundExceptions = hideCredentialIdNotFoundExceptions;
     }
 
+    public AssertionPreValidator getAssertionPreValidator() {
+        return assertionPreValidator;
+    }
+
+    /**
+     * Sets the {@link AssertionPreValidator} which rejects invalid assertions before the user is looked up.
+     * Pre-validation is disabled if not set.
+     *
+     * @param assertionPreValidator the {@link AssertionPreValidator}
+     */
+    public void setAssertionPreValidator(AssertionPreValidator assertionPreValidator) {
+        this.assertionPreValidator = assertionPreValidator;
+    }
+
+    public VerificationKeyCache getVerificationKeyCache() {
+        return verificationKeyCache;
+    }
+
+    /**
+     * Sets the {@link VerificationKeyCache} which serves the public keys of authenticators.
+     * Public keys are rebuilt from the COSE key on every authentication if not set.
+     *
+     * @param verificationKeyCache the {@link VerificationKeyCache}
+     */
+    public void setVerificationKeyCache(VerificationKeyCache verificationKeyCache) {
+        this.verificationKeyCache = verificationKeyCache;
+    }
+
     protected WebAuthnUserDetailsService getUserDetailsService() {
         return userDetailsService;
     }
@@ -255,7 +297,9 @@ public class WebAuthnAuthenticationProvider implements AuthenticationProvider {
         Authentication currentAuthentication = SecurityContextHolder.getContext().getAuthentication();
 
         // If current authentication is authenticated and username matches, return false
-        if (currentAuthentication != null && currentAuthentication.isAuthenticated() && Objects.equals(currentAuthentication.getName(), user.getUsername())) {
+        // If user is null (not looked up yet), any authenticated user may turn out to match
+        if (currentAuthentication != null && currentAuthentication.isAuthenticated()
+                && (user == null || Objects.equals(currentAuthentication.getName(), user.getUsername()))) {
             return false;
         } else {
             return credentials.isUserVerificationRequired();
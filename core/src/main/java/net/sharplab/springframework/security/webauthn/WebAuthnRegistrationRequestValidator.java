@@ -23,6 +23,7 @@ import com.webauthn4j.data.RegistrationRequest;
 import com.webauthn4j.server.ServerProperty;
 import com.webauthn4j.util.Base64UrlUtil;
 import com.webauthn4j.util.exception.WebAuthnException;
+import net.sharplab.springframework.security.webauthn.challenge.ChallengeRepository;
 import net.sharplab.springframework.security.webauthn.server.ServerPropertyProvider;
 import net.sharplab.springframework.security.webauthn.util.ExceptionUtil;
 import org.springframework.util.Assert;
@@ -77,6 +78,8 @@ public class WebAuthnRegistrationRequestValidator {
 
         RegistrationRequest webAuthnRegistrationRequest =
                 createRegistrationRequest(clientDataBase64url, attestationObjectBase64url, transports, clientExtensionsJSON);
+        // lets repositories which recover the echoed challenge find it even if clientDataJSON is not a request parameter
+        httpServletRequest.setAttribute(ChallengeRepository.CLIENT_DATA_JSON_ATTR_NAME, clientDataBase64url);
         RegistrationParameters webAuthnRegistrationParameters =
                 createRegistrationParameters(httpServletRequest);
 
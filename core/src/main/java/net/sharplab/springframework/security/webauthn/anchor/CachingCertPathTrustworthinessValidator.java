@@ -0,0 +1,239 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.anchor;
+
+import com.webauthn4j.anchor.TrustAnchorsResolver;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.statement.AttestationCertificatePath;
+import com.webauthn4j.data.attestation.statement.CertificateBaseAttestationStatement;
+import com.webauthn4j.util.MessageDigestUtil;
+import com.webauthn4j.validator.attestation.trustworthiness.certpath.TrustAnchorCertPathTrustworthinessValidator;
+import net.sharplab.springframework.security.webauthn.util.ExpiringCache;
+import org.springframework.util.Assert;
+
+import java.security.MessageDigest;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A {@link TrustAnchorCertPathTrustworthinessValidator} which remembers successfully validated attestation
+ * certificate paths.
+ * <p>
+ * Authenticators of the same model share their attestation certificate and chain, so a burst of registrations
+ * validates the same path again and again. The result of a successful PKIX validation is cached, keyed by the AAGUID
+ * and a SHA-256 hash of the whole x5c chain, including the attestation certificate. A cached result is only used
+ * while the trust anchors resolved for the AAGUID are still the ones it was validated against, and expires when the
+ * first certificate of the chain expires. Failed validations are not cached.
+ */
+public class CachingCertPathTrustworthinessValidator extends TrustAnchorCertPathTrustworthinessValidator {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+    private static final int DEFAULT_MAX_SIZE = 1_000;
+    private static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofHours(1);
+
+    //~ Instance fields
+    // ================================================================================================
+    private final ExpiringCache<CertPathKey, ValidatedCertPath> cache;
+    private Clock clock = Clock.systemUTC();
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor with default max size (1,000) and time-to-live (1 hour)
+     *
+     * @param trustAnchorsResolver resolver for {@link TrustAnchor}s
+     */
+    public CachingCertPathTrustworthinessValidator(TrustAnchorsResolver trustAnchorsResolver) {
+        this(trustAnchorsResolver, DEFAULT_MAX_SIZE, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param trustAnchorsResolver resolver for {@link TrustAnchor}s
+     * @param maxSize              the maximum number of cached certificate paths
+     * @param timeToLive           the duration after which a cached result expires even if the certificates are still valid
+     */
+    public CachingCertPathTrustworthinessValidator(TrustAnchorsResolver trustAnchorsResolver, int maxSize, Duration timeToLive) {
+        super(trustAnchorsResolver);
+        this.cache = new ExpiringCache<>(maxSize, timeToLive);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void validate(AAGUID aaguid, CertificateBaseAttestationStatement attestationStatement) {
+        AttestationCertificatePath x5c = attestationStatement.getX5c();
+        CertPathKey key = createKey(aaguid, x5c);
+        if (key == null) {
+            super.validate(aaguid, attestationStatement);
+            return;
+        }
+        Set<TrustAnchor> trustAnchors = resolveTrustAnchors(aaguid);
+        ValidatedCertPath validated = cache.get(key);
+        if (validated != null && validated.isValidFor(trustAnchors, clock.instant())) {
+            return;
+        }
+        super.validate(aaguid, attestationStatement);
+        cache.put(key, new ValidatedCertPath(trustAnchors, getNotAfter(x5c)));
+    }
+
+    /**
+     * {@inheritDoc}
+     * Cached results are discarded, since they were validated with the former setting.
+     */
+    @Override
+    public void setFullChainProhibited(boolean fullChainProhibited) {
+        super.setFullChainProhibited(fullChainProhibited);
+        invalidateAll();
+    }
+
+    /**
+     * Discards all the cached results
+     */
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    public int getSize() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    public void setClock(Clock clock) {
+        Assert.notNull(clock, "clock must not be null");
+        this.clock = clock;
+        cache.setClock(clock);
+    }
+
+    private static CertPathKey createKey(AAGUID aaguid, AttestationCertificatePath x5c) {
+        if (x5c == null || x5c.isEmpty()) {
+            return null;
+        }
+        MessageDigest messageDigest = MessageDigestUtil.createSHA256();
+        try {
+            for (X509Certificate certificate : x5c) {
+                byte[] encoded = certificate.getEncoded();
+                messageDigest.update((byte) (encoded.length >>> 24));
+                messageDigest.update((byte) (encoded.length >>> 16));
+                messageDigest.update((byte) (encoded.length >>> 8));
+                messageDigest.update((byte) encoded.length);
+                messageDigest.update(encoded);
+            }
+        } catch (CertificateEncodingException e) {
+            // not cacheable, validated without the cache
+            return null;
+        }
+        return new CertPathKey(aaguid, messageDigest.digest());
+    }
+
+    private static Instant getNotAfter(AttestationCertificatePath x5c) {
+        Instant notAfter = Instant.MAX;
+        for (X509Certificate certificate : x5c) {
+            Instant certificateNotAfter = certificate.getNotAfter().toInstant();
+            if (certificateNotAfter.isBefore(notAfter)) {
+                notAfter = certificateNotAfter;
+            }
+        }
+        return notAfter;
+    }
+
+    private static final class CertPathKey {
+
+        private final AAGUID aaguid;
+        private final byte[] digest;
+        private final int hashCode;
+
+        CertPathKey(AAGUID aaguid, byte[] digest) {
+            this.aaguid = aaguid;
+            this.digest = digest;
+            this.hashCode = 31 * Objects.hashCode(aaguid) + Arrays.hashCode(digest);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            CertPathKey that = (CertPathKey) o;
+            return Objects.equals(aaguid, that.aaguid) &&
+                    Arrays.equals(digest, that.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class ValidatedCertPath {
+
+        private final Set<TrustAnchor> trustAnchors;
+        private final Set<Object> comparableTrustAnchors;
+        private final Instant notAfter;
+
+        ValidatedCertPath(Set<TrustAnchor> trustAnchors, Instant notAfter) {
+            this.trustAnchors = trustAnchors;
+            this.comparableTrustAnchors = toComparable(trustAnchors);
+            this.notAfter = notAfter;
+        }
+
+        boolean isValidFor(Set<TrustAnchor> currentTrustAnchors, Instant now) {
+            if (!now.isBefore(notAfter)) {
+                return false;
+            }
+            // resolvers such as IndexedTrustAnchorsResolver return the same set until the anchors change
+            return trustAnchors == currentTrustAnchors || comparableTrustAnchors.equals(toComparable(currentTrustAnchors));
+        }
+
+        /**
+         * {@link TrustAnchor} has no value equality, so anchors are compared by their trusted certificate,
+         * or by their CA name and public key.
+         */
+        private static Set<Object> toComparable(Set<TrustAnchor> trustAnchors) {
+            Set<Object> comparable = new HashSet<>();
+            for (TrustAnchor trustAnchor : trustAnchors) {
+                if (trustAnchor.getTrustedCert() != null) {
+                    comparable.add(trustAnchor.getTrustedCert());
+                } else {
+                    comparable.add(Arrays.asList(trustAnchor.getCA(), trustAnchor.getCAPublicKey()));
+                }
+            }
+            return comparable;
+        }
+    }
+}
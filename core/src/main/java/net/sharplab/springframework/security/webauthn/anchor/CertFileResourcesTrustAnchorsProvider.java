@@ -16,19 +16,20 @@
 
 package net.sharplab.springframework.security.webauthn.anchor;
 
-import com.webauthn4j.anchor.CachingTrustAnchorsProviderBase;
 import com.webauthn4j.anchor.TrustAnchorsProvider;
 import com.webauthn4j.data.attestation.authenticator.AAGUID;
 import com.webauthn4j.util.AssertUtil;
 import com.webauthn4j.util.CertificateUtil;
-import org.springframework.beans.factory.InitializingBean;
 import org.springframework.core.io.Resource;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.security.cert.TrustAnchor;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -37,12 +38,13 @@ import java.util.stream.Collectors;
 /**
  * An implementation of {@link TrustAnchorsProvider} that loads {@link TrustAnchor}(s) from X.509 certificate file in Spring {@link Resource}
  */
-public class CertFileResourcesTrustAnchorsProvider extends CachingTrustAnchorsProviderBase implements InitializingBean {
+public class CertFileResourcesTrustAnchorsProvider extends ReloadingTrustAnchorsProviderBase {
 
     // ~ Instance fields
     // ================================================================================================
 
     private List<Resource> certificates;
+    private Map<AAGUID, List<Resource>> aaguidCertificates = Collections.emptyMap();
 
     // ~ Constructor
     // ========================================================================================================
@@ -60,6 +62,7 @@ public class CertFileResourcesTrustAnchorsProvider extends CachingTrustAnchorsPr
     @Override
     public void afterPropertiesSet() {
         checkConfig();
+        super.afterPropertiesSet();
     }
 
     private void checkConfig() {
@@ -68,14 +71,30 @@ public class CertFileResourcesTrustAnchorsProvider extends CachingTrustAnchorsPr
 
     /**
      * Retrieves {@link TrustAnchor}s from {@link Resource}s.
+     * {@link #getCertificates()} are trusted for every AAGUID, {@link #getAaguidCertificates()} only for their AAGUID.
      *
-     * @return null key {@link TrustAnchor} {@link Set} value {@link Map}
+     * @return AAGUID key {@link TrustAnchor} {@link Set} value {@link Map}
      */
     @Override
     protected Map<AAGUID, Set<TrustAnchor>> loadTrustAnchors() {
         checkConfig();
-        Set<TrustAnchor> trustAnchors = certificates.stream().map(this::loadTrustAnchor).collect(Collectors.toSet());
-        return Collections.singletonMap(AAGUID.NULL, trustAnchors);
+        Map<AAGUID, Set<TrustAnchor>> trustAnchors = new HashMap<>();
+        trustAnchors.put(AAGUID.NULL, certificates.stream().map(this::loadTrustAnchor).collect(Collectors.toSet()));
+        for (Map.Entry<AAGUID, List<Resource>> entry : aaguidCertificates.entrySet()) {
+            trustAnchors.computeIfAbsent(entry.getKey(), key -> new HashSet<>())
+                    .addAll(entry.getValue().stream().map(this::loadTrustAnchor).collect(Collectors.toSet()));
+        }
+        return trustAnchors;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected List<Resource> getWatchedResources() {
+        List<Resource> resources = certificates == null ? new ArrayList<>() : new ArrayList<>(certificates);
+        aaguidCertificates.values().forEach(resources::addAll);
+        return resources;
     }
 
     public List<Resource> getCertificates() {
@@ -86,6 +105,20 @@ public class CertFileResourcesTrustAnchorsProvider extends CachingTrustAnchorsPr
         this.certificates = certificates;
     }
 
+    public Map<AAGUID, List<Resource>> getAaguidCertificates() {
+        return aaguidCertificates;
+    }
+
+    /**
+     * Sets certificates which are trusted only for the AAGUID they are keyed by
+     *
+     * @param aaguidCertificates AAGUID key certificate {@link Resource} {@link List} value {@link Map}
+     */
+    public void setAaguidCertificates(Map<AAGUID, List<Resource>> aaguidCertificates) {
+        AssertUtil.notNull(aaguidCertificates, "aaguidCertificates must not be null");
+        this.aaguidCertificates = aaguidCertificates;
+    }
+
     TrustAnchor loadTrustAnchor(Resource certificate) {
         try {
             X509Certificate x509Certificate = CertificateUtil.generateX509Certificate(certificate.getInputStream());
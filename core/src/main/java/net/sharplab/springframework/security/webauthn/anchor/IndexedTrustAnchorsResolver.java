@@ -0,0 +1,108 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.anchor;
+
+import com.webauthn4j.anchor.TrustAnchorsProvider;
+import com.webauthn4j.anchor.TrustAnchorsResolver;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import org.springframework.util.Assert;
+
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link TrustAnchorsResolver} which resolves {@link TrustAnchor}s from a {@link TrustAnchorIndex}.
+ * <p>
+ * The index is rebuilt only when the {@link TrustAnchorsProvider} returns a different map, which a
+ * {@link com.webauthn4j.anchor.CachingTrustAnchorsProviderBase} does only after reloading. The index published by a
+ * {@link ReloadingTrustAnchorsProviderBase} is used as is. In contrast to
+ * {@link com.webauthn4j.anchor.TrustAnchorsResolverImpl}, the same unmodifiable set is returned for an AAGUID until
+ * then, instead of a new copy on each call.
+ * <p>
+ * Providers which build a new map on every call make this resolver rebuild the index on every call. Use
+ * {@link com.webauthn4j.anchor.TrustAnchorsResolverImpl} for those.
+ */
+public class IndexedTrustAnchorsResolver implements TrustAnchorsResolver {
+
+    //~ Instance fields
+    // ================================================================================================
+    private final TrustAnchorsProvider trustAnchorsProvider;
+    private volatile Snapshot snapshot;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public IndexedTrustAnchorsResolver(TrustAnchorsProvider trustAnchorsProvider) {
+        Assert.notNull(trustAnchorsProvider, "trustAnchorsProvider must not be null");
+        this.trustAnchorsProvider = trustAnchorsProvider;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<TrustAnchor> resolve(AAGUID aaguid) {
+        Assert.notNull(aaguid, "aaguid must not be null");
+        return getIndex().find(aaguid);
+    }
+
+    /**
+     * Resolves the {@link TrustAnchor}s trusted for the AAGUID which may have issued the certificate
+     *
+     * @param aaguid      aaguid
+     * @param certificate the last certificate of a certificate path
+     * @return {@link TrustAnchor} {@link Set}
+     */
+    public Set<TrustAnchor> resolve(AAGUID aaguid, X509Certificate certificate) {
+        Assert.notNull(aaguid, "aaguid must not be null");
+        return getIndex().findIssuerCandidates(aaguid, certificate);
+    }
+
+    /**
+     * Returns the index of the current {@link TrustAnchor}s
+     *
+     * @return {@link TrustAnchorIndex}
+     */
+    public TrustAnchorIndex getIndex() {
+        if (trustAnchorsProvider instanceof ReloadingTrustAnchorsProviderBase) {
+            return ((ReloadingTrustAnchorsProviderBase) trustAnchorsProvider).getIndex();
+        }
+        Map<AAGUID, Set<TrustAnchor>> trustAnchors = trustAnchorsProvider.provide();
+        Snapshot current = snapshot;
+        if (current == null || current.source != trustAnchors) {
+            current = new Snapshot(trustAnchors, new TrustAnchorIndex(trustAnchors));
+            snapshot = current;
+        }
+        return current.index;
+    }
+
+    private static final class Snapshot {
+
+        private final Map<AAGUID, Set<TrustAnchor>> source;
+        private final TrustAnchorIndex index;
+
+        Snapshot(Map<AAGUID, Set<TrustAnchor>> source, TrustAnchorIndex index) {
+            this.source = source;
+            this.index = index;
+        }
+    }
+}
@@ -16,13 +16,11 @@
 
 package net.sharplab.springframework.security.webauthn.anchor;
 
-import com.webauthn4j.anchor.CachingTrustAnchorsProviderBase;
 import com.webauthn4j.anchor.KeyStoreException;
 import com.webauthn4j.anchor.TrustAnchorsProvider;
 import com.webauthn4j.data.attestation.authenticator.AAGUID;
 import com.webauthn4j.util.AssertUtil;
 import com.webauthn4j.util.CertificateUtil;
-import org.springframework.beans.factory.InitializingBean;
 import org.springframework.core.io.Resource;
 
 import java.io.IOException;
@@ -37,13 +35,14 @@ import java.util.*;
 /**
  * An implementation of {@link TrustAnchorsProvider} that loads {@link TrustAnchor}(s) from Java Key Store file in the Spring {@link Resource}
  */
-public class KeyStoreResourceTrustAnchorProvider extends CachingTrustAnchorsProviderBase implements InitializingBean {
+public class KeyStoreResourceTrustAnchorProvider extends ReloadingTrustAnchorsProviderBase {
 
     // ~ Instance fields
     // ================================================================================================
 
     private Resource keyStore;
     private String password;
+    private Map<String, AAGUID> aaguids = Collections.emptyMap();
 
     // ~ Constructor
     // ========================================================================================================
@@ -62,6 +61,7 @@ public class KeyStoreResourceTrustAnchorProvider extends CachingTrustAnchorsProv
     @Override
     public void afterPropertiesSet() {
         checkConfig();
+        super.afterPropertiesSet();
     }
 
     private void checkConfig() {
@@ -70,8 +70,10 @@ public class KeyStoreResourceTrustAnchorProvider extends CachingTrustAnchorsProv
 
     /**
      * Retrieves {@link TrustAnchor}s from Java KeyStore resource.
+     * Certificates whose alias is mapped by {@link #setAaguids(Map)} are trusted only for that AAGUID,
+     * the others for every AAGUID.
      *
-     * @return null key {@link TrustAnchor} {@link Set} value {@link Map}
+     * @return AAGUID key {@link TrustAnchor} {@link Set} value {@link Map}
      */
     @Override
     protected Map<AAGUID, Set<TrustAnchor>> loadTrustAnchors() {
@@ -80,17 +82,26 @@ public class KeyStoreResourceTrustAnchorProvider extends CachingTrustAnchorsProv
         try (InputStream inputStream = keystore.getInputStream()) {
             KeyStore keyStoreObject = loadKeyStoreFromStream(inputStream, getPassword());
             List<String> aliases = Collections.list(keyStoreObject.aliases());
-            Set<TrustAnchor> trustAnchors = new HashSet<>();
+            Map<AAGUID, Set<TrustAnchor>> trustAnchors = new HashMap<>();
             for (String alias : aliases) {
                 X509Certificate certificate = (X509Certificate) keyStoreObject.getCertificate(alias);
-                trustAnchors.add(new TrustAnchor(certificate, null));
+                AAGUID aaguid = aaguids.getOrDefault(alias, AAGUID.NULL);
+                trustAnchors.computeIfAbsent(aaguid, key -> new HashSet<>()).add(new TrustAnchor(certificate, null));
             }
-            return Collections.singletonMap(null, trustAnchors);
+            return trustAnchors;
         } catch (java.security.KeyStoreException | IOException | NoSuchAlgorithmException | CertificateException e) {
             throw new KeyStoreException("Failed to load TrustAnchor from keystore", e);
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected List<Resource> getWatchedResources() {
+        return keyStore == null ? Collections.emptyList() : Collections.singletonList(keyStore);
+    }
+
     /**
      * Provides keyStore resource
      *
@@ -127,6 +138,25 @@ public class KeyStoreResourceTrustAnchorProvider extends CachingTrustAnchorsProv
         this.password = password;
     }
 
+    /**
+     * Provides the AAGUIDs which the certificates are trusted for, keyed by their alias
+     *
+     * @return alias key AAGUID value {@link Map}
+     */
+    public Map<String, AAGUID> getAaguids() {
+        return aaguids;
+    }
+
+    /**
+     * Sets the AAGUIDs which the certificates are trusted for, keyed by their alias
+     *
+     * @param aaguids alias key AAGUID value {@link Map}
+     */
+    public void setAaguids(Map<String, AAGUID> aaguids) {
+        AssertUtil.notNull(aaguids, "aaguids must not be null");
+        this.aaguids = aaguids;
+    }
+
     private KeyStore loadKeyStoreFromStream(InputStream inputStream, String password)
             throws CertificateException, NoSuchAlgorithmException, IOException {
         KeyStore keyStoreObject = CertificateUtil.createKeyStore();
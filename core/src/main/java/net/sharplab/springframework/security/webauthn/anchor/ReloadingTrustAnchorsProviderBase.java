@@ -0,0 +1,233 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.anchor;
+
+import com.webauthn4j.anchor.TrustAnchorsProvider;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.security.cert.TrustAnchor;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Base class of {@link TrustAnchorsProvider}s which load {@link TrustAnchor}s from {@link Resource}s and reload them
+ * when the resources are modified.
+ * <p>
+ * Loaded trust anchors are published as an immutable snapshot, together with their {@link TrustAnchorIndex} and a
+ * version which increases with each reload. A reload builds the new snapshot completely before swapping it in
+ * atomically, so {@link #provide()} never blocks on a reload and never returns a partially loaded set. If a reload
+ * fails, the previous snapshot stays in use.
+ * <p>
+ * When a reload interval is set, the last modified timestamps of {@link #getWatchedResources()} are polled in the
+ * background from {@link #afterPropertiesSet()} until {@link #destroy()}. Otherwise the trust anchors are loaded once,
+ * like {@link com.webauthn4j.anchor.CachingTrustAnchorsProviderBase}, unless {@link #reload()} or
+ * {@link #reloadIfModified()} is called.
+ */
+public abstract class ReloadingTrustAnchorsProviderBase implements TrustAnchorsProvider, InitializingBean, DisposableBean {
+
+    //~ Instance fields
+    // ================================================================================================
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final Object reloadLock = new Object();
+    private Duration reloadInterval;
+    private ScheduledExecutorService scheduler;
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Starts polling the resources when a reload interval is set
+     */
+    @Override
+    public void afterPropertiesSet() {
+        if (reloadInterval == null || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "webauthn-trust-anchors-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = reloadInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::reloadIfModifiedSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops polling the resources
+     */
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<AAGUID, Set<TrustAnchor>> provide() {
+        return getSnapshot().trustAnchors;
+    }
+
+    /**
+     * Returns the index of the current {@link TrustAnchor}s
+     *
+     * @return {@link TrustAnchorIndex}
+     */
+    public TrustAnchorIndex getIndex() {
+        return getSnapshot().index;
+    }
+
+    /**
+     * Returns the version of the current {@link TrustAnchor}s, which increases with each reload
+     *
+     * @return version, or 0 if not loaded yet
+     */
+    public long getVersion() {
+        Snapshot current = snapshot.get();
+        return current == null ? 0 : current.version;
+    }
+
+    /**
+     * Loads the {@link TrustAnchor}s and publishes them
+     */
+    public void reload() {
+        synchronized (reloadLock) {
+            // timestamps are taken first, so a modification during the load triggers another reload
+            long[] lastModified = getLastModified();
+            Map<AAGUID, Set<TrustAnchor>> trustAnchors = copyOf(loadTrustAnchors());
+            Snapshot current = snapshot.get();
+            long version = current == null ? 1 : current.version + 1;
+            snapshot.set(new Snapshot(version, trustAnchors, new TrustAnchorIndex(trustAnchors), lastModified));
+        }
+    }
+
+    /**
+     * Reloads the {@link TrustAnchor}s if any of the resources has been modified since the last load
+     *
+     * @return true if reloaded
+     */
+    public boolean reloadIfModified() {
+        Snapshot current = snapshot.get();
+        if (current != null && Arrays.equals(current.lastModified, getLastModified())) {
+            return false;
+        }
+        reload();
+        return true;
+    }
+
+    public Duration getReloadInterval() {
+        return reloadInterval;
+    }
+
+    /**
+     * Sets the interval to check the resources for modification. Background reloading is disabled if null.
+     *
+     * @param reloadInterval reload interval
+     */
+    public void setReloadInterval(Duration reloadInterval) {
+        Assert.isTrue(reloadInterval == null || (!reloadInterval.isNegative() && !reloadInterval.isZero()), "reloadInterval must be positive");
+        this.reloadInterval = reloadInterval;
+    }
+
+    /**
+     * Loads {@link TrustAnchor}s from the resources
+     *
+     * @return AAGUID key {@link TrustAnchor} {@link Set} value {@link Map}
+     */
+    protected abstract Map<AAGUID, Set<TrustAnchor>> loadTrustAnchors();
+
+    /**
+     * Provides the resources which trust anchors are loaded from
+     *
+     * @return resources
+     */
+    protected abstract List<Resource> getWatchedResources();
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot.get();
+        if (current == null) {
+            synchronized (reloadLock) {
+                if (snapshot.get() == null) {
+                    reload();
+                }
+            }
+            current = snapshot.get();
+        }
+        return current;
+    }
+
+    private void reloadIfModifiedSafely() {
+        try {
+            if (reloadIfModified()) {
+                logger.info("Reloaded trust anchors");
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Failed to reload trust anchors", e);
+        }
+    }
+
+    private long[] getLastModified() {
+        List<Resource> resources = getWatchedResources();
+        long[] lastModified = new long[resources.size()];
+        for (int i = 0; i < lastModified.length; i++) {
+            try {
+                lastModified[i] = resources.get(i).lastModified();
+            } catch (IOException e) {
+                lastModified[i] = -1;
+            }
+        }
+        return lastModified;
+    }
+
+    private static Map<AAGUID, Set<TrustAnchor>> copyOf(Map<AAGUID, Set<TrustAnchor>> trustAnchors) {
+        Map<AAGUID, Set<TrustAnchor>> copy = new HashMap<>();
+        for (Map.Entry<AAGUID, Set<TrustAnchor>> entry : trustAnchors.entrySet()) {
+            copy.put(entry.getKey(), Collections.unmodifiableSet(new HashSet<>(entry.getValue())));
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    private static final class Snapshot {
+
+        private final long version;
+        private final Map<AAGUID, Set<TrustAnchor>> trustAnchors;
+        private final TrustAnchorIndex index;
+        private final long[] lastModified;
+
+        Snapshot(long version, Map<AAGUID, Set<TrustAnchor>> trustAnchors, TrustAnchorIndex index, long[] lastModified) {
+            this.version = version;
+            this.trustAnchors = trustAnchors;
+            this.index = index;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.anchor;
+
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import org.springframework.util.Assert;
+
+import javax.security.auth.x500.X500Principal;
+import java.nio.ByteBuffer;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.*;
+
+/**
+ * An immutable index of {@link TrustAnchor}s by AAGUID, subject DN and subject key identifier.
+ * <p>
+ * Anchors registered under {@link AAGUID#NULL} are trusted for every AAGUID. The anchors for each AAGUID are merged
+ * with them once, when the index is built, so a lookup by AAGUID is a single map access instead of a set copy.
+ * Lookups by subject DN and subject key identifier narrow the anchors down to the candidate issuers of a certificate.
+ */
+public final class TrustAnchorIndex {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+    private static final String SUBJECT_KEY_IDENTIFIER_OID = "2.5.29.14";
+    private static final String AUTHORITY_KEY_IDENTIFIER_OID = "2.5.29.35";
+
+    private static final int DER_OCTET_STRING = 0x04;
+    private static final int DER_SEQUENCE = 0x30;
+    private static final int DER_CONTEXT_SPECIFIC_0 = 0x80;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final Set<TrustAnchor> commonTrustAnchors;
+    private final Map<AAGUID, Set<TrustAnchor>> trustAnchorsByAAGUID;
+    private final Map<X500Principal, Set<TrustAnchor>> trustAnchorsBySubject;
+    private final Map<ByteBuffer, Set<TrustAnchor>> trustAnchorsBySubjectKeyIdentifier;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Builds the index
+     *
+     * @param trustAnchors AAGUID key {@link TrustAnchor} {@link Set} value {@link Map}, as provided by
+     *                     {@link com.webauthn4j.anchor.TrustAnchorsProvider}
+     */
+    public TrustAnchorIndex(Map<AAGUID, Set<TrustAnchor>> trustAnchors) {
+        Assert.notNull(trustAnchors, "trustAnchors must not be null");
+        Set<TrustAnchor> common = trustAnchors.getOrDefault(AAGUID.NULL, Collections.emptySet());
+        this.commonTrustAnchors = Collections.unmodifiableSet(new HashSet<>(common));
+
+        Map<AAGUID, Set<TrustAnchor>> byAAGUID = new HashMap<>();
+        Map<X500Principal, Set<TrustAnchor>> bySubject = new HashMap<>();
+        Map<ByteBuffer, Set<TrustAnchor>> bySubjectKeyIdentifier = new HashMap<>();
+        for (Map.Entry<AAGUID, Set<TrustAnchor>> entry : trustAnchors.entrySet()) {
+            if (entry.getKey() != null && !AAGUID.NULL.equals(entry.getKey())) {
+                Set<TrustAnchor> merged = new HashSet<>(common);
+                merged.addAll(entry.getValue());
+                byAAGUID.put(entry.getKey(), Collections.unmodifiableSet(merged));
+            }
+            for (TrustAnchor trustAnchor : entry.getValue()) {
+                X500Principal subject = getSubject(trustAnchor);
+                if (subject != null) {
+                    bySubject.computeIfAbsent(subject, key -> new HashSet<>()).add(trustAnchor);
+                }
+                X509Certificate trustedCert = trustAnchor.getTrustedCert();
+                byte[] subjectKeyIdentifier = trustedCert == null ? null : getSubjectKeyIdentifier(trustedCert);
+                if (subjectKeyIdentifier != null) {
+                    bySubjectKeyIdentifier.computeIfAbsent(ByteBuffer.wrap(subjectKeyIdentifier), key -> new HashSet<>()).add(trustAnchor);
+                }
+            }
+        }
+        this.trustAnchorsByAAGUID = byAAGUID;
+        this.trustAnchorsBySubject = bySubject;
+        this.trustAnchorsBySubjectKeyIdentifier = bySubjectKeyIdentifier;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Returns the {@link TrustAnchor}s trusted for the AAGUID, including the ones trusted for every AAGUID
+     *
+     * @param aaguid aaguid
+     * @return unmodifiable {@link TrustAnchor} {@link Set}
+     */
+    public Set<TrustAnchor> find(AAGUID aaguid) {
+        Assert.notNull(aaguid, "aaguid must not be null");
+        return trustAnchorsByAAGUID.getOrDefault(aaguid, commonTrustAnchors);
+    }
+
+    /**
+     * Returns the {@link TrustAnchor}s whose subject DN matches
+     *
+     * @param subject subject DN
+     * @return unmodifiable {@link TrustAnchor} {@link Set}
+     */
+    public Set<TrustAnchor> findBySubject(X500Principal subject) {
+        Assert.notNull(subject, "subject must not be null");
+        return Collections.unmodifiableSet(trustAnchorsBySubject.getOrDefault(subject, Collections.emptySet()));
+    }
+
+    /**
+     * Returns the {@link TrustAnchor}s whose certificate has the subject key identifier
+     *
+     * @param subjectKeyIdentifier subject key identifier
+     * @return unmodifiable {@link TrustAnchor} {@link Set}
+     */
+    public Set<TrustAnchor> findBySubjectKeyIdentifier(byte[] subjectKeyIdentifier) {
+        Assert.notNull(subjectKeyIdentifier, "subjectKeyIdentifier must not be null");
+        return Collections.unmodifiableSet(trustAnchorsBySubjectKeyIdentifier.getOrDefault(ByteBuffer.wrap(subjectKeyIdentifier), Collections.emptySet()));
+    }
+
+    /**
+     * Returns the {@link TrustAnchor}s trusted for the AAGUID which may have issued the certificate.
+     * Candidates are looked up by the authority key identifier of the certificate when it has one,
+     * and by its issuer DN otherwise.
+     *
+     * @param aaguid      aaguid
+     * @param certificate the last certificate of a certificate path
+     * @return {@link TrustAnchor} {@link Set}
+     */
+    public Set<TrustAnchor> findIssuerCandidates(AAGUID aaguid, X509Certificate certificate) {
+        Assert.notNull(certificate, "certificate must not be null");
+        Set<TrustAnchor> trusted = find(aaguid);
+        byte[] authorityKeyIdentifier = getAuthorityKeyIdentifier(certificate);
+        Set<TrustAnchor> candidates = authorityKeyIdentifier != null
+                ? trustAnchorsBySubjectKeyIdentifier.get(ByteBuffer.wrap(authorityKeyIdentifier))
+                : null;
+        if (candidates == null) {
+            candidates = trustAnchorsBySubject.getOrDefault(certificate.getIssuerX500Principal(), Collections.emptySet());
+        }
+        Set<TrustAnchor> result = new HashSet<>();
+        for (TrustAnchor candidate : candidates) {
+            if (trusted.contains(candidate)) {
+                result.add(candidate);
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        return trustAnchorsBySubject.values().stream().mapToInt(Set::size).sum();
+    }
+
+    private static X500Principal getSubject(TrustAnchor trustAnchor) {
+        return trustAnchor.getTrustedCert() != null
+                ? trustAnchor.getTrustedCert().getSubjectX500Principal()
+                : trustAnchor.getCA();
+    }
+
+    /**
+     * Extracts the keyIdentifier of the subject key identifier extension
+     *
+     * @param certificate certificate
+     * @return keyIdentifier, or null if absent or malformed
+     */
+    static byte[] getSubjectKeyIdentifier(X509Certificate certificate) {
+        byte[] extension = certificate.getExtensionValue(SUBJECT_KEY_IDENTIFIER_OID);
+        // OCTET STRING { SubjectKeyIdentifier ::= OCTET STRING }
+        byte[] value = readValue(extension, DER_OCTET_STRING);
+        return readValue(value, DER_OCTET_STRING);
+    }
+
+    /**
+     * Extracts the keyIdentifier of the authority key identifier extension
+     *
+     * @param certificate certificate
+     * @return keyIdentifier, or null if absent or malformed
+     */
+    static byte[] getAuthorityKeyIdentifier(X509Certificate certificate) {
+        byte[] extension = certificate.getExtensionValue(AUTHORITY_KEY_IDENTIFIER_OID);
+        // OCTET STRING { SEQUENCE { [0] keyIdentifier IMPLICIT OCTET STRING OPTIONAL, ... } }
+        byte[] sequence = readValue(readValue(extension, DER_OCTET_STRING), DER_SEQUENCE);
+        return readValue(sequence, DER_CONTEXT_SPECIFIC_0);
+    }
+
+    /**
+     * Reads the value of the DER element at the start of the bytes
+     *
+     * @param bytes DER encoded bytes
+     * @param tag   expected tag
+     * @return value, or null if the bytes do not start with a well-formed element of the tag
+     */
+    private static byte[] readValue(byte[] bytes, int tag) {
+        if (bytes == null || bytes.length < 2 || (bytes[0] & 0xFF) != tag) {
+            return null;
+        }
+        int length = bytes[1] & 0xFF;
+        int offset = 2;
+        if (length > 0x7F) {
+            int lengthBytes = length & 0x7F;
+            if (lengthBytes > 3 || bytes.length < offset + lengthBytes) {
+                return null;
+            }
+            length = 0;
+            for (int i = 0; i < lengthBytes; i++) {
+                length = (length << 8) | (bytes[offset++] & 0xFF);
+            }
+        }
+        if (bytes.length < offset + length) {
+            return null;
+        }
+        return Arrays.copyOfRange(bytes, offset, offset + length);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.authenticator;
+
+import org.springframework.util.Assert;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * An immutable credentialId usable as a hash key.
+ * <p>
+ * The hash code is computed once on construction so that repeated lookups don't rehash the whole credentialId.
+ */
+public final class CredentialId implements Serializable {
+
+    // ~ Instance fields
+    // ================================================================================================
+    private final byte[] value;
+    private final int hashCode;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor
+     *
+     * @param value credentialId, which is copied
+     */
+    public CredentialId(byte[] value) {
+        Assert.notNull(value, "value must not be null");
+        this.value = value.clone();
+        this.hashCode = Arrays.hashCode(this.value);
+    }
+
+    private CredentialId(byte[] value, int hashCode) {
+        this.value = value;
+        this.hashCode = hashCode;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Returns a {@link CredentialId} backed by the given array without copying it, for short-lived lookup keys.
+     * The array must not be modified while the returned instance is in use.
+     *
+     * @param value credentialId
+     * @return the {@link CredentialId}
+     */
+    public static CredentialId wrap(byte[] value) {
+        Assert.notNull(value, "value must not be null");
+        return new CredentialId(value, Arrays.hashCode(value));
+    }
+
+    public byte[] getValue() {
+        return value.clone();
+    }
+
+    /**
+     * Returns true if the credentialId equals to the given bytes
+     *
+     * @param credentialId credentialId
+     * @return true if equal
+     */
+    public boolean matches(byte[] credentialId) {
+        return Arrays.equals(value, credentialId);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CredentialId that = (CredentialId) o;
+        return hashCode == that.hashCode && Arrays.equals(value, that.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.authenticator;
+
+import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.data.AuthenticatorTransport;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.authenticator.COSEKey;
+import com.webauthn4j.data.attestation.statement.AttestationStatement;
+import com.webauthn4j.data.attestation.statement.COSEAlgorithmIdentifier;
+import com.webauthn4j.data.attestation.statement.COSEKeyOperation;
+import com.webauthn4j.data.attestation.statement.COSEKeyType;
+import com.webauthn4j.data.extension.authenticator.RegistrationExtensionAuthenticatorOutput;
+import com.webauthn4j.data.extension.client.RegistrationExtensionClientOutput;
+import net.sharplab.springframework.security.webauthn.util.ExpiringCache;
+
+import java.nio.ByteBuffer;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cache of the verification {@link PublicKey}s of authenticators keyed by credentialId.
+ * <p>
+ * {@link #wrap(Authenticator)} returns a view of the authenticator whose {@link COSEKey#getPublicKey()} is served from
+ * the cache, so that assertion validation doesn't rebuild the key from the COSE key on every login. All the other
+ * calls, including counter updates, go to the wrapped authenticator. Since a credentialId is bound to one key for
+ * the lifetime of the credential, the cached key only has to be invalidated when the authenticator is removed.
+ */
+public class VerificationKeyCache {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+    private static final int DEFAULT_MAX_SIZE = 10_000;
+    private static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofHours(1);
+
+    //~ Instance fields
+    // ================================================================================================
+    private final ExpiringCache<ByteBuffer, PublicKey> cache;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor with default max size (10,000) and time-to-live (1 hour)
+     */
+    public VerificationKeyCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxSize    the maximum number of cached keys
+     * @param timeToLive the duration after which a cached key expires
+     */
+    public VerificationKeyCache(int maxSize, Duration timeToLive) {
+        this.cache = new ExpiringCache<>(maxSize, timeToLive);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Returns a view of the authenticator whose public key is cached
+     *
+     * @param authenticator the {@link Authenticator} to wrap
+     * @return the wrapping {@link Authenticator}, or <code>authenticator</code> itself if it has no COSE key
+     */
+    public Authenticator wrap(Authenticator authenticator) {
+        if (authenticator == null) {
+            return null;
+        }
+        AttestedCredentialData attestedCredentialData = authenticator.getAttestedCredentialData();
+        if (attestedCredentialData == null || attestedCredentialData.getCOSEKey() == null || attestedCredentialData.getCredentialId() == null) {
+            return authenticator;
+        }
+        ByteBuffer key = ByteBuffer.wrap(attestedCredentialData.getCredentialId().clone());
+        AttestedCredentialData cachingData = new AttestedCredentialData(
+                attestedCredentialData.getAaguid(),
+                attestedCredentialData.getCredentialId(),
+                new CachingCOSEKey(attestedCredentialData.getCOSEKey(), cache, key)
+        );
+        return new CachingAuthenticator(authenticator, cachingData);
+    }
+
+    /**
+     * Invalidates the cached key of the credential
+     *
+     * @param credentialId credentialId
+     */
+    public void invalidate(byte[] credentialId) {
+        cache.remove(ByteBuffer.wrap(credentialId.clone()));
+    }
+
+    /**
+     * Invalidates all the cached keys
+     */
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    public int getSize() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    /**
+     * {@link COSEKey} which serves {@link #getPublicKey()} from the cache and delegates the rest
+     */
+    private static class CachingCOSEKey implements COSEKey {
+
+        private final COSEKey delegate;
+        private final transient ExpiringCache<ByteBuffer, PublicKey> cache;
+        private final transient ByteBuffer key;
+
+        CachingCOSEKey(COSEKey delegate, ExpiringCache<ByteBuffer, PublicKey> cache, ByteBuffer key) {
+            this.delegate = delegate;
+            this.cache = cache;
+            this.key = key;
+        }
+
+        @Override
+        public PublicKey getPublicKey() {
+            if (cache == null) {
+                return delegate.getPublicKey();
+            }
+            return cache.get(key, k -> delegate.getPublicKey());
+        }
+
+        @Override
+        public boolean hasPublicKey() {
+            return delegate.hasPublicKey();
+        }
+
+        @Override
+        public boolean hasPrivateKey() {
+            return delegate.hasPrivateKey();
+        }
+
+        @Override
+        public PrivateKey getPrivateKey() {
+            return delegate.getPrivateKey();
+        }
+
+        @Override
+        public COSEKeyType getKeyType() {
+            return delegate.getKeyType();
+        }
+
+        @Override
+        public byte[] getKeyId() {
+            return delegate.getKeyId();
+        }
+
+        @Override
+        public COSEAlgorithmIdentifier getAlgorithm() {
+            return delegate.getAlgorithm();
+        }
+
+        @Override
+        public List<COSEKeyOperation> getKeyOps() {
+            return delegate.getKeyOps();
+        }
+
+        @Override
+        public byte[] getBaseIV() {
+            return delegate.getBaseIV();
+        }
+
+        @Override
+        public void validate() {
+            delegate.validate();
+        }
+    }
+
+    /**
+     * {@link Authenticator} which exposes the caching {@link AttestedCredentialData} and delegates the rest
+     */
+    private static class CachingAuthenticator implements Authenticator {
+
+        private final Authenticator delegate;
+        private final AttestedCredentialData attestedCredentialData;
+
+        CachingAuthenticator(Authenticator delegate, AttestedCredentialData attestedCredentialData) {
+            this.delegate = delegate;
+            this.attestedCredentialData = attestedCredentialData;
+        }
+
+        @Override
+        public AttestedCredentialData getAttestedCredentialData() {
+            return attestedCredentialData;
+        }
+
+        @Override
+        public AttestationStatement getAttestationStatement() {
+            return delegate.getAttestationStatement();
+        }
+
+        @Override
+        public Set<AuthenticatorTransport> getTransports() {
+            return delegate.getTransports();
+        }
+
+        @Override
+        public long getCounter() {
+            return delegate.getCounter();
+        }
+
+        @Override
+        public void setCounter(long value) {
+            delegate.setCounter(value);
+        }
+
+        @Override
+        public Map<String, RegistrationExtensionClientOutput> getClientExtensions() {
+            return delegate.getClientExtensions();
+        }
+
+        @Override
+        public Map<String, RegistrationExtensionAuthenticatorOutput> getAuthenticatorExtensions() {
+            return delegate.getAuthenticatorExtensions();
+        }
+    }
+}
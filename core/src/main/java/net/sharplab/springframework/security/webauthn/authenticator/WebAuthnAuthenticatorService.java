@@ -33,4 +33,15 @@ public interface WebAuthnAuthenticatorService {
     @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
     void updateCounter(byte[] credentialId, long counter) throws CredentialIdNotFoundException;
 
+    /**
+     * Returns the latest counter known to this service which may not be persisted yet.
+     * Implementations which update the counter synchronously don't need to override this method.
+     *
+     * @param credentialId credentialId
+     * @return the latest counter or null if unknown
+     */
+    default Long getLatestCounter(byte[] credentialId) {
+        return null;
+    }
+
 }
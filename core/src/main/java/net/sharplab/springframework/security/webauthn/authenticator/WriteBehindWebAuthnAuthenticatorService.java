@@ -0,0 +1,256 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.authenticator;
+
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link WebAuthnAuthenticatorService} decorator which updates sign counters asynchronously.
+ * <p>
+ * {@link #updateCounter(byte[], long)} only records the counter in memory. Multiple updates to the same credential
+ * are coalesced to the highest counter, and the recorded counters are written to the delegate in batches, either
+ * periodically or as soon as the number of pending credentials reaches the batch size. Until a counter is written,
+ * {@link #getLatestCounter(byte[])} returns it, so that the malicious counter check is performed against the latest
+ * counter even if the authenticator is loaded from a not yet updated store. The periodic flush is started by
+ * {@link #afterPropertiesSet()}, and pending counters are flushed on {@link #destroy()}.
+ * <p>
+ * The number of pending credentials is capped. Once the cap is reached, for instance because the delegate keeps
+ * failing, counters of credentials which are not pending yet are written to the delegate synchronously.
+ * <p>
+ * Pending counters are lost if the process is killed, so a cloned authenticator may pass the malicious counter
+ * check once after a crash.
+ */
+public class WriteBehindWebAuthnAuthenticatorService implements WebAuthnAuthenticatorService, InitializingBean, DisposableBean {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+    private static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofSeconds(1);
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final int DEFAULT_MAX_PENDING_COUNT = 10000;
+
+    //~ Instance fields
+    // ================================================================================================
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final WebAuthnAuthenticatorService delegate;
+    private final Duration flushInterval;
+    private final int batchSize;
+    private int maxPendingCount = DEFAULT_MAX_PENDING_COUNT;
+    private volatile ScheduledExecutorService scheduler;
+
+    private final ConcurrentHashMap<ByteBuffer, Long> pendingCounters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ByteBuffer, Long> inflightCounters = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor with default flush interval (1 second) and batch size (500)
+     *
+     * @param delegate the {@link WebAuthnAuthenticatorService} which persists counters
+     */
+    public WriteBehindWebAuthnAuthenticatorService(WebAuthnAuthenticatorService delegate) {
+        this(delegate, DEFAULT_FLUSH_INTERVAL, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param delegate      the {@link WebAuthnAuthenticatorService} which persists counters
+     * @param flushInterval the interval of the periodic flush
+     * @param batchSize     the number of pending credentials which triggers a flush
+     */
+    public WriteBehindWebAuthnAuthenticatorService(WebAuthnAuthenticatorService delegate, Duration flushInterval, int batchSize) {
+        Assert.notNull(delegate, "delegate must not be null");
+        Assert.notNull(flushInterval, "flushInterval must not be null");
+        Assert.isTrue(!flushInterval.isNegative() && !flushInterval.isZero(), "flushInterval must be positive");
+        Assert.isTrue(batchSize > 0, "batchSize must be positive");
+
+        this.delegate = delegate;
+        this.flushInterval = flushInterval;
+        this.batchSize = batchSize;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Starts the periodic flush
+     */
+    @Override
+    public void afterPropertiesSet() {
+        if (scheduler != null) {
+            return;
+        }
+        ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "webauthn-counter-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = flushInterval.toMillis();
+        executorService.scheduleWithFixedDelay(this::flushSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        scheduler = executorService;
+    }
+
+    /**
+     * Records the counter. The counter is written to the delegate asynchronously, or synchronously if the number of
+     * pending credentials has reached the cap.
+     *
+     * @param credentialId credentialId
+     * @param counter      counter
+     */
+    @Override
+    public void updateCounter(byte[] credentialId, long counter) {
+        ByteBuffer key = ByteBuffer.wrap(credentialId.clone());
+        if (pendingCounters.size() >= maxPendingCount
+                && !pendingCounters.containsKey(key) && !inflightCounters.containsKey(key)) {
+            delegate.updateCounter(credentialId, counter);
+            return;
+        }
+        pendingCounters.merge(key, counter, Math::max);
+        ScheduledExecutorService executorService = scheduler;
+        if (executorService != null && pendingCounters.size() >= batchSize && flushScheduled.compareAndSet(false, true)) {
+            try {
+                executorService.execute(() -> {
+                    flushScheduled.set(false);
+                    flushSafely();
+                });
+            } catch (RuntimeException e) {
+                flushScheduled.set(false);
+                logger.debug("Failed to schedule counter flush", e);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Long getLatestCounter(byte[] credentialId) {
+        ByteBuffer key = ByteBuffer.wrap(credentialId);
+        Long pending = pendingCounters.get(key);
+        Long inflight = inflightCounters.get(key);
+        if (pending == null) {
+            return inflight != null ? inflight : delegate.getLatestCounter(credentialId);
+        }
+        return inflight == null ? pending : Math.max(pending, inflight);
+    }
+
+    /**
+     * Writes the pending counters to the delegate
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            List<Map.Entry<ByteBuffer, Long>> batch = new ArrayList<>();
+            for (Map.Entry<ByteBuffer, Long> entry : pendingCounters.entrySet()) {
+                ByteBuffer key = entry.getKey();
+                Long counter = entry.getValue();
+                // publish to inflight before removing from pending so that getLatestCounter never misses it
+                inflightCounters.merge(key, counter, Math::max);
+                if (pendingCounters.remove(key, counter)) {
+                    batch.add(new AbstractMap.SimpleImmutableEntry<>(key, counter));
+                } else {
+                    // updated concurrently, the new counter is written by the next flush
+                    inflightCounters.remove(key, counter);
+                }
+            }
+            for (Map.Entry<ByteBuffer, Long> entry : batch) {
+                ByteBuffer key = entry.getKey();
+                try {
+                    delegate.updateCounter(key.array(), entry.getValue());
+                } catch (CredentialIdNotFoundException e) {
+                    logger.debug("Authenticator was removed before its counter was written", e);
+                } catch (RuntimeException e) {
+                    // keep the counter so that the next flush retries it
+                    pendingCounters.merge(key, entry.getValue(), Math::max);
+                    logger.warn("Failed to write authenticator counter", e);
+                } finally {
+                    inflightCounters.remove(key, entry.getValue());
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to flush authenticator counters", e);
+        }
+    }
+
+    /**
+     * Returns the number of credentials whose counter is not written yet
+     *
+     * @return the number of pending credentials
+     */
+    public int getPendingCount() {
+        return pendingCounters.size();
+    }
+
+    /**
+     * Sets the number of pending credentials above which counters are written synchronously
+     *
+     * @param maxPendingCount the maximum number of pending credentials
+     */
+    public void setMaxPendingCount(int maxPendingCount) {
+        Assert.isTrue(maxPendingCount > 0, "maxPendingCount must be positive");
+        this.maxPendingCount = maxPendingCount;
+    }
+
+    /**
+     * Stops the periodic flush and writes the pending counters
+     */
+    @Override
+    public void destroy() {
+        ScheduledExecutorService executorService = scheduler;
+        if (executorService != null) {
+            executorService.shutdown();
+            try {
+                if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+                    logger.warn("Counter flusher did not terminate in time");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+}
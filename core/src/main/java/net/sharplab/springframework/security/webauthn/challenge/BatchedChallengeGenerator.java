@@ -0,0 +1,116 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static net.sharplab.springframework.security.webauthn.challenge.StripedChallengeGenerator.CHALLENGE_LENGTH;
+
+/**
+ * A {@link ChallengeGenerator} implementation which amortizes the cost of the random source by filling blocks of
+ * random bytes at once and handing out slices of them.
+ * <p>
+ * Blocks are kept in a lock-free ring. A caller claims a slice of the block in its slot with an atomic increment,
+ * so that each slice is handed out exactly once. Only the caller which exhausts a block fills and publishes a new
+ * one; callers racing with it draw their challenge directly from the pool rather than filling a block of their own.
+ * Blocks are filled from a {@link StripedChallengeGenerator} pool.
+ */
+public class BatchedChallengeGenerator implements ChallengeGenerator {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+    private static final int DEFAULT_CHALLENGES_PER_BLOCK = 256;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final StripedChallengeGenerator randomPool;
+    private final AtomicReferenceArray<Block> ring;
+    private final int challengesPerBlock;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor with a ring slot per available processor and 256 challenges per block
+     */
+    public BatchedChallengeGenerator() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_CHALLENGES_PER_BLOCK);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param ringSize           the number of blocks in the ring
+     * @param challengesPerBlock the number of challenges filled at once
+     */
+    public BatchedChallengeGenerator(int ringSize, int challengesPerBlock) {
+        Assert.isTrue(ringSize > 0, "ringSize must be positive");
+        Assert.isTrue(challengesPerBlock > 0, "challengesPerBlock must be positive");
+        this.randomPool = new StripedChallengeGenerator(ringSize);
+        this.challengesPerBlock = challengesPerBlock;
+        this.ring = new AtomicReferenceArray<>(ringSize);
+        for (int i = 0; i < ringSize; i++) {
+            ring.set(i, fill());
+        }
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public Challenge generate() {
+        long threadId = Thread.currentThread().getId();
+        int slot = (int) ((threadId ^ (threadId >>> 32)) & Integer.MAX_VALUE) % ring.length();
+        Block block = ring.get(slot);
+        int index = block.cursor.getAndIncrement();
+        if (index < challengesPerBlock) {
+            byte[] value = new byte[CHALLENGE_LENGTH];
+            System.arraycopy(block.data, index * CHALLENGE_LENGTH, value, 0, CHALLENGE_LENGTH);
+            return new DefaultChallenge(value);
+        }
+        if (index == challengesPerBlock) {
+            // only the caller which exhausted the block fills a new one, so that a block is filled once
+            ring.set(slot, fill());
+        }
+        // the block is being replaced. Draw the challenge directly from the pool instead of waiting for the new block
+        byte[] value = new byte[CHALLENGE_LENGTH];
+        randomPool.stripe().nextBytes(value);
+        return new DefaultChallenge(value);
+    }
+
+    private Block fill() {
+        byte[] data = new byte[challengesPerBlock * CHALLENGE_LENGTH];
+        randomPool.stripe().nextBytes(data);
+        return new Block(data);
+    }
+
+    private static class Block {
+
+        private final byte[] data;
+        private final AtomicInteger cursor = new AtomicInteger();
+
+        Block(byte[] data) {
+            this.data = data;
+        }
+    }
+
+}
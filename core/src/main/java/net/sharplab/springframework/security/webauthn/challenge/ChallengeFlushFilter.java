@@ -0,0 +1,84 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import org.springframework.security.web.util.OnCommittedResponseWrapper;
+import org.springframework.util.Assert;
+import org.springframework.web.filter.GenericFilterBean;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Flushes the challenge write buffered by {@link CompactHttpSessionChallengeRepository} in lazy flush mode when the
+ * response is about to be committed, or at the end of the request if it is not committed by then. When Spring Session
+ * is used, this filter must be placed after the <code>SessionRepositoryFilter</code>, so that the challenge is in the
+ * session when it is saved on commit. Only requests passing through this filter are buffered; the repository writes
+ * other requests to the session directly.
+ */
+public class ChallengeFlushFilter extends GenericFilterBean {
+
+    //~ Instance fields
+    // ================================================================================================
+    private CompactHttpSessionChallengeRepository challengeRepository;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public ChallengeFlushFilter(CompactHttpSessionChallengeRepository challengeRepository) {
+        Assert.notNull(challengeRepository, "challengeRepository must not be null");
+        this.challengeRepository = challengeRepository;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
+        HttpServletRequest httpServletRequest = (HttpServletRequest) request;
+        request.setAttribute(CompactHttpSessionChallengeRepository.FLUSH_FILTER_ATTR_NAME, Boolean.TRUE);
+        try {
+            chain.doFilter(request, new FlushOnCommitResponseWrapper(httpServletRequest, (HttpServletResponse) response));
+        } finally {
+            request.removeAttribute(CompactHttpSessionChallengeRepository.FLUSH_FILTER_ATTR_NAME);
+            challengeRepository.flush(httpServletRequest);
+        }
+    }
+
+    /**
+     * Flushes the buffered write before the response is committed
+     */
+    private class FlushOnCommitResponseWrapper extends OnCommittedResponseWrapper {
+
+        private final HttpServletRequest request;
+
+        FlushOnCommitResponseWrapper(HttpServletRequest request, HttpServletResponse response) {
+            super(response);
+            this.request = request;
+        }
+
+        @Override
+        protected void onResponseCommitted() {
+            challengeRepository.flush(request);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+
+/**
+ * Strategy for generating the random value of a {@link Challenge}. Implementations must be thread-safe and
+ * draw from a cryptographically secure random source.
+ *
+ * @see DefaultChallengeGenerator
+ * @see StripedChallengeGenerator
+ * @see BatchedChallengeGenerator
+ */
+public interface ChallengeGenerator {
+
+    /**
+     * Generates a {@link Challenge}
+     *
+     * @return the {@link Challenge} that was generated. Cannot be null.
+     */
+    Challenge generate();
+
+}
@@ -31,6 +31,13 @@ import javax.servlet.http.HttpSession;
  */
 public interface ChallengeRepository {
 
+    /**
+     * Name of the request attribute under which an endpoint which receives the <code>clientDataJSON</code> in the
+     * request body, rather than as a request parameter, exposes it as a base64url string. Implementations which
+     * recover the challenge echoed back by the client, such as {@link HmacChallengeRepository}, read it from there.
+     */
+    String CLIENT_DATA_JSON_ATTR_NAME = ChallengeRepository.class.getName().concat(".CLIENT_DATA_JSON");
+
     /**
      * Generates a {@link Challenge}
      *
@@ -71,5 +78,20 @@ public interface ChallengeRepository {
         return challenge;
     }
 
+    /**
+     * Loads the expected {@link Challenge} from the {@link HttpServletRequest} and invalidates it,
+     * so that the same {@link Challenge} cannot be used for another ceremony.
+     *
+     * @param request the {@link HttpServletRequest} to use
+     * @return the {@link Challenge} or null if none exists
+     */
+    default Challenge consumeChallenge(HttpServletRequest request) {
+        Challenge challenge = this.loadChallenge(request);
+        if (challenge != null) {
+            this.saveChallenge(null, request);
+        }
+        return challenge;
+    }
+
 }
 
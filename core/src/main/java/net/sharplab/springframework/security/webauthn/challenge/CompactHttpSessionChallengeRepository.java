@@ -0,0 +1,194 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import org.springframework.util.Assert;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import java.util.Arrays;
+
+/**
+ * A {@link ChallengeRepository} implementation that stores data to HTTP session in a replication-friendly way.
+ * <p>
+ * Unlike {@link HttpSessionChallengeRepository}, the challenge is stored as a raw byte array instead of a
+ * serialized {@link Challenge} object, and the session attribute is only written when the challenge value actually
+ * changes, so that session replication or Spring Session does not ship an unchanged attribute.
+ * <p>
+ * If lazy flush is enabled, writes are buffered in a request attribute and applied to the session once by
+ * {@link #flush(HttpServletRequest)}, so that repeated saves and removals within a request end up as at most one
+ * session write. Register {@link ChallengeFlushFilter} to flush at the end of each request; requests which do not
+ * pass through the filter are written to the session directly, so a missing filter never loses a challenge.
+ */
+public class CompactHttpSessionChallengeRepository implements ChallengeRepository {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final String DEFAULT_CHALLENGE_ATTR_NAME = CompactHttpSessionChallengeRepository.class
+            .getName().concat(".CHALLENGE");
+
+    private static final String PENDING_ATTR_NAME = CompactHttpSessionChallengeRepository.class
+            .getName().concat(".PENDING");
+
+    static final String FLUSH_FILTER_ATTR_NAME = CompactHttpSessionChallengeRepository.class
+            .getName().concat(".FLUSH_FILTER");
+
+    private static final byte[] REMOVED = new byte[0];
+
+    //~ Instance fields
+    // ================================================================================================
+    private String sessionAttributeName = DEFAULT_CHALLENGE_ATTR_NAME;
+    private boolean lazyFlush = false;
+    private ChallengeGenerator challengeGenerator = new DefaultChallengeGenerator();
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public Challenge generateChallenge() {
+        return challengeGenerator.generate();
+    }
+
+    @Override
+    public void saveChallenge(Challenge challenge, HttpServletRequest request) {
+        if (challenge == null) {
+            if (isBuffering(request)) {
+                request.setAttribute(PENDING_ATTR_NAME, REMOVED);
+            } else {
+                removeFromSession(request);
+            }
+        } else {
+            // create the session immediately so that the session cookie is sent even if the response is committed
+            // before the flush
+            request.getSession();
+            if (isBuffering(request)) {
+                request.setAttribute(PENDING_ATTR_NAME, challenge.getValue());
+            } else {
+                writeToSession(request, challenge.getValue());
+            }
+        }
+    }
+
+    @Override
+    public Challenge loadChallenge(HttpServletRequest request) {
+        byte[] value = isBuffering(request) ? (byte[]) request.getAttribute(PENDING_ATTR_NAME) : null;
+        if (value == null) {
+            value = readFromSession(request);
+        }
+        if (value == null || value == REMOVED) {
+            return null;
+        }
+        return new DefaultChallenge(value);
+    }
+
+    @Override
+    public Challenge consumeChallenge(HttpServletRequest request) {
+        Challenge challenge = loadChallenge(request);
+        if (challenge != null) {
+            saveChallenge(null, request);
+        }
+        return challenge;
+    }
+
+    /**
+     * Applies the buffered write of the request to the session. Does nothing if lazy flush is disabled or
+     * there is no buffered write.
+     *
+     * @param request the {@link HttpServletRequest} to use
+     */
+    public void flush(HttpServletRequest request) {
+        byte[] value = (byte[]) request.getAttribute(PENDING_ATTR_NAME);
+        if (value == null) {
+            return;
+        }
+        request.removeAttribute(PENDING_ATTR_NAME);
+        if (value == REMOVED) {
+            removeFromSession(request);
+        } else {
+            writeToSession(request, value);
+        }
+    }
+
+    /**
+     * Writes are buffered only if lazy flush is enabled and a {@link ChallengeFlushFilter} will flush the request
+     */
+    private boolean isBuffering(HttpServletRequest request) {
+        return lazyFlush && request.getAttribute(FLUSH_FILTER_ATTR_NAME) != null;
+    }
+
+    private byte[] readFromSession(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null) {
+            return null;
+        }
+        return (byte[]) session.getAttribute(this.sessionAttributeName);
+    }
+
+    private void writeToSession(HttpServletRequest request, byte[] value) {
+        HttpSession session = request.getSession();
+        byte[] current = (byte[]) session.getAttribute(this.sessionAttributeName);
+        if (!Arrays.equals(current, value)) {
+            session.setAttribute(this.sessionAttributeName, value);
+        }
+    }
+
+    private void removeFromSession(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session != null && session.getAttribute(this.sessionAttributeName) != null) {
+            session.removeAttribute(this.sessionAttributeName);
+        }
+    }
+
+    /**
+     * Sets the {@link HttpSession} attribute name that the {@link Challenge} is stored in
+     *
+     * @param sessionAttributeName the new attribute name to use
+     */
+    public void setSessionAttributeName(String sessionAttributeName) {
+        Assert.hasLength(sessionAttributeName,
+                "sessionAttributename cannot be null or empty");
+        this.sessionAttributeName = sessionAttributeName;
+    }
+
+    public boolean isLazyFlush() {
+        return lazyFlush;
+    }
+
+    /**
+     * Sets whether the session writes are buffered until {@link #flush(HttpServletRequest)}. Only requests passing
+     * through {@link ChallengeFlushFilter} are buffered.
+     *
+     * @param lazyFlush true to buffer the session writes
+     */
+    public void setLazyFlush(boolean lazyFlush) {
+        this.lazyFlush = lazyFlush;
+    }
+
+    /**
+     * Sets the {@link ChallengeGenerator} used by {@link #generateChallenge()}
+     *
+     * @param challengeGenerator the {@link ChallengeGenerator}
+     */
+    public void setChallengeGenerator(ChallengeGenerator challengeGenerator) {
+        Assert.notNull(challengeGenerator, "challengeGenerator must not be null");
+        this.challengeGenerator = challengeGenerator;
+    }
+
+}
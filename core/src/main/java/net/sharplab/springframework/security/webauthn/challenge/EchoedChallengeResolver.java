@@ -0,0 +1,78 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import com.webauthn4j.converter.CollectedClientDataConverter;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.client.CollectedClientData;
+import com.webauthn4j.data.client.challenge.Challenge;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Internal helper which extracts the {@link Challenge} echoed back by the client in the <code>clientDataJSON</code>
+ * exposed as the {@link ChallengeRepository#CLIENT_DATA_JSON_ATTR_NAME} request attribute, or otherwise in the
+ * <code>clientDataJSON</code> request parameter. Used by {@link ChallengeRepository} implementations which do not associate the challenge
+ * with the HTTP session.
+ */
+class EchoedChallengeResolver {
+
+    //~ Instance fields
+    // ================================================================================================
+    private final CollectedClientDataConverter collectedClientDataConverter;
+    private String clientDataJSONParameter = "clientDataJSON";
+
+    EchoedChallengeResolver(ObjectConverter objectConverter) {
+        Assert.notNull(objectConverter, "objectConverter must not be null");
+        this.collectedClientDataConverter = new CollectedClientDataConverter(objectConverter);
+    }
+
+    /**
+     * Resolves the echoed {@link Challenge}
+     *
+     * @param request the {@link HttpServletRequest} to use
+     * @return the {@link Challenge} or null if the request does not carry a well-formed <code>clientDataJSON</code>
+     */
+    Challenge resolve(HttpServletRequest request) {
+        Object attribute = request.getAttribute(ChallengeRepository.CLIENT_DATA_JSON_ATTR_NAME);
+        String clientDataJSON = attribute instanceof String ? (String) attribute : request.getParameter(clientDataJSONParameter);
+        if (StringUtils.isEmpty(clientDataJSON)) {
+            return null;
+        }
+        CollectedClientData collectedClientData;
+        try {
+            collectedClientData = collectedClientDataConverter.convert(clientDataJSON);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        if (collectedClientData == null) {
+            return null;
+        }
+        return collectedClientData.getChallenge();
+    }
+
+    String getClientDataJSONParameter() {
+        return clientDataJSONParameter;
+    }
+
+    void setClientDataJSONParameter(String clientDataJSONParameter) {
+        Assert.hasText(clientDataJSONParameter, "clientDataJSONParameter must not be empty or null");
+        this.clientDataJSONParameter = clientDataJSONParameter;
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import org.springframework.util.Assert;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A stateless {@link ChallengeRepository} implementation which never touches {@link HttpSession}.
+ * <p>
+ * Generated challenges are self-contained: they carry random bytes, the issue time and the id of the key used to
+ * sign them, followed by an HMAC over all of it. Nothing is stored on the server side. {@link #loadChallenge}
+ * recovers the challenge echoed back by the client in the <code>clientDataJSON</code> request parameter, or in the
+ * {@link ChallengeRepository#CLIENT_DATA_JSON_ATTR_NAME} request attribute set by endpoints which receive it in a
+ * JSON body, and returns it only if its MAC is valid under one of the registered keys and it is not older than the validity duration.
+ * Keys can be rotated with {@link #rotateKey(int, byte[])}: new challenges are signed with the new key while the
+ * previous keys are still accepted for verification until they are removed.
+ * <p>
+ * As the challenge is not kept on the server, a challenge can be replayed until it expires. Keep the validity
+ * duration short. Challenges which are not issued by this repository (for example challenges wrapping
+ * additional data) are never verified and are only visible within the request they are saved in.
+ */
+public class HmacChallengeRepository implements ChallengeRepository {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final byte VERSION = 1;
+    private static final int RANDOM_LENGTH = 16;
+    private static final int MAC_LENGTH = 16;
+    private static final int SIGNED_LENGTH = 1 + 1 + 8 + RANDOM_LENGTH;
+    private static final int CHALLENGE_LENGTH = SIGNED_LENGTH + MAC_LENGTH;
+
+    private static final String CHALLENGE_ATTR_NAME = HmacChallengeRepository.class
+            .getName().concat(".CHALLENGE");
+
+    //~ Instance fields
+    // ================================================================================================
+    private final Map<Integer, SecretKeySpec> keys = new ConcurrentHashMap<>();
+    private final EchoedChallengeResolver echoedChallengeResolver;
+    private volatile int currentKeyId;
+
+    private Duration validityDuration = Duration.ofMinutes(5);
+    private Clock clock = Clock.systemUTC();
+    private ChallengeGenerator challengeGenerator = new DefaultChallengeGenerator();
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor
+     *
+     * @param objectConverter converter used to parse the <code>clientDataJSON</code> sent back by the client
+     * @param keyId           id of the signing key. Must be within 0 to 255.
+     * @param secret          the signing key. Must be at least 32 bytes.
+     */
+    public HmacChallengeRepository(ObjectConverter objectConverter, int keyId, byte[] secret) {
+        this.echoedChallengeResolver = new EchoedChallengeResolver(objectConverter);
+        addKey(keyId, secret);
+        this.currentKeyId = keyId;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public Challenge generateChallenge() {
+        byte[] generated = challengeGenerator.generate().getValue();
+        Assert.state(generated.length >= RANDOM_LENGTH, "challengeGenerator must generate at least 16 bytes");
+        byte[] random = Arrays.copyOf(generated, RANDOM_LENGTH);
+        int keyId = this.currentKeyId;
+
+        ByteBuffer buffer = ByteBuffer.allocate(CHALLENGE_LENGTH);
+        buffer.put(VERSION);
+        buffer.put((byte) keyId);
+        buffer.putLong(clock.millis());
+        buffer.put(random);
+        buffer.put(calculateMac(keys.get(keyId), buffer.array()), 0, MAC_LENGTH);
+        return new DefaultChallenge(buffer.array());
+    }
+
+    /**
+     * Nothing is stored on the server side. The challenge is only kept as a request attribute so that later
+     * lookups in the same request see it.
+     */
+    @Override
+    public void saveChallenge(Challenge challenge, HttpServletRequest request) {
+        if (challenge == null) {
+            request.removeAttribute(CHALLENGE_ATTR_NAME);
+        } else {
+            request.setAttribute(CHALLENGE_ATTR_NAME, challenge);
+        }
+    }
+
+    @Override
+    public Challenge loadChallenge(HttpServletRequest request) {
+        Challenge challenge = (Challenge) request.getAttribute(CHALLENGE_ATTR_NAME);
+        if (challenge != null) {
+            return challenge;
+        }
+        Challenge echoedChallenge = echoedChallengeResolver.resolve(request);
+        if (echoedChallenge == null) {
+            return null;
+        }
+        return verify(echoedChallenge.getValue()) ? echoedChallenge : null;
+    }
+
+    /**
+     * Checks that the challenge value is issued by this repository with a registered key and not expired.
+     *
+     * @param value challenge value
+     * @return true if the challenge value is valid
+     */
+    boolean verify(byte[] value) {
+        if (value == null || value.length != CHALLENGE_LENGTH || value[0] != VERSION) {
+            return false;
+        }
+        SecretKeySpec key = keys.get(value[1] & 0xFF);
+        if (key == null) {
+            return false;
+        }
+        long issuedAt = ByteBuffer.wrap(value, 2, 8).getLong();
+        long now = clock.millis();
+        if (issuedAt > now || now - issuedAt > validityDuration.toMillis()) {
+            return false;
+        }
+        byte[] expectedMac = Arrays.copyOf(calculateMac(key, value), MAC_LENGTH);
+        byte[] actualMac = Arrays.copyOfRange(value, SIGNED_LENGTH, CHALLENGE_LENGTH);
+        return MessageDigest.isEqual(actualMac, expectedMac);
+    }
+
+    private byte[] calculateMac(SecretKeySpec key, byte[] challengeBuffer) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            mac.update(challengeBuffer, 0, SIGNED_LENGTH);
+            return mac.doFinal();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Registers a key which is accepted for verification, but not used for signing
+     *
+     * @param keyId  id of the key. Must be within 0 to 255.
+     * @param secret the key. Must be at least 32 bytes.
+     */
+    public void addKey(int keyId, byte[] secret) {
+        Assert.isTrue(keyId >= 0 && keyId <= 255, "keyId must be within 0 to 255");
+        Assert.notNull(secret, "secret must not be null");
+        Assert.isTrue(secret.length >= 32, "secret must be at least 32 bytes");
+        keys.put(keyId, new SecretKeySpec(secret, MAC_ALGORITHM));
+    }
+
+    /**
+     * Registers a key and uses it for signing new challenges. Previously registered keys are still accepted for
+     * verification until they are removed.
+     *
+     * @param keyId  id of the key. Must be within 0 to 255.
+     * @param secret the key. Must be at least 32 bytes.
+     */
+    public void rotateKey(int keyId, byte[] secret) {
+        addKey(keyId, secret);
+        this.currentKeyId = keyId;
+    }
+
+    /**
+     * Removes a key. Challenges signed with the key are no longer accepted.
+     *
+     * @param keyId id of the key
+     */
+    public void removeKey(int keyId) {
+        Assert.isTrue(keyId != currentKeyId, "current signing key cannot be removed");
+        keys.remove(keyId);
+    }
+
+    public int getCurrentKeyId() {
+        return currentKeyId;
+    }
+
+    public Duration getValidityDuration() {
+        return validityDuration;
+    }
+
+    /**
+     * Sets the duration in which an issued challenge is accepted
+     *
+     * @param validityDuration validity duration
+     */
+    public void setValidityDuration(Duration validityDuration) {
+        Assert.notNull(validityDuration, "validityDuration must not be null");
+        Assert.isTrue(!validityDuration.isNegative(), "validityDuration must not be negative");
+        this.validityDuration = validityDuration;
+    }
+
+    public String getClientDataJSONParameter() {
+        return echoedChallengeResolver.getClientDataJSONParameter();
+    }
+
+    /**
+     * Sets the request parameter name from which the challenge echoed back by the client is read
+     *
+     * @param clientDataJSONParameter the parameter name
+     */
+    public void setClientDataJSONParameter(String clientDataJSONParameter) {
+        echoedChallengeResolver.setClientDataJSONParameter(clientDataJSONParameter);
+    }
+
+    /**
+     * Sets the {@link ChallengeGenerator} used as the source of the random part of the challenge.
+     * The generated challenge must be at least 16 bytes.
+     *
+     * @param challengeGenerator the {@link ChallengeGenerator}
+     */
+    public void setChallengeGenerator(ChallengeGenerator challengeGenerator) {
+        Assert.notNull(challengeGenerator, "challengeGenerator must not be null");
+        this.challengeGenerator = challengeGenerator;
+    }
+
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+}
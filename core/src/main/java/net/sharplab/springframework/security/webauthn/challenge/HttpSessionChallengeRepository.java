@@ -17,7 +17,6 @@
 package net.sharplab.springframework.security.webauthn.challenge;
 
 import com.webauthn4j.data.client.challenge.Challenge;
-import com.webauthn4j.data.client.challenge.DefaultChallenge;
 import org.springframework.security.web.csrf.HttpSessionCsrfTokenRepository;
 import org.springframework.util.Assert;
 
@@ -40,13 +39,14 @@ public class HttpSessionChallengeRepository implements ChallengeRepository {
     //~ Instance fields
     // ================================================================================================
     private String sessionAttributeName = DEFAULT_CHALLENGE_ATTR_NAME;
+    private ChallengeGenerator challengeGenerator = new DefaultChallengeGenerator();
 
     // ~ Methods
     // ========================================================================================================
 
     @Override
     public Challenge generateChallenge() {
-        return new DefaultChallenge();
+        return challengeGenerator.generate();
     }
 
     @Override
@@ -71,6 +71,19 @@ public class HttpSessionChallengeRepository implements ChallengeRepository {
         return (Challenge) session.getAttribute(this.sessionAttributeName);
     }
 
+    @Override
+    public Challenge consumeChallenge(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null) {
+            return null;
+        }
+        Challenge challenge = (Challenge) session.getAttribute(this.sessionAttributeName);
+        if (challenge != null) {
+            session.removeAttribute(this.sessionAttributeName);
+        }
+        return challenge;
+    }
+
     /**
      * Sets the {@link HttpSession} attribute name that the {@link Challenge} is stored in
      *
@@ -82,4 +95,14 @@ public class HttpSessionChallengeRepository implements ChallengeRepository {
         this.sessionAttributeName = sessionAttributeName;
     }
 
+    /**
+     * Sets the {@link ChallengeGenerator} used by {@link #generateChallenge()}
+     *
+     * @param challengeGenerator the {@link ChallengeGenerator}
+     */
+    public void setChallengeGenerator(ChallengeGenerator challengeGenerator) {
+        Assert.notNull(challengeGenerator, "challengeGenerator must not be null");
+        this.challengeGenerator = challengeGenerator;
+    }
+
 }
@@ -0,0 +1,410 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.client.challenge.Challenge;
+import org.springframework.util.Assert;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link ChallengeRepository} implementation which keeps challenges in a bounded in-memory store instead of
+ * {@link HttpSession}.
+ * <p>
+ * Challenges are keyed by their own value, which serves as an opaque handle: the client echoes it back in the
+ * <code>clientDataJSON</code> request parameter, or in the {@link ChallengeRepository#CLIENT_DATA_JSON_ATTR_NAME}
+ * request attribute set by endpoints which receive it in a JSON body, and {@link #loadChallenge} only returns it if it is still held by
+ * the store. The store is split into shards guarded by their own locks. Every entry has the same time-to-live, so the
+ * insertion order of a shard is also its expiration order: expired entries are dropped from the eldest end of each
+ * shard, at most once per second and without a full scan. The store enforces a hard cap on entries and estimated
+ * bytes and evicts the oldest entries of a shard when the cap is reached, so that a flood of anonymous options
+ * requests cannot exhaust the heap. The shards are the only structures which hold entries.
+ * <p>
+ * The store is local to the JVM. Use it with sticky sessions or a single node.
+ */
+public class InMemoryChallengeRepository implements ChallengeRepository {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final String CHALLENGE_ATTR_NAME = InMemoryChallengeRepository.class
+            .getName().concat(".CHALLENGE");
+
+    /**
+     * Estimated per-entry overhead of the map entry, key, value and challenge objects in bytes
+     */
+    static final int ENTRY_OVERHEAD = 160;
+
+    private static final int DEFAULT_SHARD_COUNT = 16;
+    private static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(5);
+    private static final int DEFAULT_MAX_ENTRIES = 100_000;
+    private static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+    private static final long TICK_MILLIS = 1000;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final EchoedChallengeResolver echoedChallengeResolver;
+    private final Shard[] shards;
+    private final long timeToLiveMillis;
+    private final int maxEntriesPerShard;
+    private final long maxBytesPerShard;
+
+    private final AtomicLong lastExpiredTick = new AtomicLong();
+
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder expirationCount = new LongAdder();
+
+    private Clock clock = Clock.systemUTC();
+    private ChallengeGenerator challengeGenerator = new DefaultChallengeGenerator();
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor with default time-to-live (5 minutes), max entries (100,000) and max bytes (32MiB)
+     *
+     * @param objectConverter converter used to parse the <code>clientDataJSON</code> sent back by the client
+     */
+    public InMemoryChallengeRepository(ObjectConverter objectConverter) {
+        this(objectConverter, DEFAULT_TIME_TO_LIVE, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param objectConverter converter used to parse the <code>clientDataJSON</code> sent back by the client
+     * @param timeToLive      duration in which a saved challenge is kept
+     * @param maxEntries      hard cap of the number of entries
+     * @param maxBytes        hard cap of the estimated memory consumption in bytes
+     */
+    public InMemoryChallengeRepository(ObjectConverter objectConverter, Duration timeToLive, int maxEntries, long maxBytes) {
+        Assert.notNull(timeToLive, "timeToLive must not be null");
+        Assert.isTrue(!timeToLive.isNegative() && !timeToLive.isZero(), "timeToLive must be positive");
+        Assert.isTrue(maxEntries >= DEFAULT_SHARD_COUNT, "maxEntries must be at least " + DEFAULT_SHARD_COUNT);
+        Assert.isTrue(maxBytes >= (long) DEFAULT_SHARD_COUNT * ENTRY_OVERHEAD, "maxBytes is too small");
+
+        this.echoedChallengeResolver = new EchoedChallengeResolver(objectConverter);
+        this.timeToLiveMillis = timeToLive.toMillis();
+        this.maxEntriesPerShard = maxEntries / DEFAULT_SHARD_COUNT;
+        this.maxBytesPerShard = maxBytes / DEFAULT_SHARD_COUNT;
+
+        this.shards = new Shard[DEFAULT_SHARD_COUNT];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public Challenge generateChallenge() {
+        return challengeGenerator.generate();
+    }
+
+    @Override
+    public void saveChallenge(Challenge challenge, HttpServletRequest request) {
+        long now = clock.millis();
+        expire(now);
+        if (challenge == null) {
+            Challenge echoedChallenge = echoedChallengeResolver.resolve(request);
+            if (echoedChallenge != null) {
+                Handle handle = new Handle(echoedChallenge.getValue());
+                shardFor(handle).remove(handle);
+            }
+            request.removeAttribute(CHALLENGE_ATTR_NAME);
+        } else {
+            Handle handle = new Handle(challenge.getValue());
+            Entry entry = new Entry(challenge, now + timeToLiveMillis);
+            shardFor(handle).put(handle, entry);
+            request.setAttribute(CHALLENGE_ATTR_NAME, challenge);
+        }
+    }
+
+    @Override
+    public Challenge loadChallenge(HttpServletRequest request) {
+        Challenge challenge = (Challenge) request.getAttribute(CHALLENGE_ATTR_NAME);
+        if (challenge != null) {
+            return challenge;
+        }
+        long now = clock.millis();
+        expire(now);
+        Challenge echoedChallenge = echoedChallengeResolver.resolve(request);
+        if (echoedChallenge == null) {
+            return null;
+        }
+        Handle handle = new Handle(echoedChallenge.getValue());
+        Entry entry = shardFor(handle).get(handle);
+        if (entry == null || entry.deadline <= now) {
+            return null;
+        }
+        return entry.challenge;
+    }
+
+    @Override
+    public Challenge consumeChallenge(HttpServletRequest request) {
+        Challenge challenge = (Challenge) request.getAttribute(CHALLENGE_ATTR_NAME);
+        request.removeAttribute(CHALLENGE_ATTR_NAME);
+        long now = clock.millis();
+        expire(now);
+        Challenge echoedChallenge = echoedChallengeResolver.resolve(request);
+        if (echoedChallenge == null) {
+            return challenge;
+        }
+        Handle handle = new Handle(echoedChallenge.getValue());
+        Entry entry = shardFor(handle).remove(handle);
+        if (challenge != null) {
+            return challenge;
+        }
+        if (entry == null || entry.deadline <= now) {
+            return null;
+        }
+        return entry.challenge;
+    }
+
+    /**
+     * Drops the expired entries of all the shards, at most once per tick.
+     * Only the thread which claims the tick expires entries; the others skip.
+     */
+    private void expire(long now) {
+        long tick = now / TICK_MILLIS;
+        long last = lastExpiredTick.get();
+        if (tick <= last || !lastExpiredTick.compareAndSet(last, tick)) {
+            return;
+        }
+        for (Shard shard : shards) {
+            shard.expire(now);
+        }
+    }
+
+    private Shard shardFor(Handle handle) {
+        int hash = handle.hashCode();
+        hash ^= (hash >>> 16);
+        return shards[hash & (shards.length - 1)];
+    }
+
+    /**
+     * Returns the number of challenges currently held
+     *
+     * @return the number of challenges
+     */
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the estimated memory consumption of the held challenges in bytes
+     *
+     * @return the estimated bytes
+     */
+    public long getEstimatedBytes() {
+        long bytes = 0;
+        for (Shard shard : shards) {
+            bytes += shard.bytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the number of challenges evicted because the store reached its cap
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Returns the number of challenges dropped because they expired
+     *
+     * @return the expiration count
+     */
+    public long getExpirationCount() {
+        return expirationCount.sum();
+    }
+
+    public String getClientDataJSONParameter() {
+        return echoedChallengeResolver.getClientDataJSONParameter();
+    }
+
+    /**
+     * Sets the request parameter name from which the challenge echoed back by the client is read
+     *
+     * @param clientDataJSONParameter the parameter name
+     */
+    public void setClientDataJSONParameter(String clientDataJSONParameter) {
+        echoedChallengeResolver.setClientDataJSONParameter(clientDataJSONParameter);
+    }
+
+    /**
+     * Sets the {@link ChallengeGenerator} used by {@link #generateChallenge()}
+     *
+     * @param challengeGenerator the {@link ChallengeGenerator}
+     */
+    public void setChallengeGenerator(ChallengeGenerator challengeGenerator) {
+        Assert.notNull(challengeGenerator, "challengeGenerator must not be null");
+        this.challengeGenerator = challengeGenerator;
+    }
+
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    private static long estimateBytes(Entry entry) {
+        return (long) entry.challenge.getValue().length * 2 + ENTRY_OVERHEAD;
+    }
+
+    private class Shard {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<Handle, Entry> entries = new LinkedHashMap<>();
+        private long bytes;
+
+        void put(Handle handle, Entry entry) {
+            lock.lock();
+            try {
+                Entry previous = entries.remove(handle);
+                if (previous != null) {
+                    bytes -= estimateBytes(previous);
+                }
+                long entryBytes = estimateBytes(entry);
+                Iterator<Map.Entry<Handle, Entry>> iterator = entries.entrySet().iterator();
+                while (iterator.hasNext() && (entries.size() >= maxEntriesPerShard || bytes + entryBytes > maxBytesPerShard)) {
+                    Entry eldest = iterator.next().getValue();
+                    iterator.remove();
+                    bytes -= estimateBytes(eldest);
+                    evictionCount.increment();
+                }
+                entries.put(handle, entry);
+                bytes += entryBytes;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Entry get(Handle handle) {
+            lock.lock();
+            try {
+                return entries.get(handle);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        Entry remove(Handle handle) {
+            lock.lock();
+            try {
+                Entry entry = entries.remove(handle);
+                if (entry != null) {
+                    bytes -= estimateBytes(entry);
+                }
+                return entry;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Drops the expired entries from the eldest end, stopping at the first entry which is still valid
+         */
+        void expire(long now) {
+            lock.lock();
+            try {
+                Iterator<Entry> iterator = entries.values().iterator();
+                while (iterator.hasNext()) {
+                    Entry entry = iterator.next();
+                    if (entry.deadline > now) {
+                        break;
+                    }
+                    iterator.remove();
+                    bytes -= estimateBytes(entry);
+                    expirationCount.increment();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return entries.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long bytes() {
+            lock.lock();
+            try {
+                return bytes;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static class Entry {
+
+        private final Challenge challenge;
+        private final long deadline;
+
+        Entry(Challenge challenge, long deadline) {
+            this.challenge = challenge;
+            this.deadline = deadline;
+        }
+    }
+
+    private static class Handle {
+
+        private final byte[] value;
+        private final int hash;
+
+        Handle(byte[] value) {
+            this.value = value;
+            this.hash = Arrays.hashCode(value);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Handle handle = (Handle) o;
+            return Arrays.equals(value, handle.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
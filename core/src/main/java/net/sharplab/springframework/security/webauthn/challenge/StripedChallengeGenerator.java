@@ -0,0 +1,77 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import org.springframework.util.Assert;
+
+import java.security.SecureRandom;
+
+/**
+ * A {@link ChallengeGenerator} implementation which spreads the load over a pool of independently seeded
+ * {@link SecureRandom} instances, selected by the calling thread, to avoid contention on a single instance
+ */
+public class StripedChallengeGenerator implements ChallengeGenerator {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+    static final int CHALLENGE_LENGTH = 16;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final SecureRandom[] stripes;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor with a stripe per available processor
+     */
+    public StripedChallengeGenerator() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor
+     *
+     * @param stripeCount the number of {@link SecureRandom} instances
+     */
+    public StripedChallengeGenerator(int stripeCount) {
+        Assert.isTrue(stripeCount > 0, "stripeCount must be positive");
+        this.stripes = new SecureRandom[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new SecureRandom();
+        }
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public Challenge generate() {
+        byte[] value = new byte[CHALLENGE_LENGTH];
+        stripe().nextBytes(value);
+        return new DefaultChallenge(value);
+    }
+
+    SecureRandom stripe() {
+        long threadId = Thread.currentThread().getId();
+        return stripes[(int) ((threadId ^ (threadId >>> 32)) & Integer.MAX_VALUE) % stripes.length];
+    }
+
+}
@@ -104,7 +104,10 @@ public class WebAuthnConfigurer<H extends HttpSecurityBuilder<H>> extends Abstra
         if (rpIcon != null) {
             optionsProvider.setRpIcon(rpIcon);
         }
-        optionsProvider.getPubKeyCredParams().addAll(publicKeyCredParamsConfig.publicKeyCredentialParameters);
+        List<PublicKeyCredentialParameters> pubKeyCredParams = new ArrayList<>(optionsProvider.getPubKeyCredParams());
+        pubKeyCredParams.addAll(publicKeyCredParamsConfig.publicKeyCredentialParameters);
+        // set through the setter so that the options template of the provider is rebuilt
+        optionsProvider.setPubKeyCredParams(pubKeyCredParams);
         if (registrationTimeout != null) {
             optionsProvider.setRegistrationTimeout(registrationTimeout);
         }
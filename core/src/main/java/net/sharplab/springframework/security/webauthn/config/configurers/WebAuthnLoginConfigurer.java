@@ -18,7 +18,9 @@ package net.sharplab.springframework.security.webauthn.config.configurers;
 
 import com.webauthn4j.converter.util.ObjectConverter;
 import net.sharplab.springframework.security.webauthn.WebAuthnProcessingFilter;
+import net.sharplab.springframework.security.webauthn.challenge.ChallengeFlushFilter;
 import net.sharplab.springframework.security.webauthn.challenge.ChallengeRepository;
+import net.sharplab.springframework.security.webauthn.challenge.CompactHttpSessionChallengeRepository;
 import net.sharplab.springframework.security.webauthn.endpoint.OptionsEndpointFilter;
 import net.sharplab.springframework.security.webauthn.options.OptionsProvider;
 import net.sharplab.springframework.security.webauthn.server.ServerPropertyProvider;
@@ -31,6 +33,7 @@ import org.springframework.security.config.annotation.web.configurers.AbstractAu
 import org.springframework.security.config.annotation.web.configurers.FormLoginConfigurer;
 import org.springframework.security.web.authentication.ForwardAuthenticationFailureHandler;
 import org.springframework.security.web.authentication.ForwardAuthenticationSuccessHandler;
+import org.springframework.security.web.context.SecurityContextPersistenceFilter;
 import org.springframework.security.web.session.SessionManagementFilter;
 import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 import org.springframework.security.web.util.matcher.RequestMatcher;
@@ -51,6 +54,7 @@ import java.util.List;
  * <ul>
  * <li>{@link WebAuthnProcessingFilter}</li>
  * <li>{@link OptionsEndpointFilter}</li>
+ * <li>{@link ChallengeFlushFilter} if the {@link CompactHttpSessionChallengeRepository} is in lazy flush mode</li>
  * </ul>
  *
  * <h2>Shared Objects Created</h2>
@@ -127,6 +131,7 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
         this.getAuthenticationFilter().setServerPropertyProvider(serverPropertyProvider);
 
         this.optionsEndpointConfig.configure(http);
+        configureChallengeFlushFilter(http);
         if (expectedAuthenticationExtensionIdsConfig.expectedAuthenticationExtensionIds.isEmpty()) {
             this.getAuthenticationFilter().setExpectedAuthenticationExtensionIds(new ArrayList<>(optionsProvider.getAuthenticationExtensions().keySet()));
         } else {
@@ -137,6 +142,15 @@ public final class WebAuthnLoginConfigurer<H extends HttpSecurityBuilder<H>> ext
 
     }
 
+    private void configureChallengeFlushFilter(H http) {
+        ChallengeRepository challengeRepository = WebAuthnConfigurerUtil.getChallengeRepository(http);
+        if (challengeRepository instanceof CompactHttpSessionChallengeRepository
+                && ((CompactHttpSessionChallengeRepository) challengeRepository).isLazyFlush()) {
+            http.addFilterAfter(new ChallengeFlushFilter((CompactHttpSessionChallengeRepository) challengeRepository),
+                    SecurityContextPersistenceFilter.class);
+        }
+    }
+
     private void configureParameters() {
         if (usernameParameter != null) {
             this.getAuthenticationFilter().setUsernameParameter(usernameParameter);
@@ -16,13 +16,20 @@
 
 package net.sharplab.springframework.security.webauthn.endpoint;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.webauthn4j.converter.util.JsonConverter;
 import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.PublicKeyCredentialParameters;
 import com.webauthn4j.data.PublicKeyCredentialRpEntity;
 import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.extension.client.AuthenticationExtensionsClientInputs;
 import net.sharplab.springframework.security.webauthn.options.AssertionOptions;
+import net.sharplab.springframework.security.webauthn.options.AttestationAndAssertionOptions;
 import net.sharplab.springframework.security.webauthn.options.AttestationOptions;
 import net.sharplab.springframework.security.webauthn.options.OptionsProvider;
+import net.sharplab.springframework.security.webauthn.options.OptionsTemplate;
+import net.sharplab.springframework.security.webauthn.options.RequestDependentOptions;
+import net.sharplab.springframework.security.webauthn.util.ServletUtil;
 import org.springframework.context.support.MessageSourceAccessor;
 import org.springframework.security.authentication.*;
 import org.springframework.security.core.Authentication;
@@ -34,11 +41,13 @@ import org.springframework.web.filter.GenericFilterBean;
 
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -71,6 +80,9 @@ public class OptionsEndpointFilter extends GenericFilterBean {
 
     private OptionsProvider optionsProvider;
 
+    private boolean templatePreSerialized = false;
+    private volatile PreSerializedTemplate preSerializedTemplate;
+
     // ~ Constructors
     // ===================================================================================================
 
@@ -108,8 +120,13 @@ public class OptionsEndpointFilter extends GenericFilterBean {
         }
 
         try {
-            OptionsResponse optionsResponse = processRequest(fi.getRequest());
-            writeResponse(fi.getResponse(), optionsResponse);
+            OptionsTemplate template = templatePreSerialized ? optionsProvider.getOptionsTemplate() : null;
+            if (template == null) {
+                OptionsResponse optionsResponse = processRequest(fi.getRequest());
+                writeResponse(fi.getResponse(), optionsResponse);
+            } else {
+                writeResponseWithTemplate(fi.getRequest(), fi.getResponse(), template);
+            }
         } catch (RuntimeException e) {
             logger.debug(e);
             writeErrorResponse(fi.getResponse(), e);
@@ -119,10 +136,10 @@ public class OptionsEndpointFilter extends GenericFilterBean {
 
     OptionsResponse processRequest(HttpServletRequest request) {
         String loginUsername = getLoginUsername();
-        AttestationOptions attestationOptions = optionsProvider.getAttestationOptions(request, loginUsername, null);
-        AssertionOptions assertionOptions = optionsProvider.getAssertionOptions(request, loginUsername, null);
-        List<WebAuthnPublicKeyCredentialDescriptor> credentials =
-                attestationOptions.getCredentials().stream().map(WebAuthnPublicKeyCredentialDescriptor::new).collect(Collectors.toList());
+        AttestationAndAssertionOptions options = optionsProvider.getOptions(request, loginUsername, null);
+        AttestationOptions attestationOptions = options.getAttestationOptions();
+        AssertionOptions assertionOptions = options.getAssertionOptions();
+        List<WebAuthnPublicKeyCredentialDescriptor> credentials = toCredentialDescriptors(attestationOptions.getCredentials());
         return new OptionsResponse(
                 attestationOptions.getRelyingParty(),
                 attestationOptions.getUser(),
@@ -137,6 +154,67 @@ public class OptionsEndpointFilter extends GenericFilterBean {
         );
     }
 
+    /**
+     * Writes the pre-serialized request independent part of the options followed by the
+     * request dependent part serialized per request
+     */
+    void writeResponseWithTemplate(HttpServletRequest request, HttpServletResponse response, OptionsTemplate template) throws IOException {
+        String loginUsername = getLoginUsername();
+        RequestDependentOptions requestDependentOptions = optionsProvider.getRequestDependentOptions(request, loginUsername, null);
+        DynamicOptionsPart dynamicPart = new DynamicOptionsPart(
+                template.getRelyingParty() == null ? template.getRelyingParty(optionsProvider.getEffectiveRpId(request)) : null,
+                requestDependentOptions.getUser(),
+                requestDependentOptions.getChallenge(),
+                toCredentialDescriptors(requestDependentOptions.getCredentials())
+        );
+        byte[] prefix = getPreSerializedPrefix(template);
+        byte[] dynamicBytes = jsonConverter.writeValueAsBytes(dynamicPart);
+        // dynamicBytes is a JSON object, whose opening brace is replaced by the prefix
+        boolean separatorRequired = prefix.length > 1 && dynamicBytes.length > 2;
+        response.setContentType("application/json");
+        response.setContentLength(prefix.length + (separatorRequired ? 1 : 0) + dynamicBytes.length - 1);
+        ServletOutputStream outputStream = response.getOutputStream();
+        outputStream.write(prefix);
+        if (separatorRequired) {
+            outputStream.write(',');
+        }
+        outputStream.write(dynamicBytes, 1, dynamicBytes.length - 1);
+    }
+
+    /**
+     * Returns the static part of the options as an unclosed JSON object, e.g. <code>{"a":1,"b":2</code>
+     */
+    private byte[] getPreSerializedPrefix(OptionsTemplate template) {
+        PreSerializedTemplate current = this.preSerializedTemplate;
+        if (current == null || current.template != template) {
+            byte[] staticBytes = jsonConverter.writeValueAsBytes(new StaticOptionsPart(template));
+            current = new PreSerializedTemplate(template, Arrays.copyOf(staticBytes, staticBytes.length - 1));
+            this.preSerializedTemplate = current;
+        }
+        return current.prefix;
+    }
+
+    private List<WebAuthnPublicKeyCredentialDescriptor> toCredentialDescriptors(List<String> credentials) {
+        return credentials.stream().map(WebAuthnPublicKeyCredentialDescriptor::new).collect(Collectors.toList());
+    }
+
+    public boolean isTemplatePreSerialized() {
+        return templatePreSerialized;
+    }
+
+    /**
+     * If set to <code>true</code>, the request independent part of the response is serialized once per
+     * {@link OptionsTemplate} of the {@link OptionsProvider} and only the relying party (if the rpId is not
+     * configured), user, challenge and credentials are serialized per request. The response has the same members as
+     * in the default mode. Providers which don't support templates ({@link OptionsProvider#getOptionsTemplate()}
+     * returns null) are served in the default mode. Defaults to <code>false</code>.
+     *
+     * @param templatePreSerialized true to pre-serialize the request independent part
+     */
+    public void setTemplatePreSerialized(boolean templatePreSerialized) {
+        this.templatePreSerialized = templatePreSerialized;
+    }
+
     public AuthenticationTrustResolver getTrustResolver() {
         return trustResolver;
     }
@@ -165,9 +243,7 @@ public class OptionsEndpointFilter extends GenericFilterBean {
     }
 
     void writeResponse(HttpServletResponse httpServletResponse, Response response) throws IOException {
-        String responseText = jsonConverter.writeValueAsString(response);
-        httpServletResponse.setContentType("application/json");
-        httpServletResponse.getWriter().print(responseText);
+        ServletUtil.writeJson(httpServletResponse, jsonConverter.writeValueAsBytes(response));
     }
 
     void writeErrorResponse(HttpServletResponse httpServletResponse, RuntimeException e) throws IOException {
@@ -180,10 +256,8 @@ public class OptionsEndpointFilter extends GenericFilterBean {
             errorResponse = new ErrorResponse("The server encountered an internal error");
             statusCode = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
         }
-        String errorResponseText = jsonConverter.writeValueAsString(errorResponse);
-        httpServletResponse.setContentType("application/json");
-        httpServletResponse.getWriter().print(errorResponseText);
         httpServletResponse.setStatus(statusCode);
+        ServletUtil.writeJson(httpServletResponse, jsonConverter.writeValueAsBytes(errorResponse));
     }
 
     String getLoginUsername() {
@@ -198,4 +272,91 @@ public class OptionsEndpointFilter extends GenericFilterBean {
     public void setFilterProcessesUrl(String filterProcessesUrl) {
         this.filterProcessesUrl = filterProcessesUrl;
     }
+
+    private static class PreSerializedTemplate {
+        private final OptionsTemplate template;
+        private final byte[] prefix;
+
+        PreSerializedTemplate(OptionsTemplate template, byte[] prefix) {
+            this.template = template;
+            this.prefix = prefix;
+        }
+    }
+
+    /**
+     * The request independent members of {@link OptionsResponse}. The relying party is omitted if it is request
+     * dependent; the other members follow the inclusion rules of {@link OptionsResponse}.
+     */
+    static class StaticOptionsPart {
+        private final OptionsTemplate template;
+
+        StaticOptionsPart(OptionsTemplate template) {
+            this.template = template;
+        }
+
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public PublicKeyCredentialRpEntity getRelyingParty() {
+            return template.getRelyingParty();
+        }
+
+        public List<PublicKeyCredentialParameters> getPubKeyCredParams() {
+            return template.getPubKeyCredParams();
+        }
+
+        public Long getRegistrationTimeout() {
+            return template.getRegistrationTimeout();
+        }
+
+        public Long getAuthenticationTimeout() {
+            return template.getAuthenticationTimeout();
+        }
+
+        public AuthenticationExtensionsClientInputs getRegistrationExtensions() {
+            return template.getRegistrationExtensions();
+        }
+
+        public AuthenticationExtensionsClientInputs getAuthenticationExtensions() {
+            return template.getAuthenticationExtensions();
+        }
+
+        public Parameters getParameters() {
+            return template.getParameters();
+        }
+    }
+
+    /**
+     * The request dependent members of {@link OptionsResponse}. The relying party is omitted if it is part of the
+     * {@link StaticOptionsPart}; the other members follow the inclusion rules of {@link OptionsResponse}.
+     */
+    static class DynamicOptionsPart {
+        private final PublicKeyCredentialRpEntity relyingParty;
+        private final WebAuthnPublicKeyCredentialUserEntity user;
+        private final Challenge challenge;
+        private final List<WebAuthnPublicKeyCredentialDescriptor> credentials;
+
+        DynamicOptionsPart(PublicKeyCredentialRpEntity relyingParty, WebAuthnPublicKeyCredentialUserEntity user,
+                           Challenge challenge, List<WebAuthnPublicKeyCredentialDescriptor> credentials) {
+            this.relyingParty = relyingParty;
+            this.user = user;
+            this.challenge = challenge;
+            this.credentials = credentials;
+        }
+
+        @JsonInclude(JsonInclude.Include.NON_NULL)
+        public PublicKeyCredentialRpEntity getRelyingParty() {
+            return relyingParty;
+        }
+
+        public WebAuthnPublicKeyCredentialUserEntity getUser() {
+            return user;
+        }
+
+        public Challenge getChallenge() {
+            return challenge;
+        }
+
+        public List<WebAuthnPublicKeyCredentialDescriptor> getCredentials() {
+            return credentials;
+        }
+    }
 }
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.metadata;
+
+import com.webauthn4j.metadata.HttpClient;
+import com.webauthn4j.util.MessageDigestUtil;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.Assert;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An {@link HttpClient} implementation with Spring {@link RestTemplate}, which keeps the fetched documents, such as
+ * the FIDO metadata TOC and statements, in a local cache directory.
+ * <p>
+ * Responses are streamed to a file in the cache directory and moved into place atomically, together with their
+ * <code>ETag</code> and <code>Last-Modified</code> headers. Subsequent requests for the same URL are conditional, so an
+ * unchanged document is answered with <code>304 Not Modified</code> and not downloaded again. A document which is
+ * already in the cache directory, for example from before a restart, is returned without any network access.
+ * <p>
+ * When a refresh interval is set, cached documents are refreshed in the background from {@link #afterPropertiesSet()}
+ * until {@link #destroy()}, and {@link #fetch(String)} never waits for the network once a document is cached.
+ * Otherwise {@link #fetch(String)} sends a conditional request each time, and falls back to the cached document if the
+ * request fails. Signature verification and parsing of the documents are left to the consumer of this client.
+ */
+public class CachingRestTemplateAdaptorHttpClient implements HttpClient, InitializingBean, DisposableBean {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+    private static final String BODY_SUFFIX = ".body";
+    private static final String HEADERS_SUFFIX = ".headers";
+    private static final String URL_KEY = "url";
+
+    //~ Instance fields
+    // ================================================================================================
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final RestTemplate restTemplate;
+    private final Path cacheDirectory;
+    private final Map<String, CachedDocument> cachedDocuments = new ConcurrentHashMap<>();
+    private final Object fetchLock = new Object();
+    private Duration refreshInterval;
+    private ScheduledExecutorService scheduler;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public CachingRestTemplateAdaptorHttpClient(RestTemplate restTemplate, Path cacheDirectory) {
+        Assert.notNull(restTemplate, "restTemplate must not be null");
+        Assert.notNull(cacheDirectory, "cacheDirectory must not be null");
+        this.restTemplate = restTemplate;
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Starts the background refresh when a refresh interval is set
+     */
+    @Override
+    public void afterPropertiesSet() {
+        if (refreshInterval == null || scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "webauthn-metadata-fetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = refreshInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::refreshAllSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background refresh
+     */
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String fetch(String url) {
+        Assert.notNull(url, "url must not be null");
+        CachedDocument cachedDocument = getCachedDocument(url);
+        if (cachedDocument == null) {
+            return refresh(url).body;
+        }
+        if (refreshInterval != null) {
+            return cachedDocument.body;
+        }
+        try {
+            return refresh(url).body;
+        } catch (RuntimeException e) {
+            logger.warn("Failed to refresh " + url + ", the cached document is used", e);
+            return cachedDocument.body;
+        }
+    }
+
+    /**
+     * Refreshes the cached documents of all the URLs fetched so far
+     */
+    public void refreshAll() {
+        for (String url : cachedDocuments.keySet()) {
+            try {
+                refresh(url);
+            } catch (RuntimeException e) {
+                logger.warn("Failed to refresh " + url, e);
+            }
+        }
+    }
+
+    public Duration getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    /**
+     * Sets the interval of the background refresh. Background refresh is disabled if null.
+     *
+     * @param refreshInterval refresh interval
+     */
+    public void setRefreshInterval(Duration refreshInterval) {
+        Assert.isTrue(refreshInterval == null || (!refreshInterval.isNegative() && !refreshInterval.isZero()), "refreshInterval must be positive");
+        this.refreshInterval = refreshInterval;
+    }
+
+    public Path getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    private void refreshAllSafely() {
+        try {
+            refreshAll();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to refresh metadata documents", e);
+        }
+    }
+
+    private CachedDocument getCachedDocument(String url) {
+        CachedDocument cachedDocument = cachedDocuments.get(url);
+        if (cachedDocument != null) {
+            return cachedDocument;
+        }
+        synchronized (fetchLock) {
+            cachedDocument = cachedDocuments.get(url);
+            if (cachedDocument == null) {
+                cachedDocument = readCachedDocument(url);
+                if (cachedDocument != null) {
+                    cachedDocuments.put(url, cachedDocument);
+                }
+            }
+            return cachedDocument;
+        }
+    }
+
+    /**
+     * Sends a conditional request for the URL, and updates the cached document if it was modified
+     *
+     * @param url url
+     * @return the current document
+     */
+    private CachedDocument refresh(String url) {
+        CachedDocument cachedDocument = cachedDocuments.get(url);
+        CachedDocument refreshed = restTemplate.execute(url, HttpMethod.GET,
+                request -> {
+                    if (cachedDocument != null && cachedDocument.eTag != null) {
+                        request.getHeaders().setIfNoneMatch(cachedDocument.eTag);
+                    }
+                    if (cachedDocument != null && cachedDocument.lastModified != null) {
+                        request.getHeaders().set(HttpHeaders.IF_MODIFIED_SINCE, cachedDocument.lastModified);
+                    }
+                },
+                response -> {
+                    if (response.getStatusCode() == HttpStatus.NOT_MODIFIED && cachedDocument != null) {
+                        return cachedDocument;
+                    }
+                    HttpHeaders headers = response.getHeaders();
+                    return writeCachedDocument(url, response.getBody(), headers.getETag(), headers.getFirst(HttpHeaders.LAST_MODIFIED));
+                });
+        Assert.state(refreshed != null, "response must not be null");
+        cachedDocuments.put(url, refreshed);
+        return refreshed;
+    }
+
+    private CachedDocument readCachedDocument(String url) {
+        Path bodyFile = resolve(url, BODY_SUFFIX);
+        Path headersFile = resolve(url, HEADERS_SUFFIX);
+        if (!Files.exists(bodyFile) || !Files.exists(headersFile)) {
+            return null;
+        }
+        try (InputStream inputStream = Files.newInputStream(headersFile)) {
+            Properties properties = new Properties();
+            properties.load(inputStream);
+            if (!url.equals(properties.getProperty(URL_KEY))) {
+                return null;
+            }
+            String body = new String(Files.readAllBytes(bodyFile), StandardCharsets.UTF_8);
+            return new CachedDocument(body, properties.getProperty(HttpHeaders.ETAG), properties.getProperty(HttpHeaders.LAST_MODIFIED));
+        } catch (IOException e) {
+            logger.warn("Failed to read the cached document of " + url, e);
+            return null;
+        }
+    }
+
+    private CachedDocument writeCachedDocument(String url, InputStream body, String eTag, String lastModified) throws IOException {
+        Files.createDirectories(cacheDirectory);
+        Path bodyFile = Files.createTempFile(cacheDirectory, null, BODY_SUFFIX);
+        Path headersFile = Files.createTempFile(cacheDirectory, null, HEADERS_SUFFIX);
+        try {
+            Files.copy(body, bodyFile, StandardCopyOption.REPLACE_EXISTING);
+            Properties properties = new Properties();
+            properties.setProperty(URL_KEY, url);
+            if (eTag != null) {
+                properties.setProperty(HttpHeaders.ETAG, eTag);
+            }
+            if (lastModified != null) {
+                properties.setProperty(HttpHeaders.LAST_MODIFIED, lastModified);
+            }
+            try (OutputStream outputStream = Files.newOutputStream(headersFile)) {
+                properties.store(outputStream, null);
+            }
+            String document = new String(Files.readAllBytes(bodyFile), StandardCharsets.UTF_8);
+            // the body is moved first, so a crash in between only leaves former validators, which cause a full download next time
+            Files.move(bodyFile, resolve(url, BODY_SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(headersFile, resolve(url, HEADERS_SUFFIX), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new CachedDocument(document, eTag, lastModified);
+        } finally {
+            Files.deleteIfExists(bodyFile);
+            Files.deleteIfExists(headersFile);
+        }
+    }
+
+    private Path resolve(String url, String suffix) {
+        byte[] hash = MessageDigestUtil.createSHA256().digest(url.getBytes(StandardCharsets.UTF_8));
+        return cacheDirectory.resolve(Base64.getUrlEncoder().withoutPadding().encodeToString(hash) + suffix);
+    }
+
+    private static final class CachedDocument {
+
+        private final String body;
+        private final String eTag;
+        private final String lastModified;
+
+        CachedDocument(String body, String eTag, String lastModified) {
+            this.body = body;
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+    }
+}
@@ -21,31 +21,57 @@ import com.webauthn4j.converter.util.ObjectConverter;
 import com.webauthn4j.data.attestation.authenticator.AAGUID;
 import com.webauthn4j.metadata.MetadataStatementsProvider;
 import com.webauthn4j.metadata.data.statement.MetadataStatement;
-import com.webauthn4j.util.AssertUtil;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.context.ResourceLoaderAware;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternUtils;
 import org.springframework.util.Assert;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 /**
  * A {@link MetadataStatementsProvider} implementation that loads {@link MetadataStatement}(s) from JSON files in Spring {@link Resource}s
+ * <p>
+ * JSON files are given as {@link Resource}s, as a location pattern such as <code>file:/etc/fido/metadata/*.json</code>,
+ * or both. They are parsed in parallel when the bean is initialized, or by the first {@link #provide()} call if
+ * {@link #setLoadOnStartup(boolean)} is disabled, and the result is published as an immutable map. {@link #reload()}
+ * re-parses only the files which are new or whose last modified timestamp changed, and reuses the others. When a reload
+ * interval is set, reloading runs in the background until {@link #destroy()}. If a reload fails, the previously
+ * loaded statements stay in use. A reload which finds no added, modified or removed file publishes nothing, and
+ * {@link #getVersion()} increases only when a load is published.
  */
-public class JsonFileResourceMetadataStatementsProvider implements MetadataStatementsProvider, InitializingBean {
+public class JsonFileResourceMetadataStatementsProvider implements VersionedMetadataStatementsProvider, InitializingBean, DisposableBean, ResourceLoaderAware {
 
     // ~ Instance fields
     // ================================================================================================
 
+    protected final Log logger = LogFactory.getLog(getClass());
+
     private JsonConverter jsonConverter;
     private List<Resource> resources;
-    private Map<AAGUID, Set<MetadataStatement>> cachedMetadataItems;
+    private String locationPattern;
+    private ResourcePatternResolver resourcePatternResolver = new PathMatchingResourcePatternResolver();
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private boolean loadOnStartup = true;
+    private Duration reloadInterval;
+
+    private final Object loadLock = new Object();
+    private volatile Map<AAGUID, Set<MetadataStatement>> cachedMetadataItems;
+    private volatile long version;
+    private Map<Resource, ParsedResource> parsedResources = Collections.emptyMap();
+    private ScheduledExecutorService scheduler;
 
     // ~ Constructors
     // ===================================================================================================
@@ -61,25 +87,176 @@ public class JsonFileResourceMetadataStatementsProvider implements MetadataState
     @Override
     public void afterPropertiesSet() {
         checkConfig();
+        if (loadOnStartup) {
+            reload();
+        }
+        if (reloadInterval != null && scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "webauthn-metadata-reloader");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = reloadInterval.toMillis();
+            scheduler.scheduleWithFixedDelay(this::reloadSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the background reloading
+     */
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
     }
 
     private void checkConfig() {
-        AssertUtil.notNull(resources, "resources must not be null");
+        Assert.isTrue(resources != null || locationPattern != null, "resources or locationPattern must not be null");
     }
 
     @Override
     public Map<AAGUID, Set<MetadataStatement>> provide() {
         checkConfig();
-        if (cachedMetadataItems == null) {
-            cachedMetadataItems =
-                    resources.stream()
-                            .map(this::readJsonFile)
+        Map<AAGUID, Set<MetadataStatement>> metadataItems = cachedMetadataItems;
+        if (metadataItems == null) {
+            synchronized (loadLock) {
+                if (cachedMetadataItems == null) {
+                    reload();
+                }
+                metadataItems = cachedMetadataItems;
+            }
+        }
+        return metadataItems;
+    }
+
+    @Override
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Loads the JSON files and publishes the {@link MetadataStatement}s.
+     * Files which have not been modified since the last load are not parsed again.
+     */
+    public void reload() {
+        checkConfig();
+        synchronized (loadLock) {
+            long start = System.nanoTime();
+            List<Resource> currentResources = resolveResources();
+            Map<Resource, ParsedResource> previous = parsedResources;
+            Map<Resource, Long> lastModified = new LinkedHashMap<>();
+            List<Resource> modified = new ArrayList<>();
+            for (Resource resource : currentResources) {
+                long resourceLastModified = getLastModified(resource);
+                lastModified.put(resource, resourceLastModified);
+                ParsedResource parsed = previous.get(resource);
+                if (parsed == null || parsed.lastModified != resourceLastModified) {
+                    modified.add(resource);
+                }
+            }
+            if (cachedMetadataItems != null && modified.isEmpty() && lastModified.keySet().equals(previous.keySet())) {
+                // keep the published map and version, so that caches keyed on them stay valid
+                logger.debug("Metadata statement JSON files are unchanged");
+                return;
+            }
+            Map<Resource, MetadataStatement> parsedStatements = parse(modified);
+
+            Map<Resource, ParsedResource> current = new LinkedHashMap<>();
+            for (Map.Entry<Resource, Long> entry : lastModified.entrySet()) {
+                MetadataStatement metadataStatement = parsedStatements.containsKey(entry.getKey())
+                        ? parsedStatements.get(entry.getKey())
+                        : previous.get(entry.getKey()).metadataStatement;
+                current.put(entry.getKey(), new ParsedResource(entry.getValue(), metadataStatement));
+            }
+            Map<AAGUID, Set<MetadataStatement>> metadataItems =
+                    current.values().stream()
+                            .map(parsedResource -> parsedResource.metadataStatement)
                             .distinct()
                             .collect(Collectors.groupingBy(this::extractAAGUID))
                             .entrySet().stream()
-                            .collect(Collectors.toMap(Map.Entry::getKey, entry -> new HashSet<>(entry.getValue())));
+                            .collect(Collectors.toMap(Map.Entry::getKey, entry -> Collections.unmodifiableSet(new HashSet<>(entry.getValue()))));
+            parsedResources = current;
+            cachedMetadataItems = Collections.unmodifiableMap(metadataItems);
+            version++;
+
+            if (logger.isInfoEnabled()) {
+                logger.info(String.format("Loaded %d metadata statements from %d JSON files in %d ms (%d parsed, %d unchanged)",
+                        metadataItems.values().stream().mapToInt(Set::size).sum(), current.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                        modified.size(), current.size() - modified.size()));
+            }
+        }
+    }
+
+    private void reloadSafely() {
+        try {
+            reload();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to reload metadata statements", e);
+        }
+    }
+
+    private List<Resource> resolveResources() {
+        Set<Resource> resolved = new LinkedHashSet<>();
+        if (resources != null) {
+            resolved.addAll(resources);
+        }
+        if (locationPattern != null) {
+            try {
+                resolved.addAll(Arrays.asList(resourcePatternResolver.getResources(locationPattern)));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to resolve metadata statement json files", e);
+            }
+        }
+        return new ArrayList<>(resolved);
+    }
+
+    private Map<Resource, MetadataStatement> parse(List<Resource> resourcesToParse) {
+        Map<Resource, MetadataStatement> parsed = new HashMap<>();
+        if (resourcesToParse.size() <= 1 || parallelism <= 1) {
+            resourcesToParse.forEach(resource -> parsed.put(resource, readJsonFile(resource)));
+            return parsed;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, resourcesToParse.size()), runnable -> {
+            Thread thread = new Thread(runnable, "webauthn-metadata-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Map<Resource, Future<MetadataStatement>> futures = new LinkedHashMap<>();
+            for (Resource resource : resourcesToParse) {
+                futures.put(resource, executor.submit(() -> readJsonFile(resource)));
+            }
+            for (Map.Entry<Resource, Future<MetadataStatement>> entry : futures.entrySet()) {
+                parsed.put(entry.getKey(), getParsed(entry.getValue()));
+            }
+            return parsed;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private MetadataStatement getParsed(Future<MetadataStatement> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading metadata statement json files", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private long getLastModified(Resource resource) {
+        try {
+            return resource.lastModified();
+        } catch (IOException e) {
+            // resources without a timestamp, such as byte arrays, are parsed only once
+            return -1;
         }
-        return cachedMetadataItems;
     }
 
     public List<Resource> getResources() {
@@ -90,7 +267,76 @@ public class JsonFileResourceMetadataStatementsProvider implements MetadataState
         this.resources = resources;
     }
 
+    public String getLocationPattern() {
+        return locationPattern;
+    }
+
+    /**
+     * Sets a location pattern to discover JSON files, such as <code>classpath:metadata/*.json</code>
+     *
+     * @param locationPattern location pattern resolved by {@link ResourcePatternResolver}
+     */
+    public void setLocationPattern(String locationPattern) {
+        this.locationPattern = locationPattern;
+    }
+
+    @Override
+    public void setResourceLoader(ResourceLoader resourceLoader) {
+        this.resourcePatternResolver = ResourcePatternUtils.getResourcePatternResolver(resourceLoader);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads to parse JSON files with
+     *
+     * @param parallelism number of threads
+     */
+    public void setParallelism(int parallelism) {
+        Assert.isTrue(parallelism > 0, "parallelism must be positive");
+        this.parallelism = parallelism;
+    }
+
+    public boolean isLoadOnStartup() {
+        return loadOnStartup;
+    }
+
+    /**
+     * Sets whether JSON files are loaded in {@link #afterPropertiesSet()} instead of by the first {@link #provide()} call
+     *
+     * @param loadOnStartup true to load on startup
+     */
+    public void setLoadOnStartup(boolean loadOnStartup) {
+        this.loadOnStartup = loadOnStartup;
+    }
+
+    public Duration getReloadInterval() {
+        return reloadInterval;
+    }
+
+    /**
+     * Sets the interval of the background reload. Background reloading is disabled if null.
+     *
+     * @param reloadInterval reload interval
+     */
+    public void setReloadInterval(Duration reloadInterval) {
+        Assert.isTrue(reloadInterval == null || (!reloadInterval.isNegative() && !reloadInterval.isZero()), "reloadInterval must be positive");
+        this.reloadInterval = reloadInterval;
+    }
+
     AAGUID extractAAGUID(MetadataStatement metadataStatement) {
+        return resolveAAGUID(metadataStatement);
+    }
+
+    /**
+     * Resolves the AAGUID which a {@link MetadataStatement} is provided for
+     *
+     * @param metadataStatement metadata statement
+     * @return the AAGUID for fido2, {@link AAGUID#ZERO} for u2f, and {@link AAGUID#NULL} for the other protocols
+     */
+    static AAGUID resolveAAGUID(MetadataStatement metadataStatement) {
         switch (metadataStatement.getProtocolFamily()) {
             case "fido2":
                 return metadataStatement.getAaguid();
@@ -109,4 +355,15 @@ public class JsonFileResourceMetadataStatementsProvider implements MetadataState
             throw new UncheckedIOException("Failed to load a metadata statement json file", e);
         }
     }
+
+    private static final class ParsedResource {
+
+        private final long lastModified;
+        private final MetadataStatement metadataStatement;
+
+        ParsedResource(long lastModified, MetadataStatement metadataStatement) {
+            this.lastModified = lastModified;
+            this.metadataStatement = metadataStatement;
+        }
+    }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.metadata;
+
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.metadata.data.statement.MetadataStatement;
+
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The verdict on an authenticator model evaluated from its {@link MetadataStatement}s: whether the model is registered
+ * in the metadata, and the trust anchors its attestation certificates must chain to.
+ * <p>
+ * {@link #evaluate(AAGUID, Set)} is meant to be used as the evaluator of a {@link MetadataVerdictCache}, so that the
+ * root certificates are decoded once per metadata change instead of on each registration.
+ *
+ * @see MetadataVerdictTrustAnchorsResolver
+ */
+public class MetadataStatementVerdict {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final MetadataStatementVerdict UNREGISTERED =
+            new MetadataStatementVerdict(false, Collections.emptySet());
+
+    //~ Instance fields
+    // ================================================================================================
+    private final boolean registered;
+    private final Set<TrustAnchor> trustAnchors;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public MetadataStatementVerdict(boolean registered, Set<TrustAnchor> trustAnchors) {
+        this.registered = registered;
+        this.trustAnchors = Collections.unmodifiableSet(trustAnchors);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Evaluates the verdict of an AAGUID from its {@link MetadataStatement}s
+     *
+     * @param aaguid             aaguid
+     * @param metadataStatements metadata statements of the AAGUID, which are empty if there are none
+     * @return verdict
+     */
+    public static MetadataStatementVerdict evaluate(AAGUID aaguid, Set<MetadataStatement> metadataStatements) {
+        if (metadataStatements.isEmpty()) {
+            return UNREGISTERED;
+        }
+        Set<TrustAnchor> trustAnchors = new HashSet<>();
+        for (MetadataStatement metadataStatement : metadataStatements) {
+            List<X509Certificate> rootCertificates = metadataStatement.getAttestationRootCertificates();
+            if (rootCertificates != null) {
+                rootCertificates.forEach(certificate -> trustAnchors.add(new TrustAnchor(certificate, null)));
+            }
+        }
+        return new MetadataStatementVerdict(true, trustAnchors);
+    }
+
+    /**
+     * Returns whether the authenticator model has a {@link MetadataStatement}
+     *
+     * @return true if registered
+     */
+    public boolean isRegistered() {
+        return registered;
+    }
+
+    public Set<TrustAnchor> getTrustAnchors() {
+        return trustAnchors;
+    }
+}
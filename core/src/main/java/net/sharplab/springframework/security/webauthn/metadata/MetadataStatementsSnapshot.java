@@ -0,0 +1,356 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.metadata;
+
+import com.webauthn4j.converter.util.JsonConverter;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.metadata.data.statement.MetadataStatement;
+import com.webauthn4j.util.MessageDigestUtil;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.StreamUtils;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A precompiled snapshot of metadata statement JSON files, which is memory-mapped and decoded lazily per AAGUID.
+ * <p>
+ * {@link #compile(List, ObjectConverter, Path)} parses the JSON files once, groups them by AAGUID as
+ * {@link JsonFileResourceMetadataStatementsProvider} does, and writes a single file. It starts with the magic
+ * <code>WAMS</code>, a format version, the fingerprint of the source files and an index, which holds the AAGUID,
+ * offset and length of each group. The groups follow, each made of length-prefixed JSON documents.
+ * {@link #open(Path, ObjectConverter)} maps the file and reads only the index. The statements of an AAGUID are parsed
+ * on its first lookup and kept for later ones. A truncated or otherwise corrupted file is reported with an
+ * {@link IllegalStateException}.
+ */
+public final class MetadataStatementsSnapshot {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+    private static final int MAGIC = 0x57414D53; // "WAMS"
+    private static final byte FORMAT_VERSION = 0x02;
+    private static final int FINGERPRINT_LENGTH = 32;
+    private static final int HEADER_LENGTH = 4 + 1 + FINGERPRINT_LENGTH + 4;
+
+    private static final byte AAGUID_NULL = 0x00;
+    private static final byte AAGUID_PRESENT = 0x01;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final ByteBuffer buffer;
+    private final byte[] fingerprint;
+    private final Map<AAGUID, Group> groups;
+    private final Map<AAGUID, Set<MetadataStatement>> metadataStatements;
+    private final JsonConverter jsonConverter;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    private MetadataStatementsSnapshot(ByteBuffer buffer, byte[] fingerprint, Map<AAGUID, Group> groups, JsonConverter jsonConverter) {
+        this.buffer = buffer;
+        this.fingerprint = fingerprint;
+        this.groups = groups;
+        this.jsonConverter = jsonConverter;
+        this.metadataStatements = new LazyMetadataStatementsMap();
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Compiles metadata statement JSON files into a snapshot file
+     *
+     * @param resources       metadata statement JSON files
+     * @param objectConverter converter to parse the JSON files with
+     * @param file            snapshot file to write
+     */
+    public static void compile(List<Resource> resources, ObjectConverter objectConverter, Path file) {
+        Assert.notNull(resources, "resources must not be null");
+        Assert.notNull(objectConverter, "objectConverter must not be null");
+        Assert.notNull(file, "file must not be null");
+        JsonConverter jsonConverter = objectConverter.getJsonConverter();
+        Map<AAGUID, Set<ByteBuffer>> documents = new LinkedHashMap<>();
+        for (Resource resource : resources) {
+            byte[] document = readResource(resource);
+            MetadataStatement metadataStatement = jsonConverter.readValue(new ByteArrayInputStream(document), MetadataStatement.class);
+            AAGUID aaguid = JsonFileResourceMetadataStatementsProvider.resolveAAGUID(metadataStatement);
+            documents.computeIfAbsent(aaguid, key -> new LinkedHashSet<>()).add(ByteBuffer.wrap(document));
+        }
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporaryFile = Files.createTempFile(directory, null, ".tmp");
+            try {
+                try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+                    write(outputStream, fingerprint(resources), documents);
+                }
+                Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporaryFile);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write a metadata statements snapshot", e);
+        }
+    }
+
+    /**
+     * Opens a snapshot file
+     *
+     * @param file            snapshot file
+     * @param objectConverter converter to parse the metadata statements with
+     * @return snapshot
+     */
+    public static MetadataStatementsSnapshot open(Path file, ObjectConverter objectConverter) {
+        Assert.notNull(file, "file must not be null");
+        Assert.notNull(objectConverter, "objectConverter must not be null");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] fingerprint = readFingerprint(buffer);
+            return new MetadataStatementsSnapshot(buffer, fingerprint, readIndex(buffer), objectConverter.getJsonConverter());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open a metadata statements snapshot", e);
+        }
+    }
+
+    /**
+     * Computes the fingerprint of metadata statement JSON files from the description and the last modified time of
+     * each of them. Resources without a last modified time contribute their description only.
+     *
+     * @param resources metadata statement JSON files
+     * @return SHA-256 digest
+     */
+    public static byte[] fingerprint(List<Resource> resources) {
+        Assert.notNull(resources, "resources must not be null");
+        MessageDigest messageDigest = MessageDigestUtil.createSHA256();
+        for (Resource resource : resources) {
+            messageDigest.update(resource.getDescription().getBytes(StandardCharsets.UTF_8));
+            messageDigest.update(ByteBuffer.allocate(1 + 8).put((byte) 0).putLong(getLastModified(resource)).array());
+        }
+        return messageDigest.digest();
+    }
+
+    /**
+     * Returns the fingerprint of the metadata statement JSON files the snapshot was compiled from
+     *
+     * @return SHA-256 digest computed by {@link #fingerprint(List)}
+     */
+    public byte[] getFingerprint() {
+        return fingerprint.clone();
+    }
+
+    /**
+     * Returns the metadata statements, which are parsed on the first lookup of each AAGUID
+     *
+     * @return unmodifiable AAGUID key {@link MetadataStatement} {@link Set} value {@link Map}
+     */
+    public Map<AAGUID, Set<MetadataStatement>> getMetadataStatements() {
+        return metadataStatements;
+    }
+
+    private static void write(DataOutputStream outputStream, byte[] fingerprint, Map<AAGUID, Set<ByteBuffer>> documents) throws IOException {
+        outputStream.writeInt(MAGIC);
+        outputStream.writeByte(FORMAT_VERSION);
+        outputStream.write(fingerprint);
+        outputStream.writeInt(documents.size());
+        int indexLength = 0;
+        for (AAGUID aaguid : documents.keySet()) {
+            indexLength += (AAGUID.NULL.equals(aaguid) ? 1 : 17) + 4 + 4;
+        }
+        int offset = HEADER_LENGTH + indexLength;
+        for (Map.Entry<AAGUID, Set<ByteBuffer>> entry : documents.entrySet()) {
+            if (AAGUID.NULL.equals(entry.getKey())) {
+                outputStream.writeByte(AAGUID_NULL);
+            } else {
+                outputStream.writeByte(AAGUID_PRESENT);
+                outputStream.write(entry.getKey().getBytes());
+            }
+            int length = 0;
+            for (ByteBuffer document : entry.getValue()) {
+                length += 4 + document.remaining();
+            }
+            outputStream.writeInt(offset);
+            outputStream.writeInt(length);
+            offset += length;
+        }
+        for (Set<ByteBuffer> group : documents.values()) {
+            for (ByteBuffer document : group) {
+                outputStream.writeInt(document.remaining());
+                outputStream.write(document.array(), document.arrayOffset() + document.position(), document.remaining());
+            }
+        }
+    }
+
+    private static byte[] readFingerprint(ByteBuffer buffer) {
+        try {
+            if (buffer.getInt(0) != MAGIC || buffer.get(4) != FORMAT_VERSION) {
+                throw new IllegalStateException("Not a metadata statements snapshot of a supported format");
+            }
+            byte[] fingerprint = new byte[FINGERPRINT_LENGTH];
+            ByteBuffer header = buffer.duplicate();
+            header.position(5);
+            header.get(fingerprint);
+            return fingerprint;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalStateException("Corrupted metadata statements snapshot", e);
+        }
+    }
+
+    private static Map<AAGUID, Group> readIndex(ByteBuffer buffer) {
+        try {
+            ByteBuffer index = buffer.duplicate();
+            index.position(5 + FINGERPRINT_LENGTH);
+            int groupCount = index.getInt();
+            Map<AAGUID, Group> groups = new HashMap<>();
+            for (int i = 0; i < groupCount; i++) {
+                AAGUID aaguid;
+                if (index.get() == AAGUID_NULL) {
+                    aaguid = AAGUID.NULL;
+                } else {
+                    byte[] aaguidBytes = new byte[16];
+                    index.get(aaguidBytes);
+                    aaguid = new AAGUID(aaguidBytes);
+                }
+                int offset = index.getInt();
+                int length = index.getInt();
+                if (offset < 0 || length < 0 || offset > buffer.limit() - length) {
+                    throw new IllegalStateException("Corrupted metadata statements snapshot");
+                }
+                groups.put(aaguid, new Group(offset, length));
+            }
+            return Collections.unmodifiableMap(groups);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalStateException("Corrupted metadata statements snapshot", e);
+        }
+    }
+
+    private Set<MetadataStatement> decode(Group group) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(group.offset);
+        slice.limit(group.offset + group.length);
+        Set<MetadataStatement> decoded = new HashSet<>();
+        while (slice.hasRemaining()) {
+            if (slice.remaining() < 4) {
+                throw new IllegalStateException("Corrupted metadata statements snapshot");
+            }
+            int length = slice.getInt();
+            if (length < 0 || length > slice.remaining()) {
+                throw new IllegalStateException("Corrupted metadata statements snapshot");
+            }
+            byte[] document = new byte[length];
+            slice.get(document);
+            decoded.add(jsonConverter.readValue(new ByteArrayInputStream(document), MetadataStatement.class));
+        }
+        return Collections.unmodifiableSet(decoded);
+    }
+
+    private static byte[] readResource(Resource resource) {
+        try (InputStream inputStream = resource.getInputStream()) {
+            return StreamUtils.copyToByteArray(inputStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to load a metadata statement json file", e);
+        }
+    }
+
+    private static long getLastModified(Resource resource) {
+        try {
+            return resource.lastModified();
+        } catch (IOException e) {
+            // resources without a timestamp, such as byte arrays
+            return -1;
+        }
+    }
+
+    private static final class Group {
+
+        private final int offset;
+        private final int length;
+
+        Group(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final class LazyMetadataStatementsMap extends AbstractMap<AAGUID, Set<MetadataStatement>> {
+
+        private final Map<AAGUID, Set<MetadataStatement>> decoded = new ConcurrentHashMap<>();
+
+        @Override
+        public Set<MetadataStatement> get(Object key) {
+            Group group = groups.get(key);
+            if (group == null) {
+                return null;
+            }
+            return decoded.computeIfAbsent((AAGUID) key, aaguid -> decode(group));
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return groups.containsKey(key);
+        }
+
+        @Override
+        public Set<AAGUID> keySet() {
+            return groups.keySet();
+        }
+
+        @Override
+        public int size() {
+            return groups.size();
+        }
+
+        @Override
+        public Set<Entry<AAGUID, Set<MetadataStatement>>> entrySet() {
+            return new AbstractSet<Entry<AAGUID, Set<MetadataStatement>>>() {
+                @Override
+                public Iterator<Entry<AAGUID, Set<MetadataStatement>>> iterator() {
+                    Iterator<AAGUID> keys = groups.keySet().iterator();
+                    return new Iterator<Entry<AAGUID, Set<MetadataStatement>>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return keys.hasNext();
+                        }
+
+                        @Override
+                        public Entry<AAGUID, Set<MetadataStatement>> next() {
+                            AAGUID aaguid = keys.next();
+                            return new SimpleImmutableEntry<>(aaguid, get(aaguid));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return groups.size();
+                }
+            };
+        }
+    }
+}
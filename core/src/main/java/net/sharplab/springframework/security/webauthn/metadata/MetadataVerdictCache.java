@@ -0,0 +1,172 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.metadata;
+
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.metadata.MetadataStatementsProvider;
+import com.webauthn4j.metadata.data.statement.MetadataStatement;
+import org.springframework.util.Assert;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * A cache of verdicts evaluated from the {@link MetadataStatement}s of each AAGUID, such as the
+ * {@link MetadataStatementVerdict} resolved by {@link MetadataVerdictTrustAnchorsResolver}.
+ * <p>
+ * A verdict is evaluated on the first lookup of its AAGUID, and reused until the {@link MetadataStatement}s change.
+ * With a {@link VersionedMetadataStatementsProvider}, a change is detected by {@link VersionedMetadataStatementsProvider#getVersion()},
+ * and {@link MetadataStatementsProvider#provide()} is called only when it changes. Any other provider is called on
+ * each lookup, and a change is detected by the identity of the returned map, so such a provider must return the same
+ * map instance until its statements change; a provider building a new map on each call makes every lookup evaluate
+ * again. Each change increases {@link #getVersion()} and discards all the verdicts.
+ * <p>
+ * Only the verdicts returned by the evaluator are cached. Rejections should be expressed in the verdict, and the
+ * caller throws its own exception for them; an evaluation which fails with an exception, or returns null, is
+ * evaluated again on the next lookup.
+ *
+ * @param <V> verdict type
+ */
+public class MetadataVerdictCache<V> {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+
+    private static final long UNVERSIONED = -1;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final MetadataStatementsProvider metadataStatementsProvider;
+    private final BiFunction<AAGUID, Set<MetadataStatement>, V> evaluator;
+    private volatile Snapshot<V> snapshot;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor
+     *
+     * @param metadataStatementsProvider provider of the {@link MetadataStatement}s
+     * @param evaluator                  evaluates the verdict of an AAGUID from its {@link MetadataStatement}s, which
+     *                                   are empty if there are none
+     */
+    public MetadataVerdictCache(MetadataStatementsProvider metadataStatementsProvider, BiFunction<AAGUID, Set<MetadataStatement>, V> evaluator) {
+        Assert.notNull(metadataStatementsProvider, "metadataStatementsProvider must not be null");
+        Assert.notNull(evaluator, "evaluator must not be null");
+        this.metadataStatementsProvider = metadataStatementsProvider;
+        this.evaluator = evaluator;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Returns the verdict of the AAGUID
+     *
+     * @param aaguid aaguid
+     * @return verdict
+     */
+    public V get(AAGUID aaguid) {
+        Assert.notNull(aaguid, "aaguid must not be null");
+        Snapshot<V> current = getSnapshot();
+        V verdict = current.verdicts.get(aaguid);
+        if (verdict == null) {
+            verdict = current.verdicts.computeIfAbsent(aaguid,
+                    key -> evaluator.apply(key, current.metadataStatements.getOrDefault(key, Collections.emptySet())));
+        }
+        return verdict;
+    }
+
+    /**
+     * Returns the version of the metadata the verdicts are evaluated from, which increases each time it changes
+     *
+     * @return version, or 0 if nothing is evaluated yet
+     */
+    public long getVersion() {
+        Snapshot<V> current = snapshot;
+        return current == null ? 0 : current.version;
+    }
+
+    /**
+     * Discards all the verdicts
+     */
+    public void invalidateAll() {
+        Snapshot<V> current = snapshot;
+        if (current != null) {
+            current.verdicts.clear();
+        }
+    }
+
+    public int getSize() {
+        Snapshot<V> current = snapshot;
+        return current == null ? 0 : current.verdicts.size();
+    }
+
+    private Snapshot<V> getSnapshot() {
+        if (metadataStatementsProvider instanceof VersionedMetadataStatementsProvider) {
+            // the version is read before the statements, so that a concurrent change causes one more evaluation at
+            // worst, and never tags outdated statements with the new version
+            long providerVersion = ((VersionedMetadataStatementsProvider) metadataStatementsProvider).getVersion();
+            Snapshot<V> current = snapshot;
+            if (current != null && current.providerVersion == providerVersion) {
+                return current;
+            }
+            synchronized (this) {
+                current = snapshot;
+                if (current == null || current.providerVersion != providerVersion) {
+                    current = update(current, providerVersion, metadataStatementsProvider.provide());
+                }
+                return current;
+            }
+        }
+        Map<AAGUID, Set<MetadataStatement>> metadataStatements = metadataStatementsProvider.provide();
+        Snapshot<V> current = snapshot;
+        if (current != null && current.metadataStatements == metadataStatements) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (current == null || current.metadataStatements != metadataStatements) {
+                current = update(current, UNVERSIONED, metadataStatements);
+            }
+            return current;
+        }
+    }
+
+    private Snapshot<V> update(Snapshot<V> previous, long providerVersion, Map<AAGUID, Set<MetadataStatement>> metadataStatements) {
+        Snapshot<V> current = new Snapshot<>(previous == null ? 1 : previous.version + 1, providerVersion, metadataStatements);
+        snapshot = current;
+        return current;
+    }
+
+    private static final class Snapshot<V> {
+
+        private final long version;
+        private final long providerVersion;
+        private final Map<AAGUID, Set<MetadataStatement>> metadataStatements;
+        private final Map<AAGUID, V> verdicts = new ConcurrentHashMap<>();
+
+        Snapshot(long version, long providerVersion, Map<AAGUID, Set<MetadataStatement>> metadataStatements) {
+            this.version = version;
+            this.providerVersion = providerVersion;
+            this.metadataStatements = metadataStatements;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.metadata;
+
+import com.webauthn4j.anchor.TrustAnchorsResolver;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import org.springframework.util.Assert;
+
+import java.security.cert.TrustAnchor;
+import java.util.Set;
+
+/**
+ * A {@link TrustAnchorsResolver} which resolves the {@link TrustAnchor}s of an AAGUID from the
+ * {@link MetadataStatementVerdict} cached in a {@link MetadataVerdictCache}.
+ * <p>
+ * Resolving is a single lookup in the cache, and the same unmodifiable set is returned for an AAGUID until the
+ * metadata changes, so a {@link net.sharplab.springframework.security.webauthn.anchor.CachingCertPathTrustworthinessValidator}
+ * using this resolver reuses its validated certificate paths without comparing the trust anchors. The certificate
+ * path itself is still validated by the trustworthiness validator, with its full chain setting.
+ */
+public class MetadataVerdictTrustAnchorsResolver implements TrustAnchorsResolver {
+
+    //~ Instance fields
+    // ================================================================================================
+    private final MetadataVerdictCache<MetadataStatementVerdict> metadataVerdictCache;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public MetadataVerdictTrustAnchorsResolver(MetadataVerdictCache<MetadataStatementVerdict> metadataVerdictCache) {
+        Assert.notNull(metadataVerdictCache, "metadataVerdictCache must not be null");
+        this.metadataVerdictCache = metadataVerdictCache;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<TrustAnchor> resolve(AAGUID aaguid) {
+        Assert.notNull(aaguid, "aaguid must not be null");
+        return metadataVerdictCache.get(aaguid).getTrustAnchors();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.metadata;
+
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.metadata.MetadataItemsProvider;
+import com.webauthn4j.metadata.data.MetadataItem;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link MetadataItemsProvider} decorator which calls its delegate, such as the
+ * <code>FidoMdsMetadataItemsProvider</code> verifying and parsing the FIDO metadata TOC, on a background thread, and
+ * publishes the result for the request path.
+ * <p>
+ * The first load is started in the background by {@link #afterPropertiesSet()}, so startup does not wait for the
+ * network, and the delegate is called again at each refresh interval until {@link #destroy()}. {@link #provide()}
+ * returns the last published items without calling the delegate; only a call made before the first load completes
+ * waits for it. If a refresh fails, the previously published items stay in use.
+ */
+public class RefreshingMetadataItemsProvider implements MetadataItemsProvider, InitializingBean, DisposableBean {
+
+    // ~ Instance fields
+    // ================================================================================================
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final MetadataItemsProvider delegate;
+    private Duration refreshInterval = Duration.ofHours(1);
+
+    private final Object loadLock = new Object();
+    private volatile Map<AAGUID, Set<MetadataItem>> cachedMetadataItems;
+    private ScheduledExecutorService scheduler;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public RefreshingMetadataItemsProvider(MetadataItemsProvider delegate) {
+        Assert.notNull(delegate, "delegate must not be null");
+        this.delegate = delegate;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Starts the first load and the periodic refresh in the background
+     */
+    @Override
+    public void afterPropertiesSet() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "webauthn-metadata-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::refreshSafely, 0, refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background refresh
+     */
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public Map<AAGUID, Set<MetadataItem>> provide() {
+        Map<AAGUID, Set<MetadataItem>> metadataItems = cachedMetadataItems;
+        if (metadataItems == null) {
+            synchronized (loadLock) {
+                if (cachedMetadataItems == null) {
+                    refresh();
+                }
+                metadataItems = cachedMetadataItems;
+            }
+        }
+        return metadataItems;
+    }
+
+    /**
+     * Loads the items from the delegate and publishes them
+     */
+    public void refresh() {
+        synchronized (loadLock) {
+            long start = System.nanoTime();
+            Map<AAGUID, Set<MetadataItem>> metadataItems = delegate.provide();
+            Assert.notNull(metadataItems, "delegate must not provide null");
+            cachedMetadataItems = metadataItems;
+            if (logger.isInfoEnabled()) {
+                logger.info(String.format("Refreshed metadata items of %d AAGUIDs in %d ms",
+                        metadataItems.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+            }
+        }
+    }
+
+    private void refreshSafely() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to refresh metadata items", e);
+        }
+    }
+
+    public Duration getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    /**
+     * Sets the interval of the background refresh
+     *
+     * @param refreshInterval refresh interval
+     */
+    public void setRefreshInterval(Duration refreshInterval) {
+        Assert.notNull(refreshInterval, "refreshInterval must not be null");
+        Assert.isTrue(!refreshInterval.isNegative() && !refreshInterval.isZero(), "refreshInterval must be positive");
+        this.refreshInterval = refreshInterval;
+    }
+}
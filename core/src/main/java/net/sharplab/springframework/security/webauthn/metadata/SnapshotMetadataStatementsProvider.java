@@ -0,0 +1,165 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.metadata;
+
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.metadata.MetadataStatementsProvider;
+import com.webauthn4j.metadata.data.statement.MetadataStatement;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link MetadataStatementsProvider} implementation that provides {@link MetadataStatement}(s) from a
+ * {@link MetadataStatementsSnapshot} file
+ * <p>
+ * The snapshot file can be compiled at build time with {@link MetadataStatementsSnapshot#compile(List, ObjectConverter, Path)}.
+ * If JSON file resources are set, it is compiled from them on the first run instead, and compiled again when the
+ * fingerprint of the resources, made of the description and the last modified time of each of them, differs from the
+ * one stored in the snapshot, or when the snapshot is corrupted. Only the index of the snapshot is read on startup; the statements of an AAGUID are
+ * parsed when it is looked up first.
+ */
+public class SnapshotMetadataStatementsProvider implements VersionedMetadataStatementsProvider, InitializingBean {
+
+    // ~ Instance fields
+    // ================================================================================================
+
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final ObjectConverter objectConverter;
+    private Path snapshotFile;
+    private List<Resource> resources;
+    private volatile MetadataStatementsSnapshot snapshot;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public SnapshotMetadataStatementsProvider(ObjectConverter objectConverter) {
+        Assert.notNull(objectConverter, "objectConverter must not be null");
+        this.objectConverter = objectConverter;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public void afterPropertiesSet() {
+        checkConfig();
+        getSnapshot();
+    }
+
+    private void checkConfig() {
+        Assert.notNull(snapshotFile, "snapshotFile must not be null");
+    }
+
+    @Override
+    public Map<AAGUID, Set<MetadataStatement>> provide() {
+        checkConfig();
+        return getSnapshot().getMetadataStatements();
+    }
+
+    /**
+     * Returns 1 once the snapshot is opened, as the snapshot is not reloaded afterwards
+     *
+     * @return version
+     */
+    @Override
+    public long getVersion() {
+        return snapshot == null ? 0 : 1;
+    }
+
+    private MetadataStatementsSnapshot getSnapshot() {
+        MetadataStatementsSnapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    snapshot = load();
+                }
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    private MetadataStatementsSnapshot load() {
+        if (resources == null) {
+            return MetadataStatementsSnapshot.open(snapshotFile, objectConverter);
+        }
+        byte[] fingerprint = MetadataStatementsSnapshot.fingerprint(resources);
+        MetadataStatementsSnapshot current = openIfUpToDate(fingerprint);
+        if (current != null) {
+            return current;
+        }
+        long start = System.nanoTime();
+        MetadataStatementsSnapshot.compile(resources, objectConverter, snapshotFile);
+        if (logger.isInfoEnabled()) {
+            logger.info(String.format("Compiled %d metadata statement JSON files into %s in %d ms",
+                    resources.size(), snapshotFile, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        }
+        return MetadataStatementsSnapshot.open(snapshotFile, objectConverter);
+    }
+
+    /**
+     * Opens the snapshot file if it was compiled from resources with the given fingerprint
+     *
+     * @return the snapshot, or null if it is missing, outdated or corrupted
+     */
+    private MetadataStatementsSnapshot openIfUpToDate(byte[] fingerprint) {
+        if (!Files.exists(snapshotFile)) {
+            return null;
+        }
+        try {
+            MetadataStatementsSnapshot current = MetadataStatementsSnapshot.open(snapshotFile, objectConverter);
+            return Arrays.equals(current.getFingerprint(), fingerprint) ? current : null;
+        } catch (IllegalStateException e) {
+            logger.warn("Metadata statements snapshot is corrupted, compiling it again", e);
+            return null;
+        }
+    }
+
+    public Path getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    public void setSnapshotFile(Path snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+
+    public List<Resource> getResources() {
+        return resources;
+    }
+
+    /**
+     * Sets the metadata statement JSON files to compile the snapshot from, if it is missing or outdated
+     *
+     * @param resources metadata statement JSON files
+     */
+    public void setResources(List<Resource> resources) {
+        this.resources = resources;
+    }
+}
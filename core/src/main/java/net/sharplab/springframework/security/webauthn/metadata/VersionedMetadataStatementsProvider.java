@@ -0,0 +1,37 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.metadata;
+
+import com.webauthn4j.metadata.MetadataStatementsProvider;
+
+/**
+ * A {@link MetadataStatementsProvider} which tells when the {@link com.webauthn4j.metadata.data.statement.MetadataStatement}s
+ * it provides change, so that consumers such as {@link MetadataVerdictCache} can skip {@link #provide()} while they
+ * are unchanged.
+ */
+public interface VersionedMetadataStatementsProvider extends MetadataStatementsProvider {
+
+    /**
+     * Returns the version of the provided {@link com.webauthn4j.metadata.data.statement.MetadataStatement}s, which
+     * increases each time they change
+     *
+     * @return version, or 0 if nothing is loaded yet
+     */
+    long getVersion();
+
+}
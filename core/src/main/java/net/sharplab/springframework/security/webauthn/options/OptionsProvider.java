@@ -52,6 +52,49 @@ public interface OptionsProvider {
      */
     AssertionOptions getAssertionOptions(HttpServletRequest request, String username, Challenge challenge);
 
+    /**
+     * provides {@link AttestationOptions} and {@link AssertionOptions} sharing the same challenge.
+     * If <code>username</code> is <code>null</code>, <code>user</code>, <code>credentials</code> are not populated.
+     * The default implementation calls {@link #getAttestationOptions} and {@link #getAssertionOptions};
+     * implementations should override it to load the user and access the challenge only once.
+     *
+     * @param request   request
+     * @param username  username
+     * @param challenge if null, new challenge is generated. Otherwise, specified challenge is used.
+     * @return {@link AttestationAndAssertionOptions} instance
+     */
+    default AttestationAndAssertionOptions getOptions(HttpServletRequest request, String username, Challenge challenge) {
+        AttestationOptions attestationOptions = getAttestationOptions(request, username, challenge);
+        AssertionOptions assertionOptions = getAssertionOptions(request, username, challenge);
+        return new AttestationAndAssertionOptions(attestationOptions, assertionOptions);
+    }
+
+    /**
+     * provides the request dependent part of the options, which complements {@link #getOptionsTemplate()}.
+     * If <code>username</code> is <code>null</code>, <code>user</code>, <code>credentials</code> are not populated.
+     * The default implementation derives it from {@link #getAttestationOptions}.
+     *
+     * @param request   request
+     * @param username  username
+     * @param challenge if null, new challenge is generated. Otherwise, specified challenge is used.
+     * @return {@link RequestDependentOptions} instance
+     */
+    default RequestDependentOptions getRequestDependentOptions(HttpServletRequest request, String username, Challenge challenge) {
+        AttestationOptions attestationOptions = getAttestationOptions(request, username, challenge);
+        return new RequestDependentOptions(attestationOptions.getUser(), attestationOptions.getChallenge(), attestationOptions.getCredentials());
+    }
+
+    /**
+     * returns the immutable snapshot of the request independent options.
+     * The same instance is returned as long as the configuration is not changed.
+     * The default implementation returns <code>null</code>, which means that templates are not supported.
+     *
+     * @return {@link OptionsTemplate} instance or <code>null</code>
+     */
+    default OptionsTemplate getOptionsTemplate() {
+        return null;
+    }
+
     /**
      * returns effective rpId based on request origin and configured <code>rpId</code>.
      *
@@ -16,7 +16,6 @@
 
 package net.sharplab.springframework.security.webauthn.options;
 
-import com.webauthn4j.authenticator.Authenticator;
 import com.webauthn4j.data.PublicKeyCredentialParameters;
 import com.webauthn4j.data.PublicKeyCredentialRpEntity;
 import com.webauthn4j.data.client.Origin;
@@ -28,15 +27,15 @@ import com.webauthn4j.util.Base64UrlUtil;
 import net.sharplab.springframework.security.webauthn.challenge.ChallengeRepository;
 import net.sharplab.springframework.security.webauthn.endpoint.Parameters;
 import net.sharplab.springframework.security.webauthn.endpoint.WebAuthnPublicKeyCredentialUserEntity;
-import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetails;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserCredentials;
 import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetailsService;
 import net.sharplab.springframework.security.webauthn.util.ServletUtil;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.util.Assert;
 
 import javax.servlet.http.HttpServletRequest;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
@@ -44,6 +43,11 @@ import static net.sharplab.springframework.security.webauthn.WebAuthnProcessingF
 
 /**
  * An {@link OptionsProvider} implementation
+ * <p>
+ * The configuration is frozen into an {@link OptionsTemplate} on first use, so that per request only the challenge
+ * and the credentials are built. Setters discard the template, which is rebuilt on next use. So do modifications of
+ * the list returned by {@link #getPubKeyCredParams()}. {@link #setPubKeyCredParams(List)} copies the given list, so
+ * later modifications of that list are not reflected.
  */
 public class OptionsProviderImpl implements OptionsProvider {
 
@@ -52,7 +56,7 @@ public class OptionsProviderImpl implements OptionsProvider {
     private String rpId = null;
     private String rpName = null;
     private String rpIcon = null;
-    private List<PublicKeyCredentialParameters> pubKeyCredParams = new ArrayList<>();
+    private List<PublicKeyCredentialParameters> pubKeyCredParams = new PubKeyCredParamsList(Collections.emptyList());
     private Long registrationTimeout = null;
     private Long authenticationTimeout = null;
     private AuthenticationExtensionsClientInputs<RegistrationExtensionClientInput> registrationExtensions = new AuthenticationExtensionsClientInputs<>();
@@ -69,6 +73,8 @@ public class OptionsProviderImpl implements OptionsProvider {
     private WebAuthnUserDetailsService userDetailsService;
     private ChallengeRepository challengeRepository;
 
+    private volatile OptionsTemplate optionsTemplate;
+
     // ~ Constructors
     // ===================================================================================================
 
@@ -89,64 +95,116 @@ public class OptionsProviderImpl implements OptionsProvider {
      * {@inheritDoc}
      */
     public AttestationOptions getAttestationOptions(HttpServletRequest request, String username, Challenge challenge) {
+        WebAuthnUserCredentials userCredentials = loadUserCredentials(username);
+        List<String> credentials = encodeCredentialIds(userCredentials);
+        return createAttestationOptions(request, username, userCredentials, credentials, resolveChallenge(request, challenge));
+    }
 
-        WebAuthnPublicKeyCredentialUserEntity user;
-        Collection<? extends Authenticator> authenticators;
+    public AssertionOptions getAssertionOptions(HttpServletRequest request, String username, Challenge challenge) {
+        List<String> credentials = encodeCredentialIds(loadUserCredentials(username));
+        return createAssertionOptions(request, credentials, resolveChallenge(request, challenge));
+    }
 
-        try {
-            WebAuthnUserDetails userDetails = userDetailsService.loadUserByUsername(username);
-            authenticators = userDetails.getAuthenticators();
-            String userHandle = Base64UrlUtil.encodeToString(userDetails.getUserHandle());
-            user = new WebAuthnPublicKeyCredentialUserEntity(userHandle, username);
-        } catch (UsernameNotFoundException e) {
-            authenticators = Collections.emptyList();
-            user = null;
-        }
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The user is loaded, and the challenge is loaded or saved, only once for both options.
+     */
+    @Override
+    public AttestationAndAssertionOptions getOptions(HttpServletRequest request, String username, Challenge challenge) {
+        WebAuthnUserCredentials userCredentials = loadUserCredentials(username);
+        List<String> credentials = encodeCredentialIds(userCredentials);
+        Challenge resolvedChallenge = resolveChallenge(request, challenge);
+        return new AttestationAndAssertionOptions(
+                createAttestationOptions(request, username, userCredentials, credentials, resolvedChallenge),
+                createAssertionOptions(request, credentials, resolvedChallenge)
+        );
+    }
 
-        List<String> credentials = new ArrayList<>();
-        for (Authenticator authenticator : authenticators) {
-            String credentialId = Base64UrlUtil.encodeToString(authenticator.getAttestedCredentialData().getCredentialId());
-            credentials.add(credentialId);
-        }
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Only the user is loaded and the challenge is loaded or saved; the request independent part is not built.
+     */
+    @Override
+    public RequestDependentOptions getRequestDependentOptions(HttpServletRequest request, String username, Challenge challenge) {
+        WebAuthnUserCredentials userCredentials = loadUserCredentials(username);
+        return new RequestDependentOptions(createUser(username, userCredentials), resolveChallenge(request, challenge),
+                encodeCredentialIds(userCredentials));
+    }
 
-        PublicKeyCredentialRpEntity relyingParty = new PublicKeyCredentialRpEntity(getEffectiveRpId(request), rpName, rpIcon);
-        if (challenge == null) {
-            challenge = challengeRepository.loadOrGenerateChallenge(request);
-        } else {
-            challengeRepository.saveChallenge(challenge, request);
-        }
+    private AttestationOptions createAttestationOptions(HttpServletRequest request, String username, WebAuthnUserCredentials userCredentials,
+                                                        List<String> credentials, Challenge challenge) {
+        WebAuthnPublicKeyCredentialUserEntity user = createUser(username, userCredentials);
+        OptionsTemplate template = getOptionsTemplate();
+        PublicKeyCredentialRpEntity relyingParty = template.getRelyingParty(getEffectiveRpId(request));
+        return new AttestationOptions(relyingParty, user, challenge, template.getPubKeyCredParams(), template.getRegistrationTimeout(),
+                credentials, template.getRegistrationExtensions());
+    }
 
-        return new AttestationOptions(relyingParty, user, challenge, pubKeyCredParams, registrationTimeout,
-                credentials, registrationExtensions);
+    private AssertionOptions createAssertionOptions(HttpServletRequest request, List<String> credentials, Challenge challenge) {
+        OptionsTemplate template = getOptionsTemplate();
+        String effectiveRpId = getEffectiveRpId(request);
+        return new AssertionOptions(challenge, template.getAuthenticationTimeout(), effectiveRpId, credentials,
+                template.getAuthenticationExtensions(), template.getParameters());
     }
 
-    public AssertionOptions getAssertionOptions(HttpServletRequest request, String username, Challenge challenge) {
+    private WebAuthnPublicKeyCredentialUserEntity createUser(String username, WebAuthnUserCredentials userCredentials) {
+        if (userCredentials == null) {
+            return null;
+        }
+        String userHandle = Base64UrlUtil.encodeToString(userCredentials.getUserHandle());
+        return new WebAuthnPublicKeyCredentialUserEntity(userHandle, username);
+    }
 
-        Collection<? extends Authenticator> authenticators;
+    /**
+     * Loads the credentials of the user
+     *
+     * @return the {@link WebAuthnUserCredentials} or null if the user is not found
+     */
+    private WebAuthnUserCredentials loadUserCredentials(String username) {
         try {
-            WebAuthnUserDetails userDetails = userDetailsService.loadUserByUsername(username);
-            authenticators = userDetails.getAuthenticators();
+            return userDetailsService.loadCredentialsByUsername(username);
         } catch (UsernameNotFoundException e) {
-            authenticators = Collections.emptyList();
+            return null;
         }
+    }
 
-        String effectiveRpId = getEffectiveRpId(request);
-
-        List<String> credentials = new ArrayList<>();
-        for (Authenticator authenticator : authenticators) {
-            String credentialId = Base64UrlUtil.encodeToString(authenticator.getAttestedCredentialData().getCredentialId());
-            credentials.add(credentialId);
-        }
+    private Challenge resolveChallenge(HttpServletRequest request, Challenge challenge) {
         if (challenge == null) {
-            challenge = challengeRepository.loadOrGenerateChallenge(request);
+            return challengeRepository.loadOrGenerateChallenge(request);
         } else {
             challengeRepository.saveChallenge(challenge, request);
+            return challenge;
         }
-        Parameters parameters
-                = new Parameters(usernameParameter, passwordParameter,
-                credentialIdParameter, clientDataJSONParameter, authenticatorDataParameter, signatureParameter, clientExtensionsJSONParameter);
+    }
 
-        return new AssertionOptions(challenge, authenticationTimeout, effectiveRpId, credentials, authenticationExtensions, parameters);
+    private List<String> encodeCredentialIds(WebAuthnUserCredentials userCredentials) {
+        if (userCredentials == null) {
+            return Collections.emptyList();
+        }
+        List<String> credentials = new ArrayList<>(userCredentials.getCredentials().size());
+        for (WebAuthnUserCredentials.Credential credential : userCredentials.getCredentials()) {
+            credentials.add(Base64UrlUtil.encodeToString(credential.getCredentialId()));
+        }
+        return credentials;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public OptionsTemplate getOptionsTemplate() {
+        OptionsTemplate template = this.optionsTemplate;
+        if (template == null) {
+            Parameters parameters
+                    = new Parameters(usernameParameter, passwordParameter,
+                    credentialIdParameter, clientDataJSONParameter, authenticatorDataParameter, signatureParameter, clientExtensionsJSONParameter);
+            template = new OptionsTemplate(rpId, rpName, rpIcon, pubKeyCredParams, registrationTimeout, authenticationTimeout,
+                    registrationExtensions, authenticationExtensions, parameters);
+            this.optionsTemplate = template;
+        }
+        return template;
     }
 
     public String getEffectiveRpId(HttpServletRequest request) {
@@ -166,6 +224,7 @@ public class OptionsProviderImpl implements OptionsProvider {
 
     public void setRpId(String rpId) {
         this.rpId = rpId;
+        this.optionsTemplate = null;
     }
 
     public String getRpName() {
@@ -175,6 +234,7 @@ public class OptionsProviderImpl implements OptionsProvider {
     public void setRpName(String rpName) {
         Assert.hasText(rpName, "rpName parameter must not be empty or null");
         this.rpName = rpName;
+        this.optionsTemplate = null;
     }
 
     @Override
@@ -186,6 +246,7 @@ public class OptionsProviderImpl implements OptionsProvider {
     public void setRpIcon(String rpIcon) {
         Assert.hasText(rpIcon, "rpIcon parameter must not be empty or null");
         this.rpIcon = rpIcon;
+        this.optionsTemplate = null;
     }
 
     public List<PublicKeyCredentialParameters> getPubKeyCredParams() {
@@ -193,7 +254,8 @@ public class OptionsProviderImpl implements OptionsProvider {
     }
 
     public void setPubKeyCredParams(List<PublicKeyCredentialParameters> pubKeyCredParams) {
-        this.pubKeyCredParams = pubKeyCredParams;
+        this.pubKeyCredParams = pubKeyCredParams == null ? null : new PubKeyCredParamsList(pubKeyCredParams);
+        this.optionsTemplate = null;
     }
 
     public Long getRegistrationTimeout() {
@@ -204,6 +266,7 @@ public class OptionsProviderImpl implements OptionsProvider {
         Assert.notNull(registrationTimeout, "registrationTimeout must not be null.");
         Assert.isTrue(registrationTimeout >= 0, "registrationTimeout must be within unsigned long.");
         this.registrationTimeout = registrationTimeout;
+        this.optionsTemplate = null;
     }
 
     public Long getAuthenticationTimeout() {
@@ -214,6 +277,7 @@ public class OptionsProviderImpl implements OptionsProvider {
         Assert.notNull(authenticationTimeout, "authenticationTimeout must not be null.");
         Assert.isTrue(registrationTimeout >= 0, "registrationTimeout must be within unsigned long.");
         this.authenticationTimeout = authenticationTimeout;
+        this.optionsTemplate = null;
     }
 
     public AuthenticationExtensionsClientInputs<RegistrationExtensionClientInput> getRegistrationExtensions() {
@@ -222,6 +286,7 @@ public class OptionsProviderImpl implements OptionsProvider {
 
     public void setRegistrationExtensions(AuthenticationExtensionsClientInputs<RegistrationExtensionClientInput> registrationExtensions) {
         this.registrationExtensions = registrationExtensions;
+        this.optionsTemplate = null;
     }
 
     public AuthenticationExtensionsClientInputs<AuthenticationExtensionClientInput> getAuthenticationExtensions() {
@@ -230,6 +295,7 @@ public class OptionsProviderImpl implements OptionsProvider {
 
     public void setAuthenticationExtensions(AuthenticationExtensionsClientInputs<AuthenticationExtensionClientInput> authenticationExtensions) {
         this.authenticationExtensions = authenticationExtensions;
+        this.optionsTemplate = null;
     }
 
     public String getUsernameParameter() {
@@ -239,6 +305,7 @@ public class OptionsProviderImpl implements OptionsProvider {
     public void setUsernameParameter(String usernameParameter) {
         Assert.hasText(usernameParameter, "usernameParameter must not be empty or null");
         this.usernameParameter = usernameParameter;
+        this.optionsTemplate = null;
     }
 
     public String getPasswordParameter() {
@@ -248,6 +315,7 @@ public class OptionsProviderImpl implements OptionsProvider {
     public void setPasswordParameter(String passwordParameter) {
         Assert.hasText(passwordParameter, "passwordParameter must not be empty or null");
         this.passwordParameter = passwordParameter;
+        this.optionsTemplate = null;
     }
 
     public String getCredentialIdParameter() {
@@ -257,6 +325,7 @@ public class OptionsProviderImpl implements OptionsProvider {
     public void setCredentialIdParameter(String credentialIdParameter) {
         Assert.hasText(credentialIdParameter, "credentialIdParameter must not be empty or null");
         this.credentialIdParameter = credentialIdParameter;
+        this.optionsTemplate = null;
     }
 
     public String getClientDataJSONParameter() {
@@ -266,6 +335,7 @@ public class OptionsProviderImpl implements OptionsProvider {
     public void setClientDataJSONParameter(String clientDataJSONParameter) {
         Assert.hasText(clientDataJSONParameter, "clientDataJSONParameter must not be empty or null");
         this.clientDataJSONParameter = clientDataJSONParameter;
+        this.optionsTemplate = null;
     }
 
     public String getAuthenticatorDataParameter() {
@@ -275,6 +345,7 @@ public class OptionsProviderImpl implements OptionsProvider {
     public void setAuthenticatorDataParameter(String authenticatorDataParameter) {
         Assert.hasText(authenticatorDataParameter, "authenticatorDataParameter must not be empty or null");
         this.authenticatorDataParameter = authenticatorDataParameter;
+        this.optionsTemplate = null;
     }
 
     public String getSignatureParameter() {
@@ -284,6 +355,7 @@ public class OptionsProviderImpl implements OptionsProvider {
     public void setSignatureParameter(String signatureParameter) {
         Assert.hasText(signatureParameter, "signatureParameter must not be empty or null");
         this.signatureParameter = signatureParameter;
+        this.optionsTemplate = null;
     }
 
     public String getClientExtensionsJSONParameter() {
@@ -293,6 +365,50 @@ public class OptionsProviderImpl implements OptionsProvider {
     public void setClientExtensionsJSONParameter(String clientExtensionsJSONParameter) {
         Assert.hasText(clientExtensionsJSONParameter, "clientExtensionsJSONParameter must not be empty or null");
         this.clientExtensionsJSONParameter = clientExtensionsJSONParameter;
+        this.optionsTemplate = null;
     }
 
+    /**
+     * pubKeyCredParams list which discards the {@link OptionsTemplate} on modification
+     */
+    private class PubKeyCredParamsList extends AbstractList<PublicKeyCredentialParameters> {
+
+        private final List<PublicKeyCredentialParameters> delegate;
+
+        PubKeyCredParamsList(List<PublicKeyCredentialParameters> pubKeyCredParams) {
+            this.delegate = new ArrayList<>(pubKeyCredParams);
+        }
+
+        @Override
+        public PublicKeyCredentialParameters get(int index) {
+            return delegate.get(index);
+        }
+
+        @Override
+        public int size() {
+            return delegate.size();
+        }
+
+        @Override
+        public PublicKeyCredentialParameters set(int index, PublicKeyCredentialParameters element) {
+            PublicKeyCredentialParameters previous = delegate.set(index, element);
+            optionsTemplate = null;
+            return previous;
+        }
+
+        @Override
+        public void add(int index, PublicKeyCredentialParameters element) {
+            delegate.add(index, element);
+            modCount++;
+            optionsTemplate = null;
+        }
+
+        @Override
+        public PublicKeyCredentialParameters remove(int index) {
+            PublicKeyCredentialParameters removed = delegate.remove(index);
+            modCount++;
+            optionsTemplate = null;
+            return removed;
+        }
+    }
 }
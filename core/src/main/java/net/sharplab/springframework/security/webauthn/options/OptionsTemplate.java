@@ -0,0 +1,126 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.options;
+
+import com.webauthn4j.data.PublicKeyCredentialParameters;
+import com.webauthn4j.data.PublicKeyCredentialRpEntity;
+import com.webauthn4j.data.extension.client.AuthenticationExtensionClientInput;
+import com.webauthn4j.data.extension.client.AuthenticationExtensionsClientInputs;
+import com.webauthn4j.data.extension.client.RegistrationExtensionClientInput;
+import com.webauthn4j.util.CollectionUtil;
+import net.sharplab.springframework.security.webauthn.endpoint.Parameters;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An immutable snapshot of the request independent part of {@link AttestationOptions} and {@link AssertionOptions}.
+ * <p>
+ * The relying party is only part of the snapshot if the rpId is configured, as it is derived from the request
+ * origin otherwise. The pubKeyCredParams and the extensions are copied, so later changes to the instances the template
+ * was built from are not reflected.
+ */
+public class OptionsTemplate implements Serializable {
+
+    // ~ Instance fields
+    // ================================================================================================
+
+    private final String rpName;
+    private final String rpIcon;
+    private final PublicKeyCredentialRpEntity relyingParty;
+    private final List<PublicKeyCredentialParameters> pubKeyCredParams;
+    private final Long registrationTimeout;
+    private final Long authenticationTimeout;
+    private final AuthenticationExtensionsClientInputs<RegistrationExtensionClientInput> registrationExtensions;
+    private final AuthenticationExtensionsClientInputs<AuthenticationExtensionClientInput> authenticationExtensions;
+    private final Parameters parameters;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    @SuppressWarnings("squid:S00107")
+    public OptionsTemplate(
+            String rpId,
+            String rpName,
+            String rpIcon,
+            List<PublicKeyCredentialParameters> pubKeyCredParams,
+            Long registrationTimeout,
+            Long authenticationTimeout,
+            AuthenticationExtensionsClientInputs<RegistrationExtensionClientInput> registrationExtensions,
+            AuthenticationExtensionsClientInputs<AuthenticationExtensionClientInput> authenticationExtensions,
+            Parameters parameters) {
+        this.rpName = rpName;
+        this.rpIcon = rpIcon;
+        this.relyingParty = rpId == null ? null : new PublicKeyCredentialRpEntity(rpId, rpName, rpIcon);
+        this.pubKeyCredParams = CollectionUtil.unmodifiableList(pubKeyCredParams == null ? null : new ArrayList<>(pubKeyCredParams));
+        this.registrationTimeout = registrationTimeout;
+        this.authenticationTimeout = authenticationTimeout;
+        this.registrationExtensions = registrationExtensions == null ? null : new AuthenticationExtensionsClientInputs<>(registrationExtensions);
+        this.authenticationExtensions = authenticationExtensions == null ? null : new AuthenticationExtensionsClientInputs<>(authenticationExtensions);
+        this.parameters = parameters;
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Returns the relying party for the effective rpId, reusing the pre-built one if the rpId is configured
+     *
+     * @param effectiveRpId effective rpId
+     * @return {@link PublicKeyCredentialRpEntity}
+     */
+    public PublicKeyCredentialRpEntity getRelyingParty(String effectiveRpId) {
+        if (relyingParty != null) {
+            return relyingParty;
+        }
+        return new PublicKeyCredentialRpEntity(effectiveRpId, rpName, rpIcon);
+    }
+
+    /**
+     * Returns the pre-built relying party
+     *
+     * @return {@link PublicKeyCredentialRpEntity} or null if the rpId is not configured
+     */
+    public PublicKeyCredentialRpEntity getRelyingParty() {
+        return relyingParty;
+    }
+
+    public List<PublicKeyCredentialParameters> getPubKeyCredParams() {
+        return pubKeyCredParams;
+    }
+
+    public Long getRegistrationTimeout() {
+        return registrationTimeout;
+    }
+
+    public Long getAuthenticationTimeout() {
+        return authenticationTimeout;
+    }
+
+    public AuthenticationExtensionsClientInputs<RegistrationExtensionClientInput> getRegistrationExtensions() {
+        return registrationExtensions;
+    }
+
+    public AuthenticationExtensionsClientInputs<AuthenticationExtensionClientInput> getAuthenticationExtensions() {
+        return authenticationExtensions;
+    }
+
+    public Parameters getParameters() {
+        return parameters;
+    }
+}
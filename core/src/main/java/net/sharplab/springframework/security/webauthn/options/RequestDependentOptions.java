@@ -0,0 +1,79 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.options;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.util.CollectionUtil;
+import net.sharplab.springframework.security.webauthn.endpoint.WebAuthnPublicKeyCredentialUserEntity;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * The request dependent part of {@link AttestationOptions} and {@link AssertionOptions}, which complements an
+ * {@link OptionsTemplate}
+ */
+public class RequestDependentOptions implements Serializable {
+
+    // ~ Instance fields
+    // ================================================================================================
+
+    private WebAuthnPublicKeyCredentialUserEntity user;
+    private Challenge challenge;
+    private List<String> credentials;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public RequestDependentOptions(WebAuthnPublicKeyCredentialUserEntity user, Challenge challenge, List<String> credentials) {
+        this.user = user;
+        this.challenge = challenge;
+        this.credentials = CollectionUtil.unmodifiableList(credentials);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    public WebAuthnPublicKeyCredentialUserEntity getUser() {
+        return user;
+    }
+
+    public Challenge getChallenge() {
+        return challenge;
+    }
+
+    public List<String> getCredentials() {
+        return credentials;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RequestDependentOptions that = (RequestDependentOptions) o;
+        return Objects.equals(user, that.user) &&
+                Objects.equals(challenge, that.challenge) &&
+                Objects.equals(credentials, that.credentials);
+    }
+
+    @Override
+    public int hashCode() {
+
+        return Objects.hash(user, challenge, credentials);
+    }
+}
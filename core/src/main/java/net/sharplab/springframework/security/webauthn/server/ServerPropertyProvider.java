@@ -27,7 +27,8 @@ import javax.servlet.http.HttpServletRequest;
 public interface ServerPropertyProvider {
 
     /**
-     * Provides {@link ServerProperty}
+     * Provides {@link ServerProperty} for validating a WebAuthn ceremony. As a ceremony must be validated against
+     * a challenge only once, implementations should invalidate the challenge they return.
      *
      * @param request http servlet request
      * @return the {@link ServerProperty}
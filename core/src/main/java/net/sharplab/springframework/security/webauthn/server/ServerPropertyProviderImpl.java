@@ -47,12 +47,14 @@ public class ServerPropertyProviderImpl implements ServerPropertyProvider {
 
     /**
      * {@inheritDoc}
+     * <p>
+     * The challenge is consumed from the {@link ChallengeRepository}, so that it cannot be replayed.
      */
     public ServerProperty provide(HttpServletRequest request) {
 
         Origin origin = ServletUtil.getOrigin(request);
         String effectiveRpId = optionsProvider.getEffectiveRpId(request);
-        Challenge challenge = challengeRepository.loadOrGenerateChallenge(request);
+        Challenge challenge = challengeRepository.consumeChallenge(request);
 
         return new ServerProperty(origin, effectiveRpId, challenge, null); // tokenBinding is not supported by Servlet API as of 4.0
     }
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.data.AuthenticatorTransport;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.statement.AttestationStatement;
+import com.webauthn4j.data.extension.authenticator.RegistrationExtensionAuthenticatorOutput;
+import com.webauthn4j.data.extension.client.RegistrationExtensionClientOutput;
+import net.sharplab.springframework.security.webauthn.authenticator.VerificationKeyCache;
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import net.sharplab.springframework.security.webauthn.util.ExpiringCache;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link WebAuthnUserDetailsService} decorator which caches the result of
+ * {@link #loadUserByCredentialId(byte[])} keyed by credentialId.
+ * <p>
+ * The cache is bounded and its entries expire after the time-to-live. If a refresh executor is set, entries older
+ * than the refresh-ahead duration are reloaded in the background. Entries of a user are invalidated when an
+ * authenticator is added to or removed from the user through this service. Other changes to the user record must be
+ * propagated with {@link #invalidate(String)} or {@link #invalidate(byte[])}.
+ * <p>
+ * Each call returns a copy of the cached user, so credentials erased from an authenticated principal or a counter set
+ * during an authentication do not leak into other sessions. The counter set on a copied {@link Authenticator} advances
+ * the cached counter only upwards, so the malicious counter check sees the latest counter of this node.
+ * {@link #loadUserByUsername(String)} is not cached.
+ * <p>
+ * Changes made to the user record outside this service, such as disabling or locking the account, are not seen until
+ * the cached entry expires or is invalidated, that is for up to the time-to-live.
+ * <p>
+ * If a {@link VerificationKeyCache} is set, the cached public key of a removed authenticator is invalidated as well.
+ */
+public class CachingWebAuthnUserDetailsService implements WebAuthnUserDetailsService {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+    private static final int DEFAULT_MAX_SIZE = 10_000;
+    private static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(10);
+
+    //~ Instance fields
+    // ================================================================================================
+    private final WebAuthnUserDetailsService delegate;
+    private final ExpiringCache<ByteBuffer, WebAuthnUserDetails> cache;
+    private VerificationKeyCache verificationKeyCache;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor with default max size (10,000) and time-to-live (10 minutes)
+     *
+     * @param delegate the {@link WebAuthnUserDetailsService} to decorate
+     */
+    public CachingWebAuthnUserDetailsService(WebAuthnUserDetailsService delegate) {
+        this(delegate, DEFAULT_MAX_SIZE, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param delegate   the {@link WebAuthnUserDetailsService} to decorate
+     * @param maxSize    the maximum number of cached credentials
+     * @param timeToLive the duration after which a cached user expires
+     */
+    public CachingWebAuthnUserDetailsService(WebAuthnUserDetailsService delegate, int maxSize, Duration timeToLive) {
+        Assert.notNull(delegate, "delegate must not be null");
+        this.delegate = delegate;
+        this.cache = new ExpiringCache<>(maxSize, timeToLive);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public WebAuthnUserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        return delegate.loadUserByUsername(username);
+    }
+
+    @Override
+    public WebAuthnUserCredentials loadCredentialsByUsername(String username) throws UsernameNotFoundException {
+        return delegate.loadCredentialsByUsername(username);
+    }
+
+    @Override
+    public WebAuthnUserDetails loadUserByCredentialId(byte[] credentialId) throws CredentialIdNotFoundException {
+        WebAuthnUserDetails user = cache.get(toKey(credentialId), key -> delegate.loadUserByCredentialId(credentialId));
+        return copy(user);
+    }
+
+    @Override
+    public void addAuthenticator(String username, Authenticator authenticator) {
+        delegate.addAuthenticator(username, authenticator);
+        invalidate(username);
+    }
+
+    @Override
+    public void removeAuthenticator(String username, Authenticator authenticator) {
+        delegate.removeAuthenticator(username, authenticator);
+        invalidate(authenticator.getAttestedCredentialData().getCredentialId());
+        invalidate(username);
+    }
+
+    @Override
+    public void removeAuthenticator(String username, byte[] credentialId) {
+        delegate.removeAuthenticator(username, credentialId);
+        invalidate(credentialId);
+        invalidate(username);
+    }
+
+    /**
+     * Invalidates the cached user for the credentialId
+     *
+     * @param credentialId credentialId
+     */
+    public void invalidate(byte[] credentialId) {
+        cache.remove(toKey(credentialId));
+        if (verificationKeyCache != null) {
+            verificationKeyCache.invalidate(credentialId);
+        }
+    }
+
+    /**
+     * Invalidates the cached entries of the user
+     *
+     * @param username username
+     */
+    public void invalidate(String username) {
+        cache.removeIf((key, user) -> Objects.equals(user.getUsername(), username));
+    }
+
+    /**
+     * Invalidates all the cached entries
+     */
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    /**
+     * Sets the duration after which an accessed entry is reloaded in the background
+     *
+     * @param refreshAfter refresh-ahead duration
+     * @param executor     the {@link Executor} which runs the reload
+     */
+    public void setRefreshAhead(Duration refreshAfter, Executor executor) {
+        cache.setRefreshAfter(refreshAfter);
+        cache.setRefreshExecutor(executor);
+    }
+
+    public VerificationKeyCache getVerificationKeyCache() {
+        return verificationKeyCache;
+    }
+
+    /**
+     * Sets the {@link VerificationKeyCache} to be invalidated together with this cache
+     *
+     * @param verificationKeyCache the {@link VerificationKeyCache}
+     */
+    public void setVerificationKeyCache(VerificationKeyCache verificationKeyCache) {
+        this.verificationKeyCache = verificationKeyCache;
+    }
+
+    public int getSize() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+
+    /**
+     * Creates the copy of the cached user returned to the caller. Subclasses which cache their own
+     * {@link WebAuthnUserDetails} implementation can override this method to preserve its type.
+     *
+     * @param user the cached user
+     * @return a copy which shares no mutable state with the cached user
+     */
+    protected WebAuthnUserDetails copy(WebAuthnUserDetails user) {
+        List<Authenticator> authenticators = null;
+        if (user.getAuthenticators() != null) {
+            authenticators = new ArrayList<>(user.getAuthenticators().size());
+            for (Authenticator authenticator : user.getAuthenticators()) {
+                authenticators.add(new CopiedAuthenticator(authenticator));
+            }
+        }
+        return new WebAuthnUserDetailsImpl(user.getUserHandle(), user.getUsername(), user.getPassword(), authenticators,
+                user.isSingleFactorAuthenticationAllowed(),
+                user.isEnabled(), user.isAccountNonExpired(), user.isCredentialsNonExpired(), user.isAccountNonLocked(),
+                user.getAuthorities());
+    }
+
+    private ByteBuffer toKey(byte[] credentialId) {
+        return ByteBuffer.wrap(credentialId.clone());
+    }
+
+    /**
+     * {@link Authenticator} with its own counter which delegates the rest to the cached authenticator
+     */
+    private static class CopiedAuthenticator implements Authenticator {
+
+        private final Authenticator source;
+        private long counter;
+
+        CopiedAuthenticator(Authenticator source) {
+            this.source = source;
+            synchronized (source) {
+                this.counter = source.getCounter();
+            }
+        }
+
+        @Override
+        public AttestedCredentialData getAttestedCredentialData() {
+            return source.getAttestedCredentialData();
+        }
+
+        @Override
+        public AttestationStatement getAttestationStatement() {
+            return source.getAttestationStatement();
+        }
+
+        @Override
+        public Set<AuthenticatorTransport> getTransports() {
+            return source.getTransports();
+        }
+
+        @Override
+        public long getCounter() {
+            return counter;
+        }
+
+        @Override
+        public void setCounter(long value) {
+            this.counter = value;
+            synchronized (source) {
+                if (value > source.getCounter()) {
+                    source.setCounter(value);
+                }
+            }
+        }
+
+        @Override
+        public Map<String, RegistrationExtensionClientOutput> getClientExtensions() {
+            return source.getClientExtensions();
+        }
+
+        @Override
+        public Map<String, RegistrationExtensionAuthenticatorOutput> getAuthenticatorExtensions() {
+            return source.getAuthenticatorExtensions();
+        }
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import net.sharplab.springframework.security.webauthn.util.BloomFilter;
+import net.sharplab.springframework.security.webauthn.util.ExpiringCache;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.util.Assert;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A {@link WebAuthnUserDetailsService} decorator which rejects unknown credentialIds without calling the delegate.
+ * <p>
+ * A Bloom filter is built from the credentialIds returned by the credentialId source on {@link #afterPropertiesSet()}
+ * and {@link #rebuild()}, and credentialIds added through {@link #addAuthenticator(String, Authenticator)} are put to
+ * it. A credentialId which is definitely not in the filter is rejected with {@link CredentialIdNotFoundException},
+ * which {@link net.sharplab.springframework.security.webauthn.WebAuthnAuthenticationProvider} reports as bad
+ * credentials. In addition, credentialIds the delegate didn't find are remembered for a short time-to-live.
+ * <p>
+ * Since a Bloom filter cannot forget keys, removed credentialIds stay in it until the next {@link #rebuild()}, which
+ * only costs a delegate lookup. If authenticators are registered by other nodes or bypassing this service, set a
+ * rebuild interval, or call {@link #rebuild()} periodically, otherwise their logins on this node are rejected until
+ * the next rebuild. When a rebuild interval is set, rebuilding runs in the background until {@link #destroy()}. If a
+ * rebuild fails, the previous filter stays in use. Until the filter is built, all credentialIds are passed to the
+ * delegate.
+ */
+public class CredentialIdFilteringWebAuthnUserDetailsService implements WebAuthnUserDetailsService, InitializingBean, DisposableBean {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+    private static final long DEFAULT_EXPECTED_CREDENTIALS = 1_000_000;
+    private static final double DEFAULT_FALSE_POSITIVE_PROBABILITY = 0.01;
+    private static final int DEFAULT_NEGATIVE_CACHE_SIZE = 10_000;
+    private static final Duration DEFAULT_NEGATIVE_CACHE_TIME_TO_LIVE = Duration.ofSeconds(30);
+
+    //~ Instance fields
+    // ================================================================================================
+    protected final Log logger = LogFactory.getLog(getClass());
+
+    private final WebAuthnUserDetailsService delegate;
+    private final Supplier<? extends Iterable<byte[]>> credentialIdSource;
+    private final ExpiringCache<ByteBuffer, Boolean> negativeCache;
+
+    private long expectedCredentials = DEFAULT_EXPECTED_CREDENTIALS;
+    private double falsePositiveProbability = DEFAULT_FALSE_POSITIVE_PROBABILITY;
+    private Duration rebuildInterval;
+
+    private volatile BloomFilter filter;
+    private volatile BloomFilter building;
+    private final Object rebuildMonitor = new Object();
+    private ScheduledExecutorService scheduler;
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor with default negative cache size (10,000) and time-to-live (30 seconds)
+     *
+     * @param delegate           the {@link WebAuthnUserDetailsService} to decorate
+     * @param credentialIdSource supplies all the registered credentialIds
+     */
+    public CredentialIdFilteringWebAuthnUserDetailsService(WebAuthnUserDetailsService delegate, Supplier<? extends Iterable<byte[]>> credentialIdSource) {
+        this(delegate, credentialIdSource, DEFAULT_NEGATIVE_CACHE_SIZE, DEFAULT_NEGATIVE_CACHE_TIME_TO_LIVE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param delegate                the {@link WebAuthnUserDetailsService} to decorate
+     * @param credentialIdSource      supplies all the registered credentialIds
+     * @param negativeCacheSize       the maximum number of remembered unknown credentialIds
+     * @param negativeCacheTimeToLive the duration an unknown credentialId is remembered
+     */
+    public CredentialIdFilteringWebAuthnUserDetailsService(WebAuthnUserDetailsService delegate, Supplier<? extends Iterable<byte[]>> credentialIdSource,
+                                                           int negativeCacheSize, Duration negativeCacheTimeToLive) {
+        Assert.notNull(delegate, "delegate must not be null");
+        Assert.notNull(credentialIdSource, "credentialIdSource must not be null");
+        this.delegate = delegate;
+        this.credentialIdSource = credentialIdSource;
+        this.negativeCache = new ExpiringCache<>(negativeCacheSize, negativeCacheTimeToLive);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    @Override
+    public void afterPropertiesSet() {
+        rebuild();
+        if (rebuildInterval != null && scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "webauthn-credential-id-filter-rebuilder");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = rebuildInterval.toMillis();
+            scheduler.scheduleWithFixedDelay(this::rebuildSafely, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the background rebuilding
+     */
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Rebuilds the Bloom filter from the credentialId source, dropping removed credentialIds
+     */
+    public void rebuild() {
+        synchronized (rebuildMonitor) {
+            BloomFilter newFilter = new BloomFilter(expectedCredentials, falsePositiveProbability);
+            // credentialIds added while the source is read are put to both filters
+            building = newFilter;
+            try {
+                for (byte[] credentialId : credentialIdSource.get()) {
+                    newFilter.put(credentialId);
+                }
+                filter = newFilter;
+            } finally {
+                building = null;
+            }
+        }
+    }
+
+    private void rebuildSafely() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            logger.warn("Failed to rebuild the credentialId filter", e);
+        }
+    }
+
+    @Override
+    public WebAuthnUserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+        return delegate.loadUserByUsername(username);
+    }
+
+    @Override
+    public WebAuthnUserCredentials loadCredentialsByUsername(String username) throws UsernameNotFoundException {
+        return delegate.loadCredentialsByUsername(username);
+    }
+
+    @Override
+    public WebAuthnUserDetails loadUserByCredentialId(byte[] credentialId) throws CredentialIdNotFoundException {
+        BloomFilter current = filter;
+        if (current != null && !current.mightContain(credentialId)) {
+            rejectedCount.increment();
+            throw new CredentialIdNotFoundException("credentialId not found.");
+        }
+        ByteBuffer key = ByteBuffer.wrap(credentialId.clone());
+        if (negativeCache.get(key) != null) {
+            rejectedCount.increment();
+            throw new CredentialIdNotFoundException("credentialId not found.");
+        }
+        try {
+            return delegate.loadUserByCredentialId(credentialId);
+        } catch (CredentialIdNotFoundException e) {
+            negativeCache.put(key, Boolean.TRUE);
+            throw e;
+        }
+    }
+
+    @Override
+    public void addAuthenticator(String username, Authenticator authenticator) {
+        byte[] credentialId = authenticator.getAttestedCredentialData().getCredentialId();
+        // register to the filter first so that a concurrent login right after the registration is not rejected,
+        // and again afterwards in case a rebuild read the source before the delegate stored it
+        putToFilter(credentialId);
+        delegate.addAuthenticator(username, authenticator);
+        putToFilter(credentialId);
+        negativeCache.remove(ByteBuffer.wrap(credentialId));
+    }
+
+    @Override
+    public void removeAuthenticator(String username, Authenticator authenticator) {
+        delegate.removeAuthenticator(username, authenticator);
+    }
+
+    @Override
+    public void removeAuthenticator(String username, byte[] credentialId) {
+        delegate.removeAuthenticator(username, credentialId);
+    }
+
+    private void putToFilter(byte[] credentialId) {
+        BloomFilter current = filter;
+        if (current != null) {
+            current.put(credentialId);
+        }
+        BloomFilter next = building;
+        if (next != null) {
+            next.put(credentialId);
+        }
+    }
+
+    /**
+     * Sets the expected number of credentials used to size the Bloom filter on the next build
+     *
+     * @param expectedCredentials the expected number of credentials
+     */
+    public void setExpectedCredentials(long expectedCredentials) {
+        Assert.isTrue(expectedCredentials > 0, "expectedCredentials must be positive");
+        this.expectedCredentials = expectedCredentials;
+    }
+
+    /**
+     * Sets the false positive probability of the Bloom filter used on the next build
+     *
+     * @param falsePositiveProbability the false positive probability
+     */
+    public void setFalsePositiveProbability(double falsePositiveProbability) {
+        Assert.isTrue(falsePositiveProbability > 0 && falsePositiveProbability < 1, "falsePositiveProbability must be between 0 and 1");
+        this.falsePositiveProbability = falsePositiveProbability;
+    }
+
+    public Duration getRebuildInterval() {
+        return rebuildInterval;
+    }
+
+    /**
+     * Sets the interval of the background rebuild. Background rebuilding is disabled if null.
+     *
+     * @param rebuildInterval rebuild interval
+     */
+    public void setRebuildInterval(Duration rebuildInterval) {
+        Assert.isTrue(rebuildInterval == null || (!rebuildInterval.isNegative() && !rebuildInterval.isZero()), "rebuildInterval must be positive");
+        this.rebuildInterval = rebuildInterval;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import com.webauthn4j.data.AuthenticatorTransport;
+import com.webauthn4j.util.ArrayUtil;
+import org.springframework.util.Assert;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A lightweight view of a user holding only what is needed to generate options: the user handle, and the
+ * credentialId and transports of each authenticator.
+ */
+public class WebAuthnUserCredentials implements Serializable {
+
+    // ~ Instance fields
+    // ================================================================================================
+    private final byte[] userHandle;
+    private final List<Credential> credentials;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    public WebAuthnUserCredentials(byte[] userHandle, List<Credential> credentials) {
+        Assert.notNull(credentials, "credentials must not be null");
+        this.userHandle = userHandle;
+        this.credentials = Collections.unmodifiableList(credentials);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    public byte[] getUserHandle() {
+        return ArrayUtil.clone(userHandle);
+    }
+
+    public List<Credential> getCredentials() {
+        return credentials;
+    }
+
+    /**
+     * The credentialId and transports of an authenticator
+     */
+    public static class Credential implements Serializable {
+
+        private final byte[] credentialId;
+        private final Set<AuthenticatorTransport> transports;
+
+        public Credential(byte[] credentialId, Set<AuthenticatorTransport> transports) {
+            Assert.notNull(credentialId, "credentialId must not be null");
+            this.credentialId = credentialId;
+            this.transports = transports == null ? Collections.emptySet() : Collections.unmodifiableSet(transports);
+        }
+
+        public byte[] getCredentialId() {
+            return ArrayUtil.clone(credentialId);
+        }
+
+        public Set<AuthenticatorTransport> getTransports() {
+            return transports;
+        }
+    }
+}
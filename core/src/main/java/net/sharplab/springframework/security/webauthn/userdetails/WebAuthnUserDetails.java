@@ -20,6 +20,7 @@ import com.webauthn4j.authenticator.Authenticator;
 import org.springframework.security.core.userdetails.MFAUserDetails;
 import org.springframework.security.core.userdetails.UserDetails;
 
+import java.util.Arrays;
 import java.util.Collection;
 
 /**
@@ -30,6 +31,19 @@ public interface WebAuthnUserDetails extends MFAUserDetails {
     @SuppressWarnings("squid:S1452")
     Collection<? extends Authenticator> getAuthenticators();
 
+    /**
+     * Returns the authenticator identified by the credentialId
+     *
+     * @param credentialId credentialId
+     * @return the {@link Authenticator} or null if the user has no such authenticator
+     */
+    default Authenticator findAuthenticator(byte[] credentialId) {
+        return getAuthenticators().stream()
+                .filter(item -> Arrays.equals(item.getAttestedCredentialData().getCredentialId(), credentialId))
+                .findFirst()
+                .orElse(null);
+    }
+
     void setSingleFactorAuthenticationAllowed(boolean singleFactorAuthenticationAllowed);
 
     byte[] getUserHandle();
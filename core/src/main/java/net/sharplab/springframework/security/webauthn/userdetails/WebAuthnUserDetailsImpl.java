@@ -17,15 +17,25 @@
 package net.sharplab.springframework.security.webauthn.userdetails;
 
 import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
 import com.webauthn4j.util.ArrayUtil;
+import net.sharplab.springframework.security.webauthn.authenticator.CredentialId;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.User;
 
+import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A {@link WebAuthnUserDetails} implementation
+ * <p>
+ * {@link #findAuthenticator(byte[])} looks up authenticators through an index keyed by credentialId, which is built on
+ * first use and rebuilt only after the list returned by {@link #getAuthenticators()} has been modified. Modifications
+ * made directly to the list passed to the constructor are not detected.
  */
 @SuppressWarnings("squid:S2160")
 public class WebAuthnUserDetailsImpl extends User implements WebAuthnUserDetails {
@@ -34,7 +44,8 @@ public class WebAuthnUserDetailsImpl extends User implements WebAuthnUserDetails
     // ================================================================================================
     private boolean singleFactorAuthenticationAllowed = false;
     private byte[] userHandle;
-    private List<Authenticator> authenticators;
+    private TrackingList authenticators;
+    private transient volatile AuthenticatorIndex authenticatorIndex;
 
     public WebAuthnUserDetailsImpl(byte[] userHandle, String username, String password, List<Authenticator> authenticators,
                                    Collection<? extends GrantedAuthority> authorities) {
@@ -54,7 +65,7 @@ public class WebAuthnUserDetailsImpl extends User implements WebAuthnUserDetails
                                    Collection<? extends GrantedAuthority> authorities) {
         super(username, password, enabled, accountNonExpired, credentialsNonExpired, accountNonLocked, authorities);
         this.userHandle = userHandle;
-        this.authenticators = authenticators;
+        this.authenticators = authenticators == null ? null : new TrackingList(authenticators);
         this.singleFactorAuthenticationAllowed = singleFactorAuthenticationAllowed;
     }
 
@@ -68,6 +79,20 @@ public class WebAuthnUserDetailsImpl extends User implements WebAuthnUserDetails
         return this.authenticators;
     }
 
+    @Override
+    public Authenticator findAuthenticator(byte[] credentialId) {
+        if (credentialId == null || authenticators == null) {
+            return null;
+        }
+        AuthenticatorIndex index = authenticatorIndex;
+        int version = authenticators.version;
+        if (index == null || index.version != version) {
+            index = new AuthenticatorIndex(authenticators, version);
+            authenticatorIndex = index;
+        }
+        return index.authenticators.get(CredentialId.wrap(credentialId));
+    }
+
     @Override
     public boolean isSingleFactorAuthenticationAllowed() {
         return singleFactorAuthenticationAllowed;
@@ -78,5 +103,68 @@ public class WebAuthnUserDetailsImpl extends User implements WebAuthnUserDetails
         this.singleFactorAuthenticationAllowed = singleFactorAuthenticationAllowed;
     }
 
+    /**
+     * Index of the authenticators keyed by credentialId, built for a version of the authenticator list
+     */
+    private static class AuthenticatorIndex {
+
+        private final Map<CredentialId, Authenticator> authenticators;
+        private final int version;
+
+        AuthenticatorIndex(List<Authenticator> list, int version) {
+            this.authenticators = new HashMap<>(list.size() * 4 / 3 + 1);
+            this.version = version;
+            for (Authenticator authenticator : list) {
+                AttestedCredentialData attestedCredentialData = authenticator.getAttestedCredentialData();
+                if (attestedCredentialData != null && attestedCredentialData.getCredentialId() != null) {
+                    authenticators.putIfAbsent(new CredentialId(attestedCredentialData.getCredentialId()), authenticator);
+                }
+            }
+        }
+    }
+
+    /**
+     * Authenticator list view which counts modifications, including in-place replacements
+     */
+    private static class TrackingList extends AbstractList<Authenticator> implements Serializable {
 
+        private final List<Authenticator> delegate;
+        private transient volatile int version;
+
+        TrackingList(List<Authenticator> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Authenticator get(int index) {
+            return delegate.get(index);
+        }
+
+        @Override
+        public int size() {
+            return delegate.size();
+        }
+
+        @Override
+        public Authenticator set(int index, Authenticator element) {
+            Authenticator previous = delegate.set(index, element);
+            version++;
+            return previous;
+        }
+
+        @Override
+        public void add(int index, Authenticator element) {
+            delegate.add(index, element);
+            version++;
+            modCount++;
+        }
+
+        @Override
+        public Authenticator remove(int index) {
+            Authenticator removed = delegate.remove(index);
+            version++;
+            modCount++;
+            return removed;
+        }
+    }
 }
@@ -21,6 +21,9 @@ import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotF
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * An extended {@link UserDetailsService} for WebAuthn
  */
@@ -36,6 +39,28 @@ public interface WebAuthnUserDetailsService extends UserDetailsService {
     @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
     WebAuthnUserDetails loadUserByUsername(String username) throws UsernameNotFoundException;
 
+    /**
+     * Locates the user handle and credentials of a user based on the username.
+     * <p>
+     * The default implementation loads the whole user with {@link #loadUserByUsername(String)}. Implementations
+     * backed by a store should override it to fetch only the user handle, credentialIds and transports.
+     *
+     * @param username the username identifying the user whose credentials are required
+     * @return a {@link WebAuthnUserCredentials} instance (never <code>null</code>)
+     * @throws UsernameNotFoundException if the user could not be found
+     */
+    @SuppressWarnings("squid:RedundantThrowsDeclarationCheck")
+    default WebAuthnUserCredentials loadCredentialsByUsername(String username) throws UsernameNotFoundException {
+        WebAuthnUserDetails userDetails = loadUserByUsername(username);
+        List<WebAuthnUserCredentials.Credential> credentials = new ArrayList<>();
+        for (Authenticator authenticator : userDetails.getAuthenticators()) {
+            credentials.add(new WebAuthnUserCredentials.Credential(
+                    authenticator.getAttestedCredentialData().getCredentialId(),
+                    authenticator.getTransports()));
+        }
+        return new WebAuthnUserCredentials(userDetails.getUserHandle(), credentials);
+    }
+
     /**
      * Locates a user based on the credentialId.
      *
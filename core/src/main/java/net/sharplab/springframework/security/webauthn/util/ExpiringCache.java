@@ -0,0 +1,351 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.Assert;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Internal bounded cache with time-to-live and optional refresh-ahead.
+ * <p>
+ * The cache is split into segments guarded by their own locks. Each segment evicts its least recently used entry
+ * when it is full. If a refresh executor is set, an entry older than the refresh-ahead duration is reloaded in the
+ * background on access while the current value is still served.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class ExpiringCache<K, V> {
+
+    // ~ Static fields/initializers
+    // =====================================================================================
+    private static final int SEGMENT_COUNT = 16;
+
+    //~ Instance fields
+    // ================================================================================================
+    private final Log logger = LogFactory.getLog(getClass());
+
+    private final Segment[] segments;
+    private final int maxSizePerSegment;
+    private final long timeToLiveMillis;
+    private final Set<K> refreshing = ConcurrentHashMap.newKeySet();
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    private long refreshAfterMillis = Long.MAX_VALUE;
+    private Executor refreshExecutor;
+    private Clock clock = Clock.systemUTC();
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    /**
+     * Constructor
+     *
+     * @param maxSize    the maximum number of entries
+     * @param timeToLive the duration after which an entry expires
+     */
+    @SuppressWarnings("unchecked")
+    public ExpiringCache(int maxSize, Duration timeToLive) {
+        Assert.isTrue(maxSize > 0, "maxSize must be positive");
+        Assert.notNull(timeToLive, "timeToLive must not be null");
+        Assert.isTrue(!timeToLive.isNegative() && !timeToLive.isZero(), "timeToLive must be positive");
+        this.maxSizePerSegment = Math.max(1, (maxSize + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+        this.timeToLiveMillis = timeToLive.toMillis();
+        this.segments = new ExpiringCache.Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    /**
+     * Returns the cached value
+     *
+     * @param key key
+     * @return the value or null if absent or expired
+     */
+    public V get(K key) {
+        Entry<V> entry = segmentFor(key).get(key, clock.millis());
+        if (entry == null) {
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return entry.value;
+    }
+
+    /**
+     * Returns the cached value, loading it with <code>loader</code> if absent or expired.
+     * If the entry is older than the refresh-ahead duration, it is reloaded in the background.
+     * Exceptions thrown by the <code>loader</code> are propagated and nothing is cached.
+     *
+     * @param key    key
+     * @param loader loader invoked on cache miss
+     * @return the value
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        long now = clock.millis();
+        Entry<V> entry = segmentFor(key).get(key, now);
+        if (entry != null) {
+            hitCount.increment();
+            if (refreshExecutor != null && now - entry.createdAt >= refreshAfterMillis) {
+                refreshAsync(key, loader);
+            }
+            return entry.value;
+        }
+        missCount.increment();
+        long expectedGeneration = generation.get();
+        V value = loader.apply(key);
+        if (value != null) {
+            putIfNotInvalidated(key, value, expectedGeneration);
+        }
+        return value;
+    }
+
+    private void refreshAsync(K key, Function<? super K, ? extends V> loader) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            long expectedGeneration = generation.get();
+            refreshExecutor.execute(() -> {
+                try {
+                    V value = loader.apply(key);
+                    if (value != null) {
+                        putIfNotInvalidated(key, value, expectedGeneration);
+                    }
+                } catch (RuntimeException e) {
+                    logger.debug("Failed to refresh cache entry", e);
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RuntimeException e) {
+            refreshing.remove(key);
+            logger.debug("Failed to schedule cache refresh", e);
+        }
+    }
+
+    /**
+     * Puts a value
+     *
+     * @param key   key
+     * @param value value
+     */
+    public void put(K key, V value) {
+        Assert.notNull(value, "value must not be null");
+        segmentFor(key).put(key, new Entry<>(value, clock.millis()));
+    }
+
+    /**
+     * Puts a loaded value unless an invalidation happened since the load started,
+     * so that a concurrent load cannot resurrect an invalidated value
+     */
+    private void putIfNotInvalidated(K key, V value, long expectedGeneration) {
+        segmentFor(key).putIf(key, new Entry<>(value, clock.millis()), () -> generation.get() == expectedGeneration);
+    }
+
+    /**
+     * Removes the entry for the key
+     *
+     * @param key key
+     */
+    public void remove(K key) {
+        generation.incrementAndGet();
+        segmentFor(key).remove(key);
+    }
+
+    /**
+     * Removes all entries matching the predicate
+     *
+     * @param predicate predicate
+     */
+    public void removeIf(BiPredicate<? super K, ? super V> predicate) {
+        generation.incrementAndGet();
+        for (Segment segment : segments) {
+            segment.removeIf(predicate);
+        }
+    }
+
+    /**
+     * Removes all entries
+     */
+    public void clear() {
+        removeIf((key, value) -> true);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Sets the duration after which an accessed entry is reloaded in the background by the refresh executor
+     *
+     * @param refreshAfter refresh-ahead duration
+     */
+    public void setRefreshAfter(Duration refreshAfter) {
+        Assert.notNull(refreshAfter, "refreshAfter must not be null");
+        this.refreshAfterMillis = refreshAfter.toMillis();
+    }
+
+    /**
+     * Sets the {@link Executor} used for the refresh-ahead. Refresh-ahead is disabled if not set.
+     *
+     * @param refreshExecutor executor
+     */
+    public void setRefreshExecutor(Executor refreshExecutor) {
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    public void setClock(Clock clock) {
+        Assert.notNull(clock, "clock must not be null");
+        this.clock = clock;
+    }
+
+    private Segment segmentFor(K key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[hash & (SEGMENT_COUNT - 1)];
+    }
+
+    private class Segment {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        Entry<V> get(K key, long now) {
+            lock.lock();
+            try {
+                Entry<V> entry = entries.get(key);
+                if (entry == null) {
+                    return null;
+                }
+                if (now - entry.createdAt >= timeToLiveMillis) {
+                    entries.remove(key);
+                    return null;
+                }
+                return entry;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(K key, Entry<V> entry) {
+            putIf(key, entry, () -> true);
+        }
+
+        void putIf(K key, Entry<V> entry, BooleanSupplier condition) {
+            lock.lock();
+            try {
+                if (!condition.getAsBoolean()) {
+                    return;
+                }
+                entries.put(key, entry);
+                Iterator<Entry<V>> iterator = entries.values().iterator();
+                while (entries.size() > maxSizePerSegment && iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                    evictionCount.increment();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void remove(K key) {
+            lock.lock();
+            try {
+                entries.remove(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void removeIf(BiPredicate<? super K, ? super V> predicate) {
+            lock.lock();
+            try {
+                Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<K, Entry<V>> entry = iterator.next();
+                    if (predicate.test(entry.getKey(), entry.getValue().value)) {
+                        iterator.remove();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return entries.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static class Entry<V> {
+
+        private final V value;
+        private final long createdAt;
+
+        Entry(V value, long createdAt) {
+            this.value = value;
+            this.createdAt = createdAt;
+        }
+    }
+}
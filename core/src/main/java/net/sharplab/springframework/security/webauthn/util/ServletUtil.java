@@ -19,7 +19,10 @@ package net.sharplab.springframework.security.webauthn.util;
 
 import com.webauthn4j.data.client.Origin;
 
+import javax.servlet.ServletOutputStream;
 import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 
 /**
  * Internal utility to handle servlet
@@ -38,4 +41,19 @@ public class ServletUtil {
     public static Origin getOrigin(ServletRequest request) {
         return new Origin(request.getScheme(), request.getServerName(), request.getServerPort());
     }
+
+    /**
+     * Writes UTF-8 encoded JSON to the response body with its Content-Length.
+     * The status must be set beforehand, as the response is committed once the whole body is written.
+     *
+     * @param response http servlet response
+     * @param body     UTF-8 encoded JSON
+     * @throws IOException if an I/O error occurs
+     */
+    public static void writeJson(HttpServletResponse response, byte[] body) throws IOException {
+        response.setContentType("application/json");
+        response.setContentLength(body.length);
+        ServletOutputStream outputStream = response.getOutputStream();
+        outputStream.write(body);
+    }
 }
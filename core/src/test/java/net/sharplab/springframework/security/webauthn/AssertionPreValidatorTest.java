@@ -0,0 +1,125 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn;
+
+import com.webauthn4j.converter.CollectedClientDataConverter;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.client.ClientDataType;
+import com.webauthn4j.data.client.CollectedClientData;
+import com.webauthn4j.data.client.Origin;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import com.webauthn4j.server.ServerProperty;
+import com.webauthn4j.util.Base64UrlUtil;
+import net.sharplab.springframework.security.webauthn.exception.*;
+import net.sharplab.springframework.security.webauthn.request.WebAuthnAuthenticationRequest;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Test for AssertionPreValidator
+ */
+public class AssertionPreValidatorTest {
+
+    private static final Origin ORIGIN = new Origin("https://example.com");
+    private static final String RP_ID = "example.com";
+
+    private ObjectConverter objectConverter = new ObjectConverter();
+    private AssertionPreValidator target = new AssertionPreValidator(objectConverter);
+    private Challenge challenge = new DefaultChallenge();
+
+    @Test
+    public void validate_test() {
+        target.validate(createRequest(ClientDataType.GET, challenge, ORIGIN, RP_ID, (byte) 0x05), true);
+    }
+
+    @Test(expected = BadRpIdException.class)
+    public void validate_test_with_bad_rpId() {
+        target.validate(createRequest(ClientDataType.GET, challenge, ORIGIN, "example.net", (byte) 0x01), false);
+    }
+
+    @Test(expected = UserNotPresentException.class)
+    public void validate_test_without_UP_flag() {
+        target.validate(createRequest(ClientDataType.GET, challenge, ORIGIN, RP_ID, (byte) 0x00), false);
+    }
+
+    @Test(expected = UserNotVerifiedException.class)
+    public void validate_test_without_UV_flag() {
+        target.validate(createRequest(ClientDataType.GET, challenge, ORIGIN, RP_ID, (byte) 0x01), true);
+    }
+
+    @Test(expected = InconsistentClientDataTypeException.class)
+    public void validate_test_with_bad_type() {
+        target.validate(createRequest(ClientDataType.CREATE, challenge, ORIGIN, RP_ID, (byte) 0x01), false);
+    }
+
+    @Test(expected = BadChallengeException.class)
+    public void validate_test_with_bad_challenge() {
+        target.validate(createRequest(ClientDataType.GET, new DefaultChallenge(), ORIGIN, RP_ID, (byte) 0x01), false);
+    }
+
+    @Test(expected = BadOriginException.class)
+    public void validate_test_with_bad_origin() {
+        target.validate(createRequest(ClientDataType.GET, challenge, new Origin("https://example.net"), RP_ID, (byte) 0x01), false);
+    }
+
+    @Test(expected = DataConversionException.class)
+    public void validate_test_with_truncated_authenticatorData() {
+        WebAuthnAuthenticationRequest request = createRequest(ClientDataType.GET, challenge, ORIGIN, RP_ID, (byte) 0x01);
+        target.validate(new WebAuthnAuthenticationRequest(
+                request.getCredentialId(),
+                request.getClientDataJSON(),
+                Arrays.copyOf(request.getAuthenticatorData(), 10),
+                request.getSignature(),
+                null,
+                request.getServerProperty(),
+                false,
+                null
+        ), false);
+    }
+
+    private WebAuthnAuthenticationRequest createRequest(ClientDataType type, Challenge clientChallenge, Origin clientOrigin, String clientRpId, byte flags) {
+        CollectedClientData collectedClientData = new CollectedClientData(type, clientChallenge, clientOrigin, null);
+        byte[] clientDataJSON = Base64UrlUtil.decode(new CollectedClientDataConverter(objectConverter).convertToBase64UrlString(collectedClientData));
+        byte[] authenticatorData = Arrays.copyOf(sha256(clientRpId), 37);
+        authenticatorData[32] = flags;
+        ServerProperty serverProperty = new ServerProperty(ORIGIN, RP_ID, challenge, null);
+        return new WebAuthnAuthenticationRequest(
+                new byte[]{0x01, 0x23},
+                clientDataJSON,
+                authenticatorData,
+                new byte[]{0x45, 0x56},
+                null,
+                serverProperty,
+                false,
+                true,
+                Collections.emptyList()
+        );
+    }
+
+    private static byte[] sha256(String value) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -178,6 +178,21 @@ public class WebAuthnAuthenticationProviderTest {
     }
 
 
+    @Test(expected = BadChallengeException.class)
+    public void authenticate_test_rejects_before_user_lookup_with_assertionPreValidator() {
+        AssertionPreValidator assertionPreValidator = mock(AssertionPreValidator.class);
+        doThrow(new BadChallengeException("dummy")).when(assertionPreValidator).validate(any(), anyBoolean());
+        authenticationProvider.setAssertionPreValidator(assertionPreValidator);
+
+        WebAuthnAuthenticationRequest credential = mock(WebAuthnAuthenticationRequest.class);
+        when(credential.getCredentialId()).thenReturn(new byte[32]);
+        try {
+            authenticationProvider.authenticate(new WebAuthnAssertionAuthenticationToken(credential));
+        } finally {
+            verify(userDetailsService, never()).loadUserByCredentialId(any());
+        }
+    }
+
     @Test
     public void retrieveWebAuthnUserDetails_test() {
         byte[] credentialId = new byte[0];
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.anchor;
+
+import com.webauthn4j.anchor.TrustAnchorsResolver;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.statement.AttestationCertificatePath;
+import com.webauthn4j.data.attestation.statement.CertificateBaseAttestationStatement;
+import com.webauthn4j.validator.exception.CertificateException;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+public class CachingCertPathTrustworthinessValidatorTest {
+
+    private X509Certificate rootCertificate = loadCertificate("certs/cert-path-test-root-CA.pem");
+    private X509Certificate intermediateCertificate = loadCertificate("certs/cert-path-test-intermediate-CA.pem");
+    private X509Certificate attestationCertificate = loadCertificate("certs/cert-path-test-attestation.pem");
+
+    private TrustAnchorsResolver trustAnchorsResolver = mock(TrustAnchorsResolver.class);
+    private CachingCertPathTrustworthinessValidator target = new CachingCertPathTrustworthinessValidator(trustAnchorsResolver);
+    private CertificateBaseAttestationStatement attestationStatement = mock(CertificateBaseAttestationStatement.class);
+
+    public CachingCertPathTrustworthinessValidatorTest() {
+        when(attestationStatement.getX5c())
+                .thenReturn(new AttestationCertificatePath(attestationCertificate, Collections.singletonList(intermediateCertificate)));
+    }
+
+    @Test
+    public void validate_test_caches_successful_validation() {
+        // a new set is resolved on each call, as TrustAnchorsResolverImpl does
+        when(trustAnchorsResolver.resolve(AAGUID.ZERO)).thenAnswer(invocation -> trustAnchorsOf(rootCertificate));
+
+        target.validate(AAGUID.ZERO, attestationStatement);
+        target.validate(AAGUID.ZERO, attestationStatement);
+
+        assertThat(target.getSize()).isEqualTo(1);
+        assertThat(target.getHitCount()).isEqualTo(1);
+        // once by the cache lookup of each call, once by the path validation of the first call
+        verify(trustAnchorsResolver, times(3)).resolve(AAGUID.ZERO);
+    }
+
+    @Test
+    public void validate_test_revalidates_when_trust_anchors_change() {
+        TrustAnchor rootAnchor = new TrustAnchor(rootCertificate, null);
+        TrustAnchor otherAnchor = new TrustAnchor(intermediateCertificate, null);
+        when(trustAnchorsResolver.resolve(AAGUID.ZERO))
+                .thenReturn(Collections.singleton(rootAnchor), Collections.singleton(rootAnchor))
+                .thenReturn(new HashSet<>(Arrays.asList(rootAnchor, otherAnchor)));
+
+        target.validate(AAGUID.ZERO, attestationStatement);
+        target.validate(AAGUID.ZERO, attestationStatement);
+
+        verify(trustAnchorsResolver, times(4)).resolve(AAGUID.ZERO);
+    }
+
+    @Test
+    public void validate_test_does_not_cache_failure() {
+        when(trustAnchorsResolver.resolve(AAGUID.ZERO)).thenAnswer(invocation -> trustAnchorsOf(attestationCertificate));
+
+        assertThatThrownBy(() -> target.validate(AAGUID.ZERO, attestationStatement)).isInstanceOf(CertificateException.class);
+        assertThatThrownBy(() -> target.validate(AAGUID.ZERO, attestationStatement)).isInstanceOf(CertificateException.class);
+        assertThat(target.getSize()).isZero();
+    }
+
+    @Test
+    public void validate_test_revalidates_after_certificate_expiry() {
+        when(trustAnchorsResolver.resolve(AAGUID.ZERO)).thenAnswer(invocation -> trustAnchorsOf(rootCertificate));
+        target.validate(AAGUID.ZERO, attestationStatement);
+
+        target.setClock(Clock.fixed(attestationCertificate.getNotAfter().toInstant(), ZoneOffset.UTC));
+        target.validate(AAGUID.ZERO, attestationStatement);
+
+        verify(trustAnchorsResolver, times(4)).resolve(AAGUID.ZERO);
+    }
+
+    @Test
+    public void setFullChainProhibited_test_invalidates_cache() {
+        when(trustAnchorsResolver.resolve(AAGUID.ZERO)).thenAnswer(invocation -> trustAnchorsOf(rootCertificate));
+        target.validate(AAGUID.ZERO, attestationStatement);
+
+        target.setFullChainProhibited(true);
+
+        assertThat(target.getSize()).isZero();
+    }
+
+    private static Set<TrustAnchor> trustAnchorsOf(X509Certificate certificate) {
+        return new HashSet<>(Collections.singleton(new TrustAnchor(certificate, null)));
+    }
+
+    private static X509Certificate loadCertificate(String path) {
+        try (InputStream inputStream = new ClassPathResource(path).getInputStream()) {
+            return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(inputStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (java.security.cert.CertificateException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -53,6 +53,17 @@ public class CertFileResourcesTrustAnchorsProviderTest {
         assertThat(trustAnchors).hasSize(1);
     }
 
+    @Test
+    public void loadTrustAnchors_with_aaguidCertificates_test() {
+        AAGUID aaguid = new AAGUID("2b2ecbb4-59b4-44fa-868d-a072485d8ae0");
+        CertFileResourcesTrustAnchorsProvider trustAnchorProvider = new CertFileResourcesTrustAnchorsProvider();
+        trustAnchorProvider.setCertificates(Collections.singletonList(new ClassPathResource("certs/3tier-test-root-CA.pem")));
+        trustAnchorProvider.setAaguidCertificates(Collections.singletonMap(aaguid, Collections.singletonList(new ClassPathResource("certs/cert-path-test-root-CA.pem"))));
+        Map<AAGUID, Set<TrustAnchor>> trustAnchors = trustAnchorProvider.loadTrustAnchors();
+        assertThat(trustAnchors).containsOnlyKeys(AAGUID.NULL, aaguid);
+        assertThat(trustAnchors.get(aaguid)).hasSize(1);
+    }
+
     @Test(expected = IllegalArgumentException.class)
     public void afterPropertiesSet_test() {
         CertFileResourcesTrustAnchorsProvider trustAnchorProvider = new CertFileResourcesTrustAnchorsProvider();
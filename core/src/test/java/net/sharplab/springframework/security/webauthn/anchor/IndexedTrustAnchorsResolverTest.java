@@ -0,0 +1,84 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.anchor;
+
+import com.webauthn4j.anchor.TrustAnchorsProvider;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.util.CertificateUtil;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IndexedTrustAnchorsResolverTest {
+
+    private TrustAnchorsProvider trustAnchorsProvider = mock(TrustAnchorsProvider.class);
+    private IndexedTrustAnchorsResolver target = new IndexedTrustAnchorsResolver(trustAnchorsProvider);
+
+    @Test
+    public void resolve_test() {
+        TrustAnchor trustAnchor = new TrustAnchor(loadCertificate("certs/cert-path-test-root-CA.pem"), null);
+        Map<AAGUID, Set<TrustAnchor>> trustAnchors = Collections.singletonMap(AAGUID.NULL, Collections.singleton(trustAnchor));
+        when(trustAnchorsProvider.provide()).thenReturn(trustAnchors);
+
+        Set<TrustAnchor> resolved = target.resolve(AAGUID.ZERO);
+
+        assertThat(resolved).containsExactly(trustAnchor);
+        assertThat(target.resolve(AAGUID.ZERO)).isSameAs(resolved);
+    }
+
+    @Test
+    public void resolve_test_rebuilds_index_when_provider_reloads() {
+        TrustAnchor trustAnchor = new TrustAnchor(loadCertificate("certs/cert-path-test-root-CA.pem"), null);
+        TrustAnchor reloadedTrustAnchor = new TrustAnchor(loadCertificate("certs/3tier-test-root-CA.pem"), null);
+        when(trustAnchorsProvider.provide()).thenReturn(
+                Collections.singletonMap(AAGUID.NULL, Collections.singleton(trustAnchor)),
+                Collections.singletonMap(AAGUID.NULL, Collections.singleton(reloadedTrustAnchor)));
+
+        assertThat(target.resolve(AAGUID.ZERO)).containsExactly(trustAnchor);
+        assertThat(target.resolve(AAGUID.ZERO)).containsExactly(reloadedTrustAnchor);
+    }
+
+    @Test
+    public void resolve_with_certificate_test() {
+        X509Certificate rootCertificate = loadCertificate("certs/cert-path-test-root-CA.pem");
+        TrustAnchor trustAnchor = new TrustAnchor(rootCertificate, null);
+        when(trustAnchorsProvider.provide()).thenReturn(Collections.singletonMap(AAGUID.NULL, Collections.singleton(trustAnchor)));
+
+        assertThat(target.resolve(AAGUID.ZERO, loadCertificate("certs/cert-path-test-intermediate-CA.pem"))).containsExactly(trustAnchor);
+        assertThat(target.resolve(AAGUID.ZERO, loadCertificate("certs/cert-path-test-attestation.pem"))).isEmpty();
+    }
+
+    private static X509Certificate loadCertificate(String path) {
+        try (InputStream inputStream = new ClassPathResource(path).getInputStream()) {
+            return CertificateUtil.generateX509Certificate(inputStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
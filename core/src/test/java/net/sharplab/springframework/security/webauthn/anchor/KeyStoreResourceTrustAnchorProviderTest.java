@@ -23,6 +23,7 @@ import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 
 import java.security.cert.TrustAnchor;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 
@@ -54,6 +55,30 @@ public class KeyStoreResourceTrustAnchorProviderTest {
         assertThat(trustAnchors).isNotEmpty();
     }
 
+    @Test
+    public void provide_test_with_aaguids() {
+        AAGUID aaguid = new AAGUID("2b2ecbb4-59b4-44fa-868d-a072485d8ae0");
+        target = new KeyStoreResourceTrustAnchorProvider();
+        Resource resource = new ClassPathResource("net/sharplab/springframework/security/webauthn/anchor/KeyStoreResourceTrustAnchorProviderImplTest/test.jks");
+        target.setKeyStore(resource);
+        target.setPassword("password");
+        target.setAaguids(Collections.singletonMap("mykey", aaguid));
+
+        Map<AAGUID, Set<TrustAnchor>> trustAnchors = target.provide();
+        assertThat(trustAnchors).containsOnlyKeys(aaguid);
+        assertThat(trustAnchors.get(aaguid)).hasSize(1);
+    }
+
+    @Test
+    public void provide_test_without_aaguids() {
+        target = new KeyStoreResourceTrustAnchorProvider();
+        Resource resource = new ClassPathResource("net/sharplab/springframework/security/webauthn/anchor/KeyStoreResourceTrustAnchorProviderImplTest/test.jks");
+        target.setKeyStore(resource);
+        target.setPassword("password");
+
+        assertThat(target.provide()).containsOnlyKeys(AAGUID.NULL);
+    }
+
     @Test(expected = KeyStoreException.class)
     public void provide_test_with_invalid_path() {
         target = new KeyStoreResourceTrustAnchorProvider();
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.anchor;
+
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.cert.TrustAnchor;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ReloadingTrustAnchorsProviderBaseTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private CertFileResourcesTrustAnchorsProvider target = new CertFileResourcesTrustAnchorsProvider();
+
+    @After
+    public void tearDown() {
+        target.destroy();
+    }
+
+    @Test
+    public void provide_test() throws IOException {
+        File certificate = copy("certs/cert-path-test-root-CA.pem", temporaryFolder.newFile());
+        target.setCertificates(Collections.singletonList(new FileSystemResource(certificate)));
+
+        Map<AAGUID, Set<TrustAnchor>> trustAnchors = target.provide();
+
+        assertThat(trustAnchors.get(AAGUID.NULL)).hasSize(1);
+        assertThat(target.provide()).isSameAs(trustAnchors);
+        assertThat(target.getVersion()).isEqualTo(1);
+        assertThatThrownBy(() -> trustAnchors.get(AAGUID.NULL).clear()).isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    public void reloadIfModified_test() throws IOException {
+        File certificate = copy("certs/cert-path-test-root-CA.pem", temporaryFolder.newFile());
+        target.setCertificates(Collections.singletonList(new FileSystemResource(certificate)));
+        Map<AAGUID, Set<TrustAnchor>> trustAnchors = target.provide();
+
+        assertThat(target.reloadIfModified()).isFalse();
+
+        copy("certs/3tier-test-root-CA.pem", certificate);
+        assertThat(certificate.setLastModified(certificate.lastModified() + 1000)).isTrue();
+
+        assertThat(target.reloadIfModified()).isTrue();
+        assertThat(target.getVersion()).isEqualTo(2);
+        assertThat(target.provide()).isNotEqualTo(trustAnchors);
+        assertThat(target.getIndex().find(AAGUID.ZERO)).isEqualTo(target.provide().get(AAGUID.NULL));
+    }
+
+    @Test
+    public void reload_test_keeps_previous_trust_anchors_on_failure() throws IOException {
+        File certificate = copy("certs/cert-path-test-root-CA.pem", temporaryFolder.newFile());
+        target.setCertificates(Collections.singletonList(new FileSystemResource(certificate)));
+        Map<AAGUID, Set<TrustAnchor>> trustAnchors = target.provide();
+
+        assertThat(certificate.delete()).isTrue();
+
+        assertThatThrownBy(() -> target.reload()).isInstanceOf(RuntimeException.class);
+        assertThat(target.provide()).isSameAs(trustAnchors);
+        assertThat(target.getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    public void afterPropertiesSet_test_reloads_in_background() throws IOException, InterruptedException {
+        File certificate = copy("certs/cert-path-test-root-CA.pem", temporaryFolder.newFile());
+        target.setCertificates(Collections.singletonList(new FileSystemResource(certificate)));
+        target.setReloadInterval(Duration.ofMillis(10));
+        target.afterPropertiesSet();
+        target.provide();
+
+        copy("certs/3tier-test-root-CA.pem", certificate);
+        assertThat(certificate.setLastModified(certificate.lastModified() + 1000)).isTrue();
+
+        for (int i = 0; i < 500 && target.getVersion() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(target.getVersion()).isEqualTo(2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setReloadInterval_test_with_zero() {
+        target.setReloadInterval(Duration.ZERO);
+    }
+
+    private static File copy(String path, File file) throws IOException {
+        try (InputStream inputStream = new ClassPathResource(path).getInputStream()) {
+            Files.copy(inputStream, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.anchor;
+
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.util.CertificateUtil;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TrustAnchorIndexTest {
+
+    private static final AAGUID AAGUID_A = new AAGUID("2b2ecbb4-59b4-44fa-868d-a072485d8ae0");
+    private static final AAGUID AAGUID_B = new AAGUID("fa2b99dc-9e39-4257-8f92-4a30d23c4118");
+
+    private X509Certificate rootCertificate = loadCertificate("certs/cert-path-test-root-CA.pem");
+    private X509Certificate intermediateCertificate = loadCertificate("certs/cert-path-test-intermediate-CA.pem");
+    private X509Certificate attestationCertificate = loadCertificate("certs/cert-path-test-attestation.pem");
+    private X509Certificate otherRootCertificate = loadCertificate("certs/3tier-test-root-CA.pem");
+
+    private TrustAnchor rootAnchor = new TrustAnchor(rootCertificate, null);
+    private TrustAnchor intermediateAnchor = new TrustAnchor(intermediateCertificate, null);
+    private TrustAnchor otherRootAnchor = new TrustAnchor(otherRootCertificate, null);
+
+    @Test
+    public void find_test() {
+        Map<AAGUID, Set<TrustAnchor>> trustAnchors = new HashMap<>();
+        trustAnchors.put(AAGUID.NULL, Collections.singleton(otherRootAnchor));
+        trustAnchors.put(AAGUID_A, Collections.singleton(rootAnchor));
+        TrustAnchorIndex target = new TrustAnchorIndex(trustAnchors);
+
+        assertThat(target.find(AAGUID_A)).containsExactlyInAnyOrder(rootAnchor, otherRootAnchor);
+        assertThat(target.find(AAGUID_B)).containsExactly(otherRootAnchor);
+        assertThat(target.find(AAGUID_A)).isSameAs(target.find(AAGUID_A));
+        assertThat(target.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void findBySubject_test() {
+        TrustAnchorIndex target = new TrustAnchorIndex(Collections.singletonMap(AAGUID.NULL, Collections.singleton(rootAnchor)));
+
+        assertThat(target.findBySubject(rootCertificate.getSubjectX500Principal())).containsExactly(rootAnchor);
+        assertThat(target.findBySubject(otherRootCertificate.getSubjectX500Principal())).isEmpty();
+    }
+
+    @Test
+    public void findBySubjectKeyIdentifier_test() {
+        TrustAnchorIndex target = new TrustAnchorIndex(Collections.singletonMap(AAGUID.NULL, Collections.singleton(rootAnchor)));
+        byte[] subjectKeyIdentifier = TrustAnchorIndex.getSubjectKeyIdentifier(rootCertificate);
+
+        assertThat(subjectKeyIdentifier).hasSize(20);
+        assertThat(target.findBySubjectKeyIdentifier(subjectKeyIdentifier)).containsExactly(rootAnchor);
+        assertThat(target.findBySubjectKeyIdentifier(new byte[20])).isEmpty();
+    }
+
+    @Test
+    public void getAuthorityKeyIdentifier_test() {
+        assertThat(TrustAnchorIndex.getAuthorityKeyIdentifier(attestationCertificate))
+                .isEqualTo(TrustAnchorIndex.getSubjectKeyIdentifier(intermediateCertificate));
+    }
+
+    @Test
+    public void findIssuerCandidates_test() {
+        Map<AAGUID, Set<TrustAnchor>> trustAnchors = new HashMap<>();
+        trustAnchors.put(AAGUID.NULL, Collections.singleton(otherRootAnchor));
+        trustAnchors.put(AAGUID_A, Collections.singleton(rootAnchor));
+        trustAnchors.put(AAGUID_B, Collections.singleton(intermediateAnchor));
+        TrustAnchorIndex target = new TrustAnchorIndex(trustAnchors);
+
+        assertThat(target.findIssuerCandidates(AAGUID_A, intermediateCertificate)).containsExactly(rootAnchor);
+        assertThat(target.findIssuerCandidates(AAGUID_B, intermediateCertificate)).isEmpty();
+        assertThat(target.findIssuerCandidates(AAGUID_B, attestationCertificate)).containsExactly(intermediateAnchor);
+    }
+
+    @Test
+    public void findIssuerCandidates_test_with_ca_name_anchor() {
+        TrustAnchor caNameAnchor = new TrustAnchor(rootCertificate.getSubjectX500Principal(), rootCertificate.getPublicKey(), null);
+        TrustAnchorIndex target = new TrustAnchorIndex(Collections.singletonMap(AAGUID.NULL, Collections.singleton(caNameAnchor)));
+
+        assertThat(target.findIssuerCandidates(AAGUID_A, intermediateCertificate)).containsExactly(caNameAnchor);
+    }
+
+    private static X509Certificate loadCertificate(String path) {
+        try (InputStream inputStream = new ClassPathResource(path).getInputStream()) {
+            return CertificateUtil.generateX509Certificate(inputStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.authenticator;
+
+import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.authenticator.COSEKey;
+import org.junit.Test;
+
+import java.security.PublicKey;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class VerificationKeyCacheTest {
+
+    private VerificationKeyCache target = new VerificationKeyCache(100, Duration.ofMinutes(10));
+
+    @Test
+    public void wrap_test() {
+        PublicKey publicKey = mock(PublicKey.class);
+        COSEKey coseKey = mock(COSEKey.class);
+        when(coseKey.getPublicKey()).thenReturn(publicKey);
+        Authenticator authenticator = createAuthenticator(new byte[]{0x01}, coseKey);
+
+        assertThat(target.wrap(authenticator).getAttestedCredentialData().getCOSEKey().getPublicKey()).isEqualTo(publicKey);
+        assertThat(target.wrap(authenticator).getAttestedCredentialData().getCOSEKey().getPublicKey()).isEqualTo(publicKey);
+
+        verify(coseKey, times(1)).getPublicKey();
+        assertThat(target.getHitCount()).isEqualTo(1);
+        assertThat(target.getMissCount()).isEqualTo(1);
+        assertThat(target.getSize()).isEqualTo(1);
+    }
+
+    @Test
+    public void wrap_test_delegates_counter() {
+        Authenticator authenticator = createAuthenticator(new byte[]{0x01}, mock(COSEKey.class));
+
+        target.wrap(authenticator).setCounter(10);
+
+        verify(authenticator).setCounter(10);
+    }
+
+    @Test
+    public void wrap_test_without_coseKey() {
+        Authenticator authenticator = createAuthenticator(new byte[]{0x01}, null);
+
+        assertThat(target.wrap(authenticator)).isSameAs(authenticator);
+        assertThat(target.wrap(null)).isNull();
+    }
+
+    @Test
+    public void invalidate_test() {
+        COSEKey coseKey = mock(COSEKey.class);
+        when(coseKey.getPublicKey()).thenReturn(mock(PublicKey.class));
+        Authenticator authenticator = createAuthenticator(new byte[]{0x01}, coseKey);
+        target.wrap(authenticator).getAttestedCredentialData().getCOSEKey().getPublicKey();
+
+        target.invalidate(new byte[]{0x01});
+        target.wrap(authenticator).getAttestedCredentialData().getCOSEKey().getPublicKey();
+
+        verify(coseKey, times(2)).getPublicKey();
+    }
+
+    private Authenticator createAuthenticator(byte[] credentialId, COSEKey coseKey) {
+        Authenticator authenticator = mock(Authenticator.class);
+        when(authenticator.getAttestedCredentialData()).thenReturn(new AttestedCredentialData(AAGUID.ZERO, credentialId, coseKey));
+        return authenticator;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.authenticator;
+
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test for WriteBehindWebAuthnAuthenticatorService
+ */
+public class WriteBehindWebAuthnAuthenticatorServiceTest {
+
+    private static final byte[] CREDENTIAL_ID = new byte[]{0x01, 0x23, 0x45};
+
+    private WebAuthnAuthenticatorService delegate = mock(WebAuthnAuthenticatorService.class);
+    private WriteBehindWebAuthnAuthenticatorService target =
+            new WriteBehindWebAuthnAuthenticatorService(delegate, Duration.ofHours(1), 100);
+
+    @Before
+    public void setUp() {
+        target.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() {
+        target.destroy();
+    }
+
+    @Test
+    public void updateCounter_test_coalesces_updates() {
+        when(delegate.getLatestCounter(CREDENTIAL_ID)).thenReturn(null);
+        target.updateCounter(CREDENTIAL_ID, 1);
+        target.updateCounter(CREDENTIAL_ID, 3);
+        target.updateCounter(CREDENTIAL_ID, 2);
+
+        verify(delegate, never()).updateCounter(any(), anyLong());
+        assertThat(target.getLatestCounter(CREDENTIAL_ID)).isEqualTo(3L);
+        assertThat(target.getPendingCount()).isEqualTo(1);
+
+        target.flush();
+
+        verify(delegate, times(1)).updateCounter(CREDENTIAL_ID, 3);
+        assertThat(target.getPendingCount()).isZero();
+        assertThat(target.getLatestCounter(CREDENTIAL_ID)).isNull();
+    }
+
+    @Test
+    public void flush_test_retries_failed_update() {
+        doThrow(new IllegalStateException("unavailable")).doNothing().when(delegate).updateCounter(any(), anyLong());
+        target.updateCounter(CREDENTIAL_ID, 5);
+
+        target.flush();
+        assertThat(target.getLatestCounter(CREDENTIAL_ID)).isEqualTo(5L);
+
+        target.flush();
+        verify(delegate, times(2)).updateCounter(CREDENTIAL_ID, 5);
+        assertThat(target.getPendingCount()).isZero();
+    }
+
+    @Test
+    public void flush_test_drops_removed_credential() {
+        doThrow(new CredentialIdNotFoundException("not found")).when(delegate).updateCounter(any(), anyLong());
+        target.updateCounter(CREDENTIAL_ID, 5);
+
+        target.flush();
+
+        assertThat(target.getPendingCount()).isZero();
+    }
+
+    @Test
+    public void updateCounter_test_flushes_on_batch_size() {
+        WriteBehindWebAuthnAuthenticatorService batched =
+                new WriteBehindWebAuthnAuthenticatorService(delegate, Duration.ofHours(1), 2);
+        batched.afterPropertiesSet();
+        try {
+            batched.updateCounter(new byte[]{0x01}, 1);
+            batched.updateCounter(new byte[]{0x02}, 1);
+
+            verify(delegate, timeout(1000)).updateCounter(eq(new byte[]{0x01}), eq(1L));
+            verify(delegate, timeout(1000)).updateCounter(eq(new byte[]{0x02}), eq(1L));
+        } finally {
+            batched.destroy();
+        }
+    }
+
+    @Test
+    public void destroy_test_flushes_pending_counters() {
+        target.updateCounter(CREDENTIAL_ID, 7);
+
+        target.destroy();
+
+        verify(delegate).updateCounter(CREDENTIAL_ID, 7);
+    }
+
+    @Test
+    public void updateCounter_test_writes_synchronously_above_max_pending_count() {
+        doThrow(new IllegalStateException("unavailable")).when(delegate).updateCounter(eq(new byte[]{0x01}), anyLong());
+        target.setMaxPendingCount(1);
+        target.updateCounter(new byte[]{0x01}, 1);
+        target.flush();
+        target.updateCounter(new byte[]{0x01}, 2);
+
+        target.updateCounter(new byte[]{0x02}, 1);
+
+        verify(delegate).updateCounter(new byte[]{0x02}, 1);
+        assertThat(target.getPendingCount()).isEqualTo(1);
+        assertThat(target.getLatestCounter(new byte[]{0x01})).isEqualTo(2L);
+    }
+
+    @Test
+    public void updateCounter_test_without_afterPropertiesSet() {
+        WriteBehindWebAuthnAuthenticatorService notStarted =
+                new WriteBehindWebAuthnAuthenticatorService(delegate, Duration.ofHours(1), 1);
+        notStarted.updateCounter(CREDENTIAL_ID, 1);
+
+        verify(delegate, never()).updateCounter(any(), anyLong());
+
+        notStarted.destroy();
+        verify(delegate).updateCounter(CREDENTIAL_ID, 1);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test for ChallengeGenerator implementations
+ */
+public class ChallengeGeneratorTest {
+
+    @Test
+    public void defaultChallengeGenerator_test() {
+        assertThat(new DefaultChallengeGenerator().generate().getValue()).hasSize(16);
+    }
+
+    @Test
+    public void stripedChallengeGenerator_test() {
+        assertUniqueUnderContention(new StripedChallengeGenerator(4));
+    }
+
+    @Test
+    public void batchedChallengeGenerator_test() {
+        // small blocks to exercise the block replacement
+        assertUniqueUnderContention(new BatchedChallengeGenerator(2, 8));
+    }
+
+    private void assertUniqueUnderContention(ChallengeGenerator generator) {
+        Set<ByteBuffer> values = ConcurrentHashMap.newKeySet();
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            for (int i = 0; i < 8; i++) {
+                executorService.submit(() -> {
+                    for (int j = 0; j < 1000; j++) {
+                        Challenge challenge = generator.generate();
+                        assertThat(challenge.getValue()).hasSize(16);
+                        values.add(ByteBuffer.wrap(challenge.getValue()));
+                    }
+                });
+            }
+            executorService.shutdown();
+            assertThat(executorService.awaitTermination(30, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        assertThat(values).hasSize(8000);
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockHttpSession;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Test for CompactHttpSessionChallengeRepository
+ */
+public class CompactHttpSessionChallengeRepositoryTest {
+
+    private static final String ATTR_NAME = ".test-challenge";
+
+    private CompactHttpSessionChallengeRepository target = new CompactHttpSessionChallengeRepository();
+
+    @Test
+    public void saveChallenge_test_stores_raw_value() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        target.setSessionAttributeName(ATTR_NAME);
+
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, request);
+
+        assertThat(request.getSession().getAttribute(ATTR_NAME)).isEqualTo(challenge.getValue());
+        assertThat(target.loadChallenge(request)).isEqualTo(challenge);
+    }
+
+    @Test
+    public void saveChallenge_test_skips_unchanged_value() {
+        HttpSession session = spy(new MockHttpSession());
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setSession(session);
+
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, request);
+        target.saveChallenge(new DefaultChallenge(challenge.getValue()), request);
+
+        verify(session, times(1)).setAttribute(anyString(), any());
+    }
+
+    @Test
+    public void consumeChallenge_test() {
+        MockHttpSession session = new MockHttpSession();
+        MockHttpServletRequest prevRequest = new MockHttpServletRequest();
+        prevRequest.setSession(session);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setSession(session);
+
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, prevRequest);
+
+        assertThat(target.consumeChallenge(request)).isEqualTo(challenge);
+        assertThat(target.consumeChallenge(request)).isNull();
+    }
+
+    @Test
+    public void loadChallenge_test_without_previous_request() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+
+        assertThat(target.loadChallenge(request)).isNull();
+        assertThat(request.getSession(false)).isNull();
+    }
+
+    @Test
+    public void lazyFlush_test() {
+        HttpSession session = spy(new MockHttpSession());
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setSession(session);
+        request.setAttribute(CompactHttpSessionChallengeRepository.FLUSH_FILTER_ATTR_NAME, Boolean.TRUE);
+        target.setLazyFlush(true);
+
+        target.saveChallenge(target.generateChallenge(), request);
+        target.saveChallenge(null, request);
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, request);
+
+        assertThat(target.loadChallenge(request)).isEqualTo(challenge);
+        verify(session, never()).setAttribute(anyString(), any());
+
+        target.flush(request);
+
+        verify(session, times(1)).setAttribute(anyString(), any());
+        verify(session, never()).removeAttribute(anyString());
+        assertThat(target.loadChallenge(request)).isEqualTo(challenge);
+    }
+
+    @Test
+    public void lazyFlush_test_with_removal() {
+        MockHttpSession session = new MockHttpSession();
+        MockHttpServletRequest prevRequest = new MockHttpServletRequest();
+        prevRequest.setSession(session);
+        prevRequest.setAttribute(CompactHttpSessionChallengeRepository.FLUSH_FILTER_ATTR_NAME, Boolean.TRUE);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setSession(session);
+        request.setAttribute(CompactHttpSessionChallengeRepository.FLUSH_FILTER_ATTR_NAME, Boolean.TRUE);
+        target.setLazyFlush(true);
+
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, prevRequest);
+        target.flush(prevRequest);
+
+        assertThat(target.consumeChallenge(request)).isEqualTo(challenge);
+        assertThat(target.loadChallenge(request)).isNull();
+        target.flush(request);
+
+        assertThat(target.loadChallenge(new MockHttpServletRequest())).isNull();
+        assertThat(session.getAttributeNames().hasMoreElements()).isFalse();
+    }
+
+    @Test
+    public void lazyFlush_test_without_flush_filter() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        target.setSessionAttributeName(ATTR_NAME);
+        target.setLazyFlush(true);
+
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, request);
+
+        assertThat(request.getSession().getAttribute(ATTR_NAME)).isEqualTo(challenge.getValue());
+    }
+
+    @Test
+    public void lazyFlush_test_with_flush_filter() throws Exception {
+        HttpSession session = spy(new MockHttpSession());
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setSession(session);
+        target.setSessionAttributeName(ATTR_NAME);
+        target.setLazyFlush(true);
+        Challenge challenge = target.generateChallenge();
+
+        new ChallengeFlushFilter(target).doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            target.saveChallenge(challenge, (HttpServletRequest) req);
+            verify(session, never()).setAttribute(anyString(), any());
+        });
+
+        verify(session, times(1)).setAttribute(ATTR_NAME, challenge.getValue());
+        assertThat(request.getAttribute(CompactHttpSessionChallengeRepository.FLUSH_FILTER_ATTR_NAME)).isNull();
+    }
+
+    @Test
+    public void lazyFlush_test_with_flush_filter_and_committing_response() throws Exception {
+        HttpSession session = spy(new MockHttpSession());
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setSession(session);
+        target.setSessionAttributeName(ATTR_NAME);
+        target.setLazyFlush(true);
+        Challenge challenge = target.generateChallenge();
+        byte[] body = "{}".getBytes(StandardCharsets.UTF_8);
+
+        new ChallengeFlushFilter(target).doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+            target.saveChallenge(challenge, (HttpServletRequest) req);
+            res.setContentLength(body.length);
+            res.getOutputStream().write(body);
+            // the response is committed once the declared content is written
+            verify(session, times(1)).setAttribute(ATTR_NAME, challenge.getValue());
+        });
+
+        verify(session, times(1)).setAttribute(ATTR_NAME, challenge.getValue());
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import com.webauthn4j.converter.CollectedClientDataConverter;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.client.ClientDataType;
+import com.webauthn4j.data.client.CollectedClientData;
+import com.webauthn4j.data.client.Origin;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Test for HmacChallengeRepository
+ */
+public class HmacChallengeRepositoryTest {
+
+    private ObjectConverter objectConverter = new ObjectConverter();
+    private CollectedClientDataConverter collectedClientDataConverter = new CollectedClientDataConverter(objectConverter);
+
+    private HmacChallengeRepository target = new HmacChallengeRepository(objectConverter, 1, createSecret((byte) 1));
+
+    @Test
+    public void generateChallenge_test() {
+        Challenge challenge = target.generateChallenge();
+        assertThat(challenge).isNotNull();
+        assertThat(challenge.getValue()).hasSize(42);
+        assertThat(target.verify(challenge.getValue())).isTrue();
+    }
+
+    @Test
+    public void saveChallenge_test_does_not_create_session() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, request);
+
+        assertThat(request.getSession(false)).isNull();
+        assertThat(target.loadChallenge(request)).isEqualTo(challenge);
+    }
+
+    @Test
+    public void saveChallenge_test_with_null() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+
+        target.saveChallenge(target.generateChallenge(), request);
+        target.saveChallenge(null, request);
+
+        assertThat(target.loadChallenge(request)).isNull();
+    }
+
+    @Test
+    public void loadChallenge_test_from_clientDataJSON() {
+        Challenge challenge = target.generateChallenge();
+        MockHttpServletRequest request = createRequest(challenge);
+
+        assertThat(target.loadChallenge(request)).isEqualTo(challenge);
+        assertThat(request.getSession(false)).isNull();
+    }
+
+    @Test
+    public void loadChallenge_test_from_clientDataJSON_attribute() {
+        Challenge challenge = target.generateChallenge();
+        CollectedClientData collectedClientData = new CollectedClientData(ClientDataType.GET, challenge, new Origin("https://example.com"), null);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute(ChallengeRepository.CLIENT_DATA_JSON_ATTR_NAME, collectedClientDataConverter.convertToBase64UrlString(collectedClientData));
+
+        assertThat(target.loadChallenge(request)).isEqualTo(challenge);
+    }
+
+    @Test
+    public void loadChallenge_test_without_clientDataJSON() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+
+        assertThat(target.loadChallenge(request)).isNull();
+    }
+
+    @Test
+    public void loadChallenge_test_with_malformed_clientDataJSON() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setParameter("clientDataJSON", "malformed");
+
+        assertThat(target.loadChallenge(request)).isNull();
+    }
+
+    @Test
+    public void loadChallenge_test_with_foreign_challenge() {
+        MockHttpServletRequest request = createRequest(new DefaultChallenge());
+
+        assertThat(target.loadChallenge(request)).isNull();
+    }
+
+    @Test
+    public void loadChallenge_test_with_tampered_challenge() {
+        byte[] value = target.generateChallenge().getValue();
+        value[20] ^= 0x01;
+        MockHttpServletRequest request = createRequest(new DefaultChallenge(value));
+
+        assertThat(target.loadChallenge(request)).isNull();
+    }
+
+    @Test
+    public void loadChallenge_test_with_expired_challenge() {
+        Instant now = Instant.now();
+        target.setClock(Clock.fixed(now, ZoneOffset.UTC));
+        Challenge challenge = target.generateChallenge();
+
+        target.setClock(Clock.fixed(now.plus(Duration.ofMinutes(6)), ZoneOffset.UTC));
+
+        assertThat(target.loadChallenge(createRequest(challenge))).isNull();
+    }
+
+    @Test
+    public void rotateKey_test() {
+        Challenge oldChallenge = target.generateChallenge();
+        target.rotateKey(2, createSecret((byte) 2));
+        Challenge newChallenge = target.generateChallenge();
+
+        assertThat(target.getCurrentKeyId()).isEqualTo(2);
+        assertThat(newChallenge.getValue()[1]).isEqualTo((byte) 2);
+        assertThat(target.loadChallenge(createRequest(oldChallenge))).isEqualTo(oldChallenge);
+        assertThat(target.loadChallenge(createRequest(newChallenge))).isEqualTo(newChallenge);
+
+        target.removeKey(1);
+        assertThat(target.loadChallenge(createRequest(oldChallenge))).isNull();
+    }
+
+    @Test
+    public void removeKey_test_with_current_key() {
+        assertThatThrownBy(() -> target.removeKey(1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void constructor_test_with_short_secret() {
+        assertThatThrownBy(() -> new HmacChallengeRepository(objectConverter, 1, new byte[16])).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void generateChallenge_test_with_short_generated_challenge() {
+        target.setChallengeGenerator(() -> new DefaultChallenge(new byte[8]));
+        assertThatThrownBy(() -> target.generateChallenge()).isInstanceOf(IllegalStateException.class);
+    }
+
+    private MockHttpServletRequest createRequest(Challenge challenge) {
+        CollectedClientData collectedClientData = new CollectedClientData(ClientDataType.GET, challenge, new Origin("https://example.com"), null);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setParameter("clientDataJSON", collectedClientDataConverter.convertToBase64UrlString(collectedClientData));
+        return request;
+    }
+
+    private byte[] createSecret(byte value) {
+        byte[] secret = new byte[32];
+        Arrays.fill(secret, value);
+        return secret;
+    }
+}
@@ -115,4 +115,29 @@ public class HttpSessionChallengeRepositoryTest {
 
         assertThat(loadedChallenge).isNotNull();
     }
+
+    @Test
+    public void consumeChallenge_test() {
+        MockHttpSession session = new MockHttpSession();
+        MockHttpServletRequest prevRequest = new MockHttpServletRequest();
+        prevRequest.setSession(session);
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setSession(session);
+
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, prevRequest);
+
+        assertThat(target.consumeChallenge(request)).isEqualTo(challenge);
+        assertThat(target.consumeChallenge(request)).isNull();
+        assertThat(target.loadChallenge(request)).isNull();
+    }
+
+    @Test
+    public void consumeChallenge_test_without_previous_request() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+
+        assertThat(target.consumeChallenge(request)).isNull();
+        assertThat(request.getSession(false)).isNull();
+    }
 }
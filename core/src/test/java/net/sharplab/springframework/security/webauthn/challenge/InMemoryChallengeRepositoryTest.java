@@ -0,0 +1,158 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.challenge;
+
+import com.webauthn4j.converter.CollectedClientDataConverter;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.client.ClientDataType;
+import com.webauthn4j.data.client.CollectedClientData;
+import com.webauthn4j.data.client.Origin;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test for InMemoryChallengeRepository
+ */
+public class InMemoryChallengeRepositoryTest {
+
+    private ObjectConverter objectConverter = new ObjectConverter();
+    private CollectedClientDataConverter collectedClientDataConverter = new CollectedClientDataConverter(objectConverter);
+
+    private InMemoryChallengeRepository target = new InMemoryChallengeRepository(objectConverter);
+
+    @Test
+    public void saveChallenge_test() {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, request);
+
+        assertThat(request.getSession(false)).isNull();
+        assertThat(target.size()).isEqualTo(1);
+        assertThat(target.getEstimatedBytes()).isPositive();
+        assertThat(target.loadChallenge(createRequest(challenge))).isEqualTo(challenge);
+    }
+
+    @Test
+    public void saveChallenge_test_with_null() {
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, new MockHttpServletRequest());
+
+        MockHttpServletRequest request = createRequest(challenge);
+        target.saveChallenge(null, request);
+
+        assertThat(target.size()).isZero();
+        assertThat(target.getEstimatedBytes()).isZero();
+        assertThat(target.loadChallenge(request)).isNull();
+    }
+
+    @Test
+    public void loadChallenge_test_with_unknown_challenge() {
+        target.saveChallenge(target.generateChallenge(), new MockHttpServletRequest());
+
+        assertThat(target.loadChallenge(createRequest(new DefaultChallenge()))).isNull();
+    }
+
+    @Test
+    public void loadChallenge_test_without_clientDataJSON() {
+        assertThat(target.loadChallenge(new MockHttpServletRequest())).isNull();
+    }
+
+    @Test
+    public void consumeChallenge_test() {
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, new MockHttpServletRequest());
+
+        assertThat(target.consumeChallenge(createRequest(challenge))).isEqualTo(challenge);
+        assertThat(target.size()).isZero();
+        assertThat(target.consumeChallenge(createRequest(challenge))).isNull();
+    }
+
+    @Test
+    public void expiration_test() {
+        Instant now = Instant.now();
+        target.setClock(Clock.fixed(now, ZoneOffset.UTC));
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, new MockHttpServletRequest());
+
+        target.setClock(Clock.fixed(now.plus(Duration.ofMinutes(6)), ZoneOffset.UTC));
+
+        assertThat(target.loadChallenge(createRequest(challenge))).isNull();
+        assertThat(target.size()).isZero();
+        assertThat(target.getExpirationCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void expiration_test_drops_expired_entries_of_all_shards() {
+        Instant now = Instant.now();
+        target.setClock(Clock.fixed(now, ZoneOffset.UTC));
+        for (int i = 0; i < 100; i++) {
+            target.saveChallenge(target.generateChallenge(), new MockHttpServletRequest());
+        }
+        target.setClock(Clock.fixed(now.plus(Duration.ofMinutes(3)), ZoneOffset.UTC));
+        Challenge challenge = target.generateChallenge();
+        target.saveChallenge(challenge, new MockHttpServletRequest());
+
+        target.setClock(Clock.fixed(now.plus(Duration.ofMinutes(6)), ZoneOffset.UTC));
+        target.saveChallenge(target.generateChallenge(), new MockHttpServletRequest());
+
+        assertThat(target.size()).isEqualTo(2);
+        assertThat(target.getExpirationCount()).isEqualTo(100);
+        assertThat(target.loadChallenge(createRequest(challenge))).isEqualTo(challenge);
+    }
+
+    @Test
+    public void eviction_test_with_max_entries() {
+        InMemoryChallengeRepository repository = new InMemoryChallengeRepository(objectConverter, Duration.ofMinutes(5), 64, Long.MAX_VALUE);
+
+        for (int i = 0; i < 1000; i++) {
+            repository.saveChallenge(repository.generateChallenge(), new MockHttpServletRequest());
+        }
+
+        assertThat(repository.size()).isLessThanOrEqualTo(64);
+        assertThat(repository.getEvictionCount()).isEqualTo(1000L - repository.size());
+    }
+
+    @Test
+    public void eviction_test_with_max_bytes() {
+        long maxBytes = 16L * 4 * (InMemoryChallengeRepository.ENTRY_OVERHEAD + 32);
+        InMemoryChallengeRepository repository = new InMemoryChallengeRepository(objectConverter, Duration.ofMinutes(5), 100_000, maxBytes);
+
+        for (int i = 0; i < 1000; i++) {
+            repository.saveChallenge(repository.generateChallenge(), new MockHttpServletRequest());
+        }
+
+        assertThat(repository.getEstimatedBytes()).isLessThanOrEqualTo(maxBytes);
+        assertThat(repository.getEvictionCount()).isPositive();
+    }
+
+    private MockHttpServletRequest createRequest(Challenge challenge) {
+        CollectedClientData collectedClientData = new CollectedClientData(ClientDataType.GET, challenge, new Origin("https://example.com"), null);
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setParameter("clientDataJSON", collectedClientDataConverter.convertToBase64UrlString(collectedClientData));
+        return request;
+    }
+}
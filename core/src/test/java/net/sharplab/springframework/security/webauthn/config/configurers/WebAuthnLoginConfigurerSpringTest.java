@@ -87,6 +87,7 @@ public class WebAuthnLoginConfigurerSpringTest {
         Collection authenticators = Collections.singletonList(TestDataUtil.createAuthenticator());
         when(mockUserDetails.getAuthenticators()).thenReturn(authenticators);
         when(mockUserDetails.getUserHandle()).thenReturn(new byte[32]);
+        when(userDetailsService.loadCredentialsByUsername(any())).thenCallRealMethod();
         doThrow(new UsernameNotFoundException(null)).when(userDetailsService).loadUserByUsername(null);
         when(userDetailsService.loadUserByUsername(anyString())).thenReturn(mockUserDetails);
     }
@@ -16,10 +16,19 @@
 
 package net.sharplab.springframework.security.webauthn.endpoint;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import com.webauthn4j.util.Base64UrlUtil;
+import net.sharplab.springframework.security.webauthn.challenge.ChallengeRepository;
 import net.sharplab.springframework.security.webauthn.options.AssertionOptions;
+import net.sharplab.springframework.security.webauthn.options.AttestationAndAssertionOptions;
 import net.sharplab.springframework.security.webauthn.options.AttestationOptions;
 import net.sharplab.springframework.security.webauthn.options.OptionsProvider;
+import net.sharplab.springframework.security.webauthn.options.OptionsProviderImpl;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetailsService;
 import org.junit.Test;
 import org.springframework.http.HttpStatus;
 import org.springframework.mock.web.MockFilterChain;
@@ -28,6 +37,7 @@ import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.authentication.*;
 
 import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.Collections;
 
@@ -62,9 +72,8 @@ public class OptionsEndpointFilterTest {
     public void doFilter_test() throws IOException, ServletException {
         OptionsProvider optionsProvider = mock(OptionsProvider.class);
         AttestationOptions attestationOptions = new AttestationOptions(null, null, null, null, null, Collections.emptyList(), null);
-        when(optionsProvider.getAttestationOptions(any(), any(), any())).thenReturn(attestationOptions);
         AssertionOptions assertionOptions = new AssertionOptions(null, null, null, null, null, null);
-        when(optionsProvider.getAssertionOptions(any(), any(), any())).thenReturn(assertionOptions);
+        when(optionsProvider.getOptions(any(), any(), any())).thenReturn(new AttestationAndAssertionOptions(attestationOptions, assertionOptions));
         OptionsEndpointFilter optionsEndpointFilter = new OptionsEndpointFilter(optionsProvider, objectConverter);
         MFATokenEvaluator mfaTokenEvaluator = new MFATokenEvaluatorImpl();
         AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
@@ -80,10 +89,65 @@ public class OptionsEndpointFilterTest {
         assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
     }
 
+    @Test
+    public void doFilter_test_with_pre_serialized_template() throws IOException, ServletException {
+        Challenge challenge = new DefaultChallenge();
+        ChallengeRepository challengeRepository = mock(ChallengeRepository.class);
+        when(challengeRepository.loadOrGenerateChallenge(any())).thenReturn(challenge);
+        OptionsProviderImpl optionsProvider = new OptionsProviderImpl(mock(WebAuthnUserDetailsService.class), challengeRepository);
+        optionsProvider.setRpId("example.com");
+        optionsProvider.setRpName("example");
+        optionsProvider.setRegistrationTimeout(10000L);
+        OptionsEndpointFilter optionsEndpointFilter = new OptionsEndpointFilter(optionsProvider, objectConverter);
+        optionsEndpointFilter.setTemplatePreSerialized(true);
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRequestURI(FILTER_URL);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        optionsEndpointFilter.doFilter(request, response, new MockFilterChain());
+        MockHttpServletResponse secondResponse = new MockHttpServletResponse();
+        optionsEndpointFilter.doFilter(request, secondResponse, new MockFilterChain());
+
+        JsonNode json = new ObjectMapper().readTree(response.getContentAsString());
+        assertThat(response.getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(json.get("relyingParty").get("id").asText()).isEqualTo("example.com");
+        assertThat(json.get("registrationTimeout").asLong()).isEqualTo(10000L);
+        assertThat(json.get("challenge").asText()).isEqualTo(Base64UrlUtil.encodeToString(challenge.getValue()));
+        assertThat(json.get("credentials").size()).isZero();
+        assertThat(json.get("parameters").get("username").asText()).isEqualTo("username");
+        assertThat(secondResponse.getContentAsString()).isEqualTo(response.getContentAsString());
+        assertThat(response.getContentLength()).isEqualTo(response.getContentAsByteArray().length);
+    }
+
+    @Test
+    public void doFilter_test_with_pre_serialized_template_matches_default_mode() throws IOException, ServletException {
+        ChallengeRepository challengeRepository = mock(ChallengeRepository.class);
+        when(challengeRepository.loadOrGenerateChallenge(any())).thenReturn(new DefaultChallenge());
+        OptionsProviderImpl optionsProvider = spy(new OptionsProviderImpl(mock(WebAuthnUserDetailsService.class), challengeRepository));
+        optionsProvider.setRpName("example");
+        OptionsEndpointFilter defaultFilter = new OptionsEndpointFilter(optionsProvider, objectConverter);
+        OptionsEndpointFilter templateFilter = new OptionsEndpointFilter(optionsProvider, objectConverter);
+        templateFilter.setTemplatePreSerialized(true);
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRequestURI(FILTER_URL);
+        MockHttpServletResponse defaultResponse = new MockHttpServletResponse();
+        defaultFilter.doFilter(request, defaultResponse, new MockFilterChain());
+        MockHttpServletResponse templateResponse = new MockHttpServletResponse();
+        templateFilter.doFilter(request, templateResponse, new MockFilterChain());
+
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonNode templateJson = objectMapper.readTree(templateResponse.getContentAsString());
+        assertThat(templateJson).isEqualTo(objectMapper.readTree(defaultResponse.getContentAsString()));
+        assertThat(templateJson.get("relyingParty").get("id").asText()).isEqualTo("localhost");
+        verify(optionsProvider, times(1)).getOptions(any(), any(), any());
+        verify(optionsProvider, times(1)).getRequestDependentOptions(any(), any(), any());
+    }
+
     @Test
     public void doFilter_with_error_test() throws IOException, ServletException {
         OptionsProvider optionsProvider = mock(OptionsProvider.class);
-        doThrow(new RuntimeException()).when(optionsProvider).getAttestationOptions(any(), any(), any());
+        doThrow(new RuntimeException()).when(optionsProvider).getOptions(any(), any(), any());
         OptionsEndpointFilter optionsEndpointFilter = new OptionsEndpointFilter(optionsProvider, objectConverter);
         MFATokenEvaluator mfaTokenEvaluator = new MFATokenEvaluatorImpl();
         AuthenticationTrustResolver trustResolver = new AuthenticationTrustResolverImpl();
@@ -119,6 +183,8 @@ public class OptionsEndpointFilterTest {
         InsufficientAuthenticationException exception = new InsufficientAuthenticationException(null);
         optionsEndpointFilter.writeErrorResponse(response, exception);
         assertThat(response.getContentAsString()).isEqualTo("{\"errorMessage\":\"Anonymous access is prohibited\"}");
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_FORBIDDEN);
+        assertThat(response.getContentLength()).isEqualTo(response.getContentAsByteArray().length);
     }
 
 }
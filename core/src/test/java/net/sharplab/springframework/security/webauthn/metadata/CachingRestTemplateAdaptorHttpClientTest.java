@@ -0,0 +1,146 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.metadata;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CachingRestTemplateAdaptorHttpClientTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String url;
+    private volatile String document = "toc-v1";
+    private volatile String eTag = "\"v1\"";
+    private volatile int status = 200;
+    private AtomicInteger downloadCount = new AtomicInteger();
+    private AtomicInteger notModifiedCount = new AtomicInteger();
+
+    private Path cacheDirectory;
+    private CachingRestTemplateAdaptorHttpClient target;
+
+    @Before
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/toc", exchange -> {
+            if (status != 200) {
+                exchange.sendResponseHeaders(status, -1);
+            } else if (eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                notModifiedCount.incrementAndGet();
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                downloadCount.incrementAndGet();
+                byte[] body = document.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("ETag", eTag);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream outputStream = exchange.getResponseBody()) {
+                    outputStream.write(body);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+        url = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/toc";
+        cacheDirectory = temporaryFolder.getRoot().toPath().resolve("metadata");
+        target = new CachingRestTemplateAdaptorHttpClient(new RestTemplate(), cacheDirectory);
+    }
+
+    @After
+    public void tearDown() {
+        target.destroy();
+        server.stop(0);
+    }
+
+    @Test
+    public void fetch_test() {
+        assertThat(target.fetch(url)).isEqualTo("toc-v1");
+        assertThat(cacheDirectory.toFile().list()).hasSize(2);
+    }
+
+    @Test
+    public void fetch_test_sends_conditional_request() {
+        target.fetch(url);
+
+        assertThat(target.fetch(url)).isEqualTo("toc-v1");
+        assertThat(downloadCount.get()).isEqualTo(1);
+        assertThat(notModifiedCount.get()).isEqualTo(1);
+
+        document = "toc-v2";
+        eTag = "\"v2\"";
+        assertThat(target.fetch(url)).isEqualTo("toc-v2");
+        assertThat(downloadCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void fetch_test_falls_back_to_cached_document() {
+        target.fetch(url);
+        status = 500;
+
+        assertThat(target.fetch(url)).isEqualTo("toc-v1");
+    }
+
+    @Test
+    public void fetch_test_reuses_cache_directory_without_network() {
+        target.fetch(url);
+        server.stop(0);
+
+        CachingRestTemplateAdaptorHttpClient restarted = new CachingRestTemplateAdaptorHttpClient(new RestTemplate(), cacheDirectory);
+        restarted.setRefreshInterval(Duration.ofHours(1));
+        restarted.afterPropertiesSet();
+        try {
+            assertThat(restarted.fetch(url)).isEqualTo("toc-v1");
+        } finally {
+            restarted.destroy();
+        }
+    }
+
+    @Test
+    public void refreshAll_test() {
+        target.setRefreshInterval(Duration.ofHours(1));
+        target.fetch(url);
+        document = "toc-v2";
+        eTag = "\"v2\"";
+
+        assertThat(target.fetch(url)).isEqualTo("toc-v1");
+        target.refreshAll();
+        assertThat(target.fetch(url)).isEqualTo("toc-v2");
+        assertThat(downloadCount.get()).isEqualTo(2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setRefreshInterval_test_with_negative() {
+        target.setRefreshInterval(Duration.ofSeconds(-1));
+    }
+}
@@ -20,19 +20,36 @@ package net.sharplab.springframework.security.webauthn.metadata;
 import com.webauthn4j.converter.util.ObjectConverter;
 import com.webauthn4j.data.attestation.authenticator.AAGUID;
 import com.webauthn4j.metadata.data.statement.MetadataStatement;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
 
 public class JsonFileResourceMetadataStatementsProviderTest {
 
+    private static final String METADATA_STATEMENT_A = "metadata/test-tools/Virtual FIDO2 EdDSA25519 SHA512 Conformance Testing CTAP2 Authenticator.json";
+    private static final String METADATA_STATEMENT_B = "metadata/test-tools/Virtual RSA PCKS1.5 SHA256 FIDO2 Conformance Testing CTAP2 Authenticator.json";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private ObjectConverter objectConverter = new ObjectConverter();
 
     private JsonFileResourceMetadataStatementsProvider target = new JsonFileResourceMetadataStatementsProvider(objectConverter);
@@ -73,4 +90,85 @@ public class JsonFileResourceMetadataStatementsProviderTest {
         target.readJsonFile(resource);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void provide_test_with_locationPattern() {
+        target.setLocationPattern("classpath:metadata/test-tools/*.json");
+        target.setParallelism(4);
+
+        Map<AAGUID, Set<MetadataStatement>> metadataItems = target.provide();
+
+        assertThat(metadataItems).hasSize(19);
+        assertThat(target.provide()).isSameAs(metadataItems);
+    }
+
+    @Test
+    public void afterPropertiesSet_test_loads_on_startup() throws IOException {
+        JsonFileResourceMetadataStatementsProvider spy = spy(target);
+        spy.setLocationPattern(temporaryFolder.getRoot().toURI() + "*.json");
+        copy(METADATA_STATEMENT_A, temporaryFolder.newFile("a.json"));
+
+        spy.afterPropertiesSet();
+        spy.provide();
+
+        verify(spy, times(1)).readJsonFile(any());
+    }
+
+    @Test
+    public void reload_test_parses_only_modified_files() throws IOException {
+        JsonFileResourceMetadataStatementsProvider spy = spy(target);
+        spy.setLocationPattern(temporaryFolder.getRoot().toURI() + "*.json");
+        File fileA = copy(METADATA_STATEMENT_A, temporaryFolder.newFile("a.json"));
+        copy(METADATA_STATEMENT_B, temporaryFolder.newFile("b.json"));
+        assertThat(spy.provide()).hasSize(2);
+        verify(spy, times(2)).readJsonFile(any());
+
+        assertThat(fileA.setLastModified(fileA.lastModified() + 1000)).isTrue();
+        spy.reload();
+        verify(spy, times(3)).readJsonFile(any());
+
+        assertThat(fileA.delete()).isTrue();
+        spy.reload();
+        verify(spy, times(3)).readJsonFile(any());
+        assertThat(spy.provide()).hasSize(1);
+        assertThat(spy.getVersion()).isEqualTo(3);
+    }
+
+    @Test
+    public void reload_test_keeps_version_if_unchanged() throws IOException {
+        target.setLocationPattern(temporaryFolder.getRoot().toURI() + "*.json");
+        copy(METADATA_STATEMENT_A, temporaryFolder.newFile("a.json"));
+        Map<AAGUID, Set<MetadataStatement>> metadataItems = target.provide();
+
+        target.reload();
+
+        assertThat(target.provide()).isSameAs(metadataItems);
+        assertThat(target.getVersion()).isEqualTo(1);
+
+        copy(METADATA_STATEMENT_B, temporaryFolder.newFile("b.json"));
+        target.reload();
+
+        assertThat(target.provide()).hasSize(2);
+        assertThat(target.getVersion()).isEqualTo(2);
+    }
+
+    @Test
+    public void reload_test_keeps_previous_statements_on_failure() throws IOException {
+        target.setLocationPattern(temporaryFolder.getRoot().toURI() + "*.json");
+        File file = copy(METADATA_STATEMENT_A, temporaryFolder.newFile("a.json"));
+        Map<AAGUID, Set<MetadataStatement>> metadataItems = target.provide();
+
+        Files.write(file.toPath(), "{".getBytes(StandardCharsets.UTF_8));
+        assertThat(file.setLastModified(file.lastModified() + 1000)).isTrue();
+
+        assertThatThrownBy(() -> target.reload()).isInstanceOf(RuntimeException.class);
+        assertThat(target.provide()).isSameAs(metadataItems);
+        assertThat(target.getVersion()).isEqualTo(1);
+    }
+
+    private static File copy(String path, File file) throws IOException {
+        try (InputStream inputStream = new ClassPathResource(path).getInputStream()) {
+            Files.copy(inputStream, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+}
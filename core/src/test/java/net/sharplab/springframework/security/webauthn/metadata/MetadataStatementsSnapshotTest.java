@@ -0,0 +1,125 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.metadata;
+
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.metadata.data.statement.MetadataStatement;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MetadataStatementsSnapshotTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ObjectConverter objectConverter = new ObjectConverter();
+
+    @Test
+    public void compile_and_open_test() throws IOException {
+        List<Resource> resources = Arrays.asList(new PathMatchingResourcePatternResolver().getResources("classpath:metadata/test-tools/*.json"));
+        JsonFileResourceMetadataStatementsProvider jsonFileProvider = new JsonFileResourceMetadataStatementsProvider(objectConverter);
+        jsonFileProvider.setResources(resources);
+        Map<AAGUID, Set<MetadataStatement>> expected = jsonFileProvider.provide();
+        Path file = temporaryFolder.getRoot().toPath().resolve("metadata.snapshot");
+
+        MetadataStatementsSnapshot.compile(resources, objectConverter, file);
+        Map<AAGUID, Set<MetadataStatement>> metadataStatements = MetadataStatementsSnapshot.open(file, objectConverter).getMetadataStatements();
+
+        assertThat(metadataStatements).hasSameSizeAs(expected);
+        assertThat(metadataStatements.keySet()).isEqualTo(expected.keySet());
+        for (AAGUID aaguid : expected.keySet()) {
+            assertThat(metadataStatements.get(aaguid)).hasSameSizeAs(expected.get(aaguid));
+            assertThat(metadataStatements.get(aaguid).iterator().next().getProtocolFamily())
+                    .isEqualTo(expected.get(aaguid).iterator().next().getProtocolFamily());
+        }
+        assertThat(metadataStatements.entrySet()).hasSize(expected.size());
+    }
+
+    @Test
+    public void getMetadataStatements_test_decodes_once() throws IOException {
+        List<Resource> resources = Arrays.asList(new PathMatchingResourcePatternResolver().getResources("classpath:metadata/test-tools/*.json"));
+        Path file = temporaryFolder.getRoot().toPath().resolve("metadata.snapshot");
+        MetadataStatementsSnapshot.compile(resources, objectConverter, file);
+        Map<AAGUID, Set<MetadataStatement>> metadataStatements = MetadataStatementsSnapshot.open(file, objectConverter).getMetadataStatements();
+        AAGUID aaguid = metadataStatements.keySet().iterator().next();
+
+        assertThat(metadataStatements.get(aaguid)).isSameAs(metadataStatements.get(aaguid));
+        assertThat(metadataStatements.get(new AAGUID("00000000-0000-0000-0000-000000000001"))).isNull();
+    }
+
+    @Test
+    public void open_test_with_invalid_file() throws IOException {
+        Path file = temporaryFolder.newFile("invalid.snapshot").toPath();
+        Files.write(file, new byte[]{0x7B, 0x7D, 0x00, 0x00, 0x00, 0x00});
+
+        assertThatThrownBy(() -> MetadataStatementsSnapshot.open(file, objectConverter)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void getMetadataStatements_test_with_truncated_document() throws IOException {
+        List<Resource> resources = Arrays.asList(new PathMatchingResourcePatternResolver().getResources("classpath:metadata/test-tools/*.json"));
+        Path file = temporaryFolder.getRoot().toPath().resolve("metadata.snapshot");
+        MetadataStatementsSnapshot.compile(resources, objectConverter, file);
+        // overwrite the length of the first document of the first group with a length beyond the group
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        int entry = 4 + 1 + 32 + 4;
+        AAGUID aaguid = buffer.get(entry) == 0x00 ? AAGUID.NULL : new AAGUID(Arrays.copyOfRange(buffer.array(), entry + 1, entry + 17));
+        int offset = buffer.getInt(entry + (aaguid == AAGUID.NULL ? 1 : 17));
+        buffer.putInt(offset, Integer.MAX_VALUE);
+        Files.write(file, buffer.array());
+        Map<AAGUID, Set<MetadataStatement>> metadataStatements = MetadataStatementsSnapshot.open(file, objectConverter).getMetadataStatements();
+
+        assertThatThrownBy(() -> metadataStatements.get(aaguid)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void open_test_with_truncated_file() throws IOException {
+        List<Resource> resources = Arrays.asList(new PathMatchingResourcePatternResolver().getResources("classpath:metadata/test-tools/*.json"));
+        Path file = temporaryFolder.getRoot().toPath().resolve("metadata.snapshot");
+        MetadataStatementsSnapshot.compile(resources, objectConverter, file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 1));
+
+        assertThatThrownBy(() -> MetadataStatementsSnapshot.open(file, objectConverter)).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void fingerprint_test() throws IOException {
+        List<Resource> resources = Arrays.asList(new PathMatchingResourcePatternResolver().getResources("classpath:metadata/test-tools/*.json"));
+        Path file = temporaryFolder.getRoot().toPath().resolve("metadata.snapshot");
+        MetadataStatementsSnapshot.compile(resources, objectConverter, file);
+
+        assertThat(MetadataStatementsSnapshot.open(file, objectConverter).getFingerprint()).isEqualTo(MetadataStatementsSnapshot.fingerprint(resources));
+        assertThat(MetadataStatementsSnapshot.fingerprint(resources.subList(1, resources.size()))).isNotEqualTo(MetadataStatementsSnapshot.fingerprint(resources));
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.metadata;
+
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.metadata.MetadataStatementsProvider;
+import com.webauthn4j.metadata.data.statement.MetadataStatement;
+import com.webauthn4j.metadata.exception.BadStatusException;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MetadataVerdictCacheTest {
+
+    private static final AAGUID AAGUID_A = new AAGUID("2b2ecbb4-59b4-44fa-868d-a072485d8ae0");
+    private static final AAGUID AAGUID_B = new AAGUID("fa2b99dc-9e39-4257-8f92-4a30d23c4118");
+
+    private MetadataStatementsProvider metadataStatementsProvider = mock(MetadataStatementsProvider.class);
+    private AtomicInteger evaluationCount = new AtomicInteger();
+
+    @Test
+    public void get_test() {
+        Map<AAGUID, Set<MetadataStatement>> metadataStatements = Collections.singletonMap(AAGUID_A, Collections.singleton(mock(MetadataStatement.class)));
+        when(metadataStatementsProvider.provide()).thenReturn(metadataStatements);
+        MetadataVerdictCache<Integer> target = new MetadataVerdictCache<>(metadataStatementsProvider, this::countStatements);
+
+        assertThat(target.get(AAGUID_A)).isEqualTo(1);
+        assertThat(target.get(AAGUID_A)).isEqualTo(1);
+        assertThat(target.get(AAGUID_B)).isEqualTo(0);
+
+        assertThat(evaluationCount.get()).isEqualTo(2);
+        assertThat(target.getSize()).isEqualTo(2);
+        assertThat(target.getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    public void get_test_reevaluates_when_metadata_changes() {
+        when(metadataStatementsProvider.provide()).thenReturn(
+                Collections.singletonMap(AAGUID_A, Collections.singleton(mock(MetadataStatement.class))),
+                Collections.emptyMap());
+        MetadataVerdictCache<Integer> target = new MetadataVerdictCache<>(metadataStatementsProvider, this::countStatements);
+
+        assertThat(target.get(AAGUID_A)).isEqualTo(1);
+        assertThat(target.get(AAGUID_A)).isEqualTo(0);
+
+        assertThat(evaluationCount.get()).isEqualTo(2);
+        assertThat(target.getVersion()).isEqualTo(2);
+    }
+
+    @Test
+    public void get_test_with_versioned_provider() {
+        VersionedMetadataStatementsProvider versionedMetadataStatementsProvider = mock(VersionedMetadataStatementsProvider.class);
+        when(versionedMetadataStatementsProvider.getVersion()).thenReturn(1L, 1L, 2L);
+        when(versionedMetadataStatementsProvider.provide()).thenReturn(
+                Collections.singletonMap(AAGUID_A, Collections.singleton(mock(MetadataStatement.class))),
+                Collections.emptyMap());
+        MetadataVerdictCache<Integer> target = new MetadataVerdictCache<>(versionedMetadataStatementsProvider, this::countStatements);
+
+        assertThat(target.get(AAGUID_A)).isEqualTo(1);
+        assertThat(target.get(AAGUID_A)).isEqualTo(1);
+        assertThat(target.get(AAGUID_A)).isEqualTo(0);
+
+        verify(versionedMetadataStatementsProvider, times(2)).provide();
+        assertThat(evaluationCount.get()).isEqualTo(2);
+        assertThat(target.getVersion()).isEqualTo(2);
+    }
+
+    @Test
+    public void get_test_does_not_cache_failed_evaluation() {
+        when(metadataStatementsProvider.provide()).thenReturn(Collections.emptyMap());
+        MetadataVerdictCache<Integer> target = new MetadataVerdictCache<>(metadataStatementsProvider, (aaguid, statements) -> {
+            evaluationCount.incrementAndGet();
+            throw new BadStatusException("revoked");
+        });
+
+        Throwable first = catchThrowable(() -> target.get(AAGUID_A));
+        Throwable second = catchThrowable(() -> target.get(AAGUID_A));
+
+        assertThat(first).isInstanceOf(BadStatusException.class);
+        assertThat(second).isInstanceOf(BadStatusException.class).isNotSameAs(first);
+        assertThat(evaluationCount.get()).isEqualTo(2);
+        assertThat(target.getSize()).isEqualTo(0);
+    }
+
+    @Test
+    public void invalidateAll_test() {
+        when(metadataStatementsProvider.provide()).thenReturn(Collections.emptyMap());
+        MetadataVerdictCache<Integer> target = new MetadataVerdictCache<>(metadataStatementsProvider, this::countStatements);
+        target.get(AAGUID_A);
+
+        target.invalidateAll();
+        target.get(AAGUID_A);
+
+        assertThat(evaluationCount.get()).isEqualTo(2);
+    }
+
+    private int countStatements(AAGUID aaguid, Set<MetadataStatement> metadataStatements) {
+        evaluationCount.incrementAndGet();
+        return metadataStatements.size();
+    }
+}
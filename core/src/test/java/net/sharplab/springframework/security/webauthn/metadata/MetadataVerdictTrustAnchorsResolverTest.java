@@ -0,0 +1,104 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.metadata;
+
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.statement.AttestationCertificatePath;
+import com.webauthn4j.data.attestation.statement.CertificateBaseAttestationStatement;
+import com.webauthn4j.metadata.data.statement.MetadataStatement;
+import com.webauthn4j.validator.exception.TrustAnchorNotFoundException;
+import net.sharplab.springframework.security.webauthn.anchor.CachingCertPathTrustworthinessValidator;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+public class MetadataVerdictTrustAnchorsResolverTest {
+
+    private static final AAGUID AAGUID_A = new AAGUID("2b2ecbb4-59b4-44fa-868d-a072485d8ae0");
+    private static final AAGUID AAGUID_B = new AAGUID("fa2b99dc-9e39-4257-8f92-4a30d23c4118");
+
+    private X509Certificate rootCertificate = loadCertificate("certs/cert-path-test-root-CA.pem");
+    private X509Certificate intermediateCertificate = loadCertificate("certs/cert-path-test-intermediate-CA.pem");
+    private X509Certificate attestationCertificate = loadCertificate("certs/cert-path-test-attestation.pem");
+
+    private VersionedMetadataStatementsProvider metadataStatementsProvider = mock(VersionedMetadataStatementsProvider.class);
+    private AtomicInteger evaluationCount = new AtomicInteger();
+    private MetadataVerdictTrustAnchorsResolver target = new MetadataVerdictTrustAnchorsResolver(
+            new MetadataVerdictCache<>(metadataStatementsProvider, (aaguid, statements) -> {
+                evaluationCount.incrementAndGet();
+                return MetadataStatementVerdict.evaluate(aaguid, statements);
+            }));
+
+    public MetadataVerdictTrustAnchorsResolverTest() {
+        MetadataStatement metadataStatement = mock(MetadataStatement.class);
+        when(metadataStatement.getAttestationRootCertificates()).thenReturn(Collections.singletonList(rootCertificate));
+        Map<AAGUID, Set<MetadataStatement>> metadataStatements = Collections.singletonMap(AAGUID_A, Collections.singleton(metadataStatement));
+        when(metadataStatementsProvider.getVersion()).thenReturn(1L);
+        when(metadataStatementsProvider.provide()).thenReturn(metadataStatements);
+    }
+
+    @Test
+    public void resolve_test() {
+        Set<TrustAnchor> trustAnchors = target.resolve(AAGUID_A);
+
+        assertThat(trustAnchors).extracting("trustedCert").containsExactly(rootCertificate);
+        assertThat(target.resolve(AAGUID_A)).isSameAs(trustAnchors);
+        assertThat(target.resolve(AAGUID_B)).isEmpty();
+        assertThat(evaluationCount.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void resolve_test_with_caching_cert_path_trustworthiness_validator() {
+        CachingCertPathTrustworthinessValidator validator = new CachingCertPathTrustworthinessValidator(target);
+        CertificateBaseAttestationStatement attestationStatement = mock(CertificateBaseAttestationStatement.class);
+        when(attestationStatement.getX5c())
+                .thenReturn(new AttestationCertificatePath(attestationCertificate, Collections.singletonList(intermediateCertificate)));
+
+        validator.validate(AAGUID_A, attestationStatement);
+        validator.validate(AAGUID_A, attestationStatement);
+
+        assertThat(validator.getHitCount()).isEqualTo(1);
+        assertThat(evaluationCount.get()).isEqualTo(1);
+        verify(metadataStatementsProvider, times(1)).provide();
+        assertThatThrownBy(() -> validator.validate(AAGUID_B, attestationStatement)).isInstanceOf(TrustAnchorNotFoundException.class);
+    }
+
+    private static X509Certificate loadCertificate(String path) {
+        try (InputStream inputStream = new ClassPathResource(path).getInputStream()) {
+            return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(inputStream);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (java.security.cert.CertificateException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.webauthn.metadata;
+
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.metadata.MetadataItemsProvider;
+import com.webauthn4j.metadata.data.MetadataItem;
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.*;
+
+public class RefreshingMetadataItemsProviderTest {
+
+    private static final AAGUID AAGUID_A = new AAGUID("2b2ecbb4-59b4-44fa-868d-a072485d8ae0");
+
+    private MetadataItemsProvider delegate = mock(MetadataItemsProvider.class);
+    private RefreshingMetadataItemsProvider target = new RefreshingMetadataItemsProvider(delegate);
+
+    @After
+    public void tearDown() {
+        target.destroy();
+    }
+
+    @Test
+    public void provide_test() {
+        Map<AAGUID, Set<MetadataItem>> metadataItems = Collections.singletonMap(AAGUID_A, Collections.singleton(mock(MetadataItem.class)));
+        when(delegate.provide()).thenReturn(metadataItems);
+
+        assertThat(target.provide()).isSameAs(metadataItems);
+        assertThat(target.provide()).isSameAs(metadataItems);
+
+        verify(delegate, times(1)).provide();
+    }
+
+    @Test
+    public void afterPropertiesSet_test_refreshes_in_background() {
+        Map<AAGUID, Set<MetadataItem>> first = Collections.emptyMap();
+        Map<AAGUID, Set<MetadataItem>> second = Collections.singletonMap(AAGUID_A, Collections.singleton(mock(MetadataItem.class)));
+        when(delegate.provide()).thenReturn(first, second);
+        target.setRefreshInterval(Duration.ofMillis(50));
+
+        target.afterPropertiesSet();
+
+        verify(delegate, timeout(5000).atLeast(2)).provide();
+        assertThat(target.provide()).isSameAs(second);
+    }
+
+    @Test
+    public void refresh_test_keeps_previous_items_on_failure() {
+        Map<AAGUID, Set<MetadataItem>> metadataItems = Collections.emptyMap();
+        when(delegate.provide()).thenReturn(metadataItems).thenThrow(new IllegalStateException("TOC signature is invalid"));
+        target.provide();
+
+        assertThatThrownBy(() -> target.refresh()).isInstanceOf(IllegalStateException.class);
+        assertThat(target.provide()).isSameAs(metadataItems);
+    }
+
+    @Test
+    public void setRefreshInterval_test_with_zero() {
+        assertThatThrownBy(() -> target.setRefreshInterval(Duration.ZERO)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
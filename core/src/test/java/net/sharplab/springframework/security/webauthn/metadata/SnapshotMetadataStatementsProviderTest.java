@@ -0,0 +1,140 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.metadata;
+
+import com.webauthn4j.converter.util.ObjectConverter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SnapshotMetadataStatementsProviderTest {
+
+    private static final String METADATA_STATEMENT = "metadata/test-tools/Virtual FIDO2 EdDSA25519 SHA512 Conformance Testing CTAP2 Authenticator.json";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private ObjectConverter objectConverter = new ObjectConverter();
+
+    @Test(expected = IllegalArgumentException.class)
+    public void snapshotFile_not_configured_test() {
+        new SnapshotMetadataStatementsProvider(objectConverter).provide();
+    }
+
+    @Test
+    public void provide_test_compiles_on_first_run() throws IOException {
+        Path snapshotFile = temporaryFolder.getRoot().toPath().resolve("metadata.snapshot");
+        List<Resource> resources = Collections.singletonList(new FileSystemResource(copy(METADATA_STATEMENT, temporaryFolder.newFile("a.json"))));
+
+        SnapshotMetadataStatementsProvider target = new SnapshotMetadataStatementsProvider(objectConverter);
+        target.setSnapshotFile(snapshotFile);
+        target.setResources(resources);
+        target.afterPropertiesSet();
+
+        assertThat(snapshotFile).exists();
+        assertThat(target.provide()).hasSize(1);
+    }
+
+    @Test
+    public void provide_test_reuses_snapshot() throws IOException {
+        Path snapshotFile = temporaryFolder.getRoot().toPath().resolve("metadata.snapshot");
+        File json = copy(METADATA_STATEMENT, temporaryFolder.newFile("a.json"));
+        List<Resource> resources = Collections.singletonList(new FileSystemResource(json));
+        MetadataStatementsSnapshot.compile(resources, objectConverter, snapshotFile);
+        FileTime compiled = FileTime.fromMillis(json.lastModified() - 10_000);
+        Files.setLastModifiedTime(snapshotFile, compiled);
+
+        SnapshotMetadataStatementsProvider target = new SnapshotMetadataStatementsProvider(objectConverter);
+        target.setSnapshotFile(snapshotFile);
+        target.setResources(resources);
+
+        assertThat(target.provide()).hasSize(1);
+        assertThat(Files.getLastModifiedTime(snapshotFile)).isEqualTo(compiled);
+    }
+
+    @Test
+    public void provide_test_recompiles_outdated_snapshot() throws IOException {
+        Path snapshotFile = temporaryFolder.getRoot().toPath().resolve("metadata.snapshot");
+        File json = copy(METADATA_STATEMENT, temporaryFolder.newFile("a.json"));
+        List<Resource> resources = Collections.singletonList(new FileSystemResource(json));
+        MetadataStatementsSnapshot.compile(resources, objectConverter, snapshotFile);
+        FileTime compiled = FileTime.fromMillis(json.lastModified() + 10_000);
+        Files.setLastModifiedTime(snapshotFile, compiled);
+        // an older copy of the file, as restored from a backup, changes the fingerprint as well
+        assertThat(json.setLastModified(json.lastModified() - 10_000)).isTrue();
+
+        SnapshotMetadataStatementsProvider target = new SnapshotMetadataStatementsProvider(objectConverter);
+        target.setSnapshotFile(snapshotFile);
+        target.setResources(resources);
+
+        assertThat(target.provide()).hasSize(1);
+        assertThat(Files.getLastModifiedTime(snapshotFile)).isNotEqualTo(compiled);
+    }
+
+    @Test
+    public void provide_test_recompiles_on_resource_list_change() throws IOException {
+        Path snapshotFile = temporaryFolder.getRoot().toPath().resolve("metadata.snapshot");
+        File json = copy(METADATA_STATEMENT, temporaryFolder.newFile("a.json"));
+        File removed = copy(METADATA_STATEMENT, temporaryFolder.newFile("b.json"));
+        MetadataStatementsSnapshot.compile(Arrays.asList(new FileSystemResource(json), new FileSystemResource(removed)), objectConverter, snapshotFile);
+        FileTime compiled = FileTime.fromMillis(json.lastModified() + 10_000);
+        Files.setLastModifiedTime(snapshotFile, compiled);
+
+        SnapshotMetadataStatementsProvider target = new SnapshotMetadataStatementsProvider(objectConverter);
+        target.setSnapshotFile(snapshotFile);
+        target.setResources(Collections.singletonList(new FileSystemResource(json)));
+
+        assertThat(target.provide()).hasSize(1);
+        assertThat(Files.getLastModifiedTime(snapshotFile)).isNotEqualTo(compiled);
+    }
+
+    @Test
+    public void provide_test_recompiles_corrupted_snapshot() throws IOException {
+        Path snapshotFile = temporaryFolder.getRoot().toPath().resolve("metadata.snapshot");
+        Files.write(snapshotFile, new byte[]{0x57, 0x41, 0x4D});
+        List<Resource> resources = Collections.singletonList(new FileSystemResource(copy(METADATA_STATEMENT, temporaryFolder.newFile("a.json"))));
+
+        SnapshotMetadataStatementsProvider target = new SnapshotMetadataStatementsProvider(objectConverter);
+        target.setSnapshotFile(snapshotFile);
+        target.setResources(resources);
+
+        assertThat(target.provide()).hasSize(1);
+    }
+
+    private static File copy(String path, File file) throws IOException {
+        try (InputStream inputStream = new ClassPathResource(path).getInputStream()) {
+            Files.copy(inputStream, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+}
@@ -18,11 +18,14 @@ package net.sharplab.springframework.security.webauthn.options;
 
 import com.webauthn4j.authenticator.Authenticator;
 import com.webauthn4j.data.PublicKeyCredentialParameters;
+import com.webauthn4j.data.PublicKeyCredentialType;
+import com.webauthn4j.data.attestation.statement.COSEAlgorithmIdentifier;
 import com.webauthn4j.data.client.challenge.Challenge;
 import com.webauthn4j.data.client.challenge.DefaultChallenge;
 import com.webauthn4j.data.extension.client.AuthenticationExtensionsClientInputs;
 import com.webauthn4j.util.Base64UrlUtil;
 import net.sharplab.springframework.security.webauthn.challenge.ChallengeRepository;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserCredentials;
 import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetails;
 import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetailsService;
 import org.assertj.core.util.Lists;
@@ -50,6 +53,7 @@ public class OptionsProviderImplTest {
 
         MockHttpServletRequest mockRequest = new MockHttpServletRequest();
 
+        when(userDetailsService.loadCredentialsByUsername(any())).thenCallRealMethod();
         when(userDetailsService.loadUserByUsername(any())).thenReturn(userDetails);
         doReturn(new byte[0]).when(userDetails).getUserHandle();
         doReturn(authenticators).when(userDetails).getAuthenticators();
@@ -82,6 +86,7 @@ public class OptionsProviderImplTest {
 
         MockHttpServletRequest mockRequest = new MockHttpServletRequest();
 
+        when(userDetailsService.loadCredentialsByUsername(any())).thenCallRealMethod();
         when(userDetailsService.loadUserByUsername(any())).thenReturn(userDetails);
         doReturn(new byte[0]).when(userDetails).getUserHandle();
         doReturn(authenticators).when(userDetails).getAuthenticators();
@@ -113,6 +118,7 @@ public class OptionsProviderImplTest {
 
         MockHttpServletRequest mockRequest = new MockHttpServletRequest();
 
+        when(userDetailsService.loadCredentialsByUsername(any())).thenCallRealMethod();
         when(userDetailsService.loadUserByUsername(any())).thenReturn(userDetails);
         doReturn(new byte[0]).when(userDetails).getUserHandle();
         doReturn(authenticators).when(userDetails).getAuthenticators();
@@ -129,6 +135,81 @@ public class OptionsProviderImplTest {
 
     }
 
+    @Test
+    public void getAssertionOptions_test_with_credentials_projection() {
+        byte[] credentialId = new byte[]{0x01, 0x23, 0x45};
+        WebAuthnUserDetailsService userDetailsService = mock(WebAuthnUserDetailsService.class);
+        ChallengeRepository challengeRepository = mock(ChallengeRepository.class);
+
+        MockHttpServletRequest mockRequest = new MockHttpServletRequest();
+
+        when(userDetailsService.loadCredentialsByUsername("dummy")).thenReturn(new WebAuthnUserCredentials(new byte[0],
+                Collections.singletonList(new WebAuthnUserCredentials.Credential(credentialId, null))));
+
+        OptionsProvider optionsProvider = new OptionsProviderImpl(userDetailsService, challengeRepository);
+        optionsProvider.setRpId("example.com");
+
+        AssertionOptions assertionOptions = optionsProvider.getAssertionOptions(mockRequest, "dummy", new DefaultChallenge());
+        assertThat(assertionOptions.getCredentials()).containsExactly(Base64UrlUtil.encodeToString(credentialId));
+        verify(userDetailsService, never()).loadUserByUsername(any());
+    }
+
+    @Test
+    public void getOptions_test() {
+        Challenge challenge = new DefaultChallenge();
+        byte[] credentialId = new byte[]{0x01, 0x23, 0x45};
+        WebAuthnUserDetailsService userDetailsService = mock(WebAuthnUserDetailsService.class);
+        ChallengeRepository challengeRepository = mock(ChallengeRepository.class);
+
+        MockHttpServletRequest mockRequest = new MockHttpServletRequest();
+
+        when(userDetailsService.loadCredentialsByUsername("dummy")).thenReturn(new WebAuthnUserCredentials(new byte[0],
+                Collections.singletonList(new WebAuthnUserCredentials.Credential(credentialId, null))));
+        when(challengeRepository.loadOrGenerateChallenge(mockRequest)).thenReturn(challenge);
+
+        OptionsProvider optionsProvider = new OptionsProviderImpl(userDetailsService, challengeRepository);
+        optionsProvider.setRpId("example.com");
+
+        AttestationAndAssertionOptions options = optionsProvider.getOptions(mockRequest, "dummy", null);
+        assertThat(options.getAttestationOptions().getChallenge()).isEqualTo(challenge);
+        assertThat(options.getAttestationOptions().getUser().getUsername()).isEqualTo("dummy");
+        assertThat(options.getAttestationOptions().getCredentials()).containsExactly(Base64UrlUtil.encodeToString(credentialId));
+        assertThat(options.getAssertionOptions().getChallenge()).isEqualTo(challenge);
+        assertThat(options.getAssertionOptions().getRpId()).isEqualTo("example.com");
+        assertThat(options.getAssertionOptions().getCredentials()).containsExactly(Base64UrlUtil.encodeToString(credentialId));
+        verify(userDetailsService, times(1)).loadCredentialsByUsername("dummy");
+        verify(challengeRepository, times(1)).loadOrGenerateChallenge(mockRequest);
+    }
+
+    @Test
+    public void getOptionsTemplate_test() {
+        OptionsProviderImpl optionsProvider = new OptionsProviderImpl(mock(WebAuthnUserDetailsService.class), mock(ChallengeRepository.class));
+        optionsProvider.setRpId("example.com");
+        optionsProvider.setRpName("rpName");
+
+        OptionsTemplate template = optionsProvider.getOptionsTemplate();
+        assertThat(optionsProvider.getOptionsTemplate()).isSameAs(template);
+        assertThat(template.getRelyingParty().getId()).isEqualTo("example.com");
+        assertThat(template.getParameters().getUsername()).isEqualTo(optionsProvider.getUsernameParameter());
+
+        optionsProvider.setRpName("newRpName");
+        assertThat(optionsProvider.getOptionsTemplate()).isNotSameAs(template);
+        assertThat(optionsProvider.getOptionsTemplate().getRelyingParty().getName()).isEqualTo("newRpName");
+    }
+
+    @Test
+    public void getOptionsTemplate_test_after_pubKeyCredParams_modification() {
+        OptionsProviderImpl optionsProvider = new OptionsProviderImpl(mock(WebAuthnUserDetailsService.class), mock(ChallengeRepository.class));
+        OptionsTemplate template = optionsProvider.getOptionsTemplate();
+        assertThat(template.getPubKeyCredParams()).isEmpty();
+
+        PublicKeyCredentialParameters es256 = new PublicKeyCredentialParameters(PublicKeyCredentialType.PUBLIC_KEY, COSEAlgorithmIdentifier.ES256);
+        optionsProvider.getPubKeyCredParams().add(es256);
+
+        assertThat(optionsProvider.getOptionsTemplate()).isNotSameAs(template);
+        assertThat(optionsProvider.getOptionsTemplate().getPubKeyCredParams()).containsExactly(es256);
+    }
+
     @Test
     public void getEffectiveRpId() {
         WebAuthnUserDetailsService userDetailsService = mock(WebAuthnUserDetailsService.class);
@@ -42,7 +42,7 @@ public class ServerPropertyProviderImplTest {
         request.setServerName("origin.example.com");
         request.setServerPort(443);
         Challenge mockChallenge = new DefaultChallenge();
-        when(challengeRepository.loadOrGenerateChallenge(request)).thenReturn(mockChallenge);
+        when(challengeRepository.consumeChallenge(request)).thenReturn(mockChallenge);
         when(optionsProvider.getEffectiveRpId(request)).thenReturn("rpid.example.com");
 
         ServerProperty serverProperty = target.provide(request);
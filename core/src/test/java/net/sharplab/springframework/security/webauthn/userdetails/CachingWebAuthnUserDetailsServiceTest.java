@@ -0,0 +1,138 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.authenticator.AuthenticatorImpl;
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import org.junit.Test;
+import org.springframework.security.core.CredentialsContainer;
+
+import java.time.Duration;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class CachingWebAuthnUserDetailsServiceTest {
+
+    private WebAuthnUserDetailsService delegate = mock(WebAuthnUserDetailsService.class);
+    private CachingWebAuthnUserDetailsService target = new CachingWebAuthnUserDetailsService(delegate, 100, Duration.ofMinutes(10));
+
+    @Test
+    public void loadUserByCredentialId_test() {
+        WebAuthnUserDetails user = createUser("john");
+        when(delegate.loadUserByCredentialId(any())).thenReturn(user);
+
+        assertThat(target.loadUserByCredentialId(new byte[]{0x01})).isEqualTo(user);
+        assertThat(target.loadUserByCredentialId(new byte[]{0x01})).isEqualTo(user);
+
+        verify(delegate, times(1)).loadUserByCredentialId(any());
+        assertThat(target.getHitCount()).isEqualTo(1);
+        assertThat(target.getMissCount()).isEqualTo(1);
+        assertThat(target.getSize()).isEqualTo(1);
+    }
+
+    @Test
+    public void loadUserByCredentialId_test_returns_copy() {
+        when(delegate.loadUserByCredentialId(any())).thenReturn(createUser("john"));
+
+        WebAuthnUserDetails first = target.loadUserByCredentialId(new byte[]{0x01});
+        ((CredentialsContainer) first).eraseCredentials();
+        WebAuthnUserDetails second = target.loadUserByCredentialId(new byte[]{0x01});
+
+        assertThat(second).isNotSameAs(first);
+        assertThat(first.getPassword()).isNull();
+        assertThat(second.getPassword()).isEqualTo("dummy");
+    }
+
+    @Test
+    public void loadUserByCredentialId_test_advances_cached_counter() {
+        when(delegate.loadUserByCredentialId(any())).thenReturn(createUser("john"));
+
+        Authenticator first = target.loadUserByCredentialId(new byte[]{0x01}).getAuthenticators().iterator().next();
+        Authenticator second = target.loadUserByCredentialId(new byte[]{0x01}).getAuthenticators().iterator().next();
+        first.setCounter(5);
+        second.setCounter(3);
+
+        assertThat(first.getCounter()).isEqualTo(5);
+        assertThat(second.getCounter()).isEqualTo(3);
+        assertThat(target.loadUserByCredentialId(new byte[]{0x01}).getAuthenticators().iterator().next().getCounter()).isEqualTo(5);
+    }
+
+    @Test
+    public void loadUserByCredentialId_test_with_not_found() {
+        when(delegate.loadUserByCredentialId(any())).thenThrow(new CredentialIdNotFoundException("not found"));
+
+        assertThatThrownBy(() -> target.loadUserByCredentialId(new byte[]{0x01})).isInstanceOf(CredentialIdNotFoundException.class);
+        assertThat(target.getSize()).isZero();
+    }
+
+    @Test
+    public void addAuthenticator_test_invalidates_user() {
+        when(delegate.loadUserByCredentialId(any())).thenReturn(createUser("john"));
+        target.loadUserByCredentialId(new byte[]{0x01});
+
+        target.addAuthenticator("john", new AuthenticatorImpl(null, null, 0));
+
+        verify(delegate).addAuthenticator(eq("john"), any());
+        assertThat(target.getSize()).isZero();
+    }
+
+    @Test
+    public void removeAuthenticator_test_invalidates_credential() {
+        when(delegate.loadUserByCredentialId(any())).thenReturn(createUser("john"));
+        target.loadUserByCredentialId(new byte[]{0x01});
+
+        target.removeAuthenticator("john", new byte[]{0x01});
+        target.loadUserByCredentialId(new byte[]{0x01});
+
+        verify(delegate).removeAuthenticator("john", new byte[]{0x01});
+        verify(delegate, times(2)).loadUserByCredentialId(any());
+    }
+
+    @Test
+    public void invalidate_test_keeps_other_users() {
+        when(delegate.loadUserByCredentialId(new byte[]{0x01})).thenReturn(createUser("john"));
+        when(delegate.loadUserByCredentialId(new byte[]{0x02})).thenReturn(createUser("paul"));
+        target.loadUserByCredentialId(new byte[]{0x01});
+        target.loadUserByCredentialId(new byte[]{0x02});
+
+        target.invalidate("john");
+
+        assertThat(target.getSize()).isEqualTo(1);
+    }
+
+    @Test
+    public void loadUserByUsername_test_is_not_cached() {
+        WebAuthnUserDetails user = createUser("john");
+        when(delegate.loadUserByUsername("john")).thenReturn(user);
+
+        target.loadUserByUsername("john");
+        target.loadUserByUsername("john");
+
+        verify(delegate, times(2)).loadUserByUsername("john");
+    }
+
+    private WebAuthnUserDetails createUser(String username) {
+        Authenticator authenticator = new AuthenticatorImpl(null, null, 0);
+        return new WebAuthnUserDetailsImpl(new byte[32], username, "dummy",
+                Collections.singletonList(authenticator), Collections.emptyList());
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.userdetails;
+
+import com.webauthn4j.authenticator.Authenticator;
+import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class CredentialIdFilteringWebAuthnUserDetailsServiceTest {
+
+    private WebAuthnUserDetailsService delegate = mock(WebAuthnUserDetailsService.class);
+    private List<byte[]> credentialIds = new CopyOnWriteArrayList<>();
+    private CredentialIdFilteringWebAuthnUserDetailsService target =
+            new CredentialIdFilteringWebAuthnUserDetailsService(delegate, () -> credentialIds, 100, Duration.ofMinutes(1));
+
+    @Before
+    public void setup() {
+        credentialIds.add(new byte[]{0x01});
+        target.setExpectedCredentials(1000);
+        target.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() {
+        target.destroy();
+    }
+
+    @Test
+    public void afterPropertiesSet_test_rebuilds_in_background() throws InterruptedException {
+        target.setRebuildInterval(Duration.ofMillis(10));
+        target.afterPropertiesSet();
+        WebAuthnUserDetails user = mock(WebAuthnUserDetails.class);
+        when(delegate.loadUserByCredentialId(new byte[]{0x02})).thenReturn(user);
+
+        // registered on another node
+        credentialIds.add(new byte[]{0x02});
+
+        WebAuthnUserDetails loaded = null;
+        for (int i = 0; i < 500 && loaded == null; i++) {
+            try {
+                loaded = target.loadUserByCredentialId(new byte[]{0x02});
+            } catch (CredentialIdNotFoundException e) {
+                Thread.sleep(10);
+            }
+        }
+        assertThat(loaded).isEqualTo(user);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void setRebuildInterval_test_with_zero() {
+        target.setRebuildInterval(Duration.ZERO);
+    }
+
+    @Test
+    public void loadUserByCredentialId_test_with_known_credentialId() {
+        WebAuthnUserDetails user = mock(WebAuthnUserDetails.class);
+        when(delegate.loadUserByCredentialId(new byte[]{0x01})).thenReturn(user);
+
+        assertThat(target.loadUserByCredentialId(new byte[]{0x01})).isEqualTo(user);
+    }
+
+    @Test
+    public void loadUserByCredentialId_test_rejects_unknown_credentialId_without_delegate() {
+        assertThatThrownBy(() -> target.loadUserByCredentialId(new byte[]{0x02})).isInstanceOf(CredentialIdNotFoundException.class);
+
+        verify(delegate, never()).loadUserByCredentialId(any());
+        assertThat(target.getRejectedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void loadUserByCredentialId_test_remembers_not_found() {
+        target.removeAuthenticator("john", new byte[]{0x01});
+        when(delegate.loadUserByCredentialId(any())).thenThrow(new CredentialIdNotFoundException("not found"));
+
+        assertThatThrownBy(() -> target.loadUserByCredentialId(new byte[]{0x01})).isInstanceOf(CredentialIdNotFoundException.class);
+        assertThatThrownBy(() -> target.loadUserByCredentialId(new byte[]{0x01})).isInstanceOf(CredentialIdNotFoundException.class);
+
+        verify(delegate, times(1)).loadUserByCredentialId(any());
+    }
+
+    @Test
+    public void addAuthenticator_test_registers_credentialId() {
+        Authenticator authenticator = mock(Authenticator.class, RETURNS_DEEP_STUBS);
+        when(authenticator.getAttestedCredentialData().getCredentialId()).thenReturn(new byte[]{0x02});
+        WebAuthnUserDetails user = mock(WebAuthnUserDetails.class);
+        when(delegate.loadUserByCredentialId(new byte[]{0x02})).thenReturn(user);
+
+        target.addAuthenticator("john", authenticator);
+
+        verify(delegate).addAuthenticator("john", authenticator);
+        assertThat(target.loadUserByCredentialId(new byte[]{0x02})).isEqualTo(user);
+    }
+
+    @Test
+    public void rebuild_test_picks_up_credentialIds_added_elsewhere() {
+        WebAuthnUserDetails user = mock(WebAuthnUserDetails.class);
+        when(delegate.loadUserByCredentialId(new byte[]{0x03})).thenReturn(user);
+        credentialIds.add(new byte[]{0x03});
+
+        target.rebuild();
+
+        assertThat(target.loadUserByCredentialId(new byte[]{0x03})).isEqualTo(user);
+    }
+}
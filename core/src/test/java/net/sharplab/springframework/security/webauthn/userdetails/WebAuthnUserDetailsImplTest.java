@@ -19,13 +19,19 @@ package net.sharplab.springframework.security.webauthn.userdetails;
 
 import com.webauthn4j.authenticator.Authenticator;
 import com.webauthn4j.authenticator.AuthenticatorImpl;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
 import org.junit.Test;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
 
 public class WebAuthnUserDetailsImplTest {
 
@@ -46,4 +52,74 @@ public class WebAuthnUserDetailsImplTest {
         assertThat(userDetails.getAuthenticators()).isEqualTo(Collections.singletonList(authenticator));
     }
 
+    @Test
+    public void findAuthenticator_test() {
+        Authenticator authenticatorA = createAuthenticator(new byte[]{0x01});
+        Authenticator authenticatorB = createAuthenticator(new byte[]{0x02});
+        WebAuthnUserDetailsImpl userDetails = new WebAuthnUserDetailsImpl(
+                new byte[32],
+                "dummy",
+                "dummy",
+                new ArrayList<>(Arrays.asList(authenticatorA, authenticatorB)),
+                Collections.emptyList());
+
+        assertThat(userDetails.findAuthenticator(new byte[]{0x01})).isSameAs(authenticatorA);
+        assertThat(userDetails.findAuthenticator(new byte[]{0x02})).isSameAs(authenticatorB);
+        assertThat(userDetails.findAuthenticator(new byte[]{0x03})).isNull();
+    }
+
+    @Test
+    public void findAuthenticator_test_after_modification() {
+        Authenticator authenticatorA = createAuthenticator(new byte[]{0x01});
+        Authenticator authenticatorB = createAuthenticator(new byte[]{0x02});
+        List<Authenticator> authenticators = new ArrayList<>(Collections.singletonList(authenticatorA));
+        WebAuthnUserDetailsImpl userDetails = new WebAuthnUserDetailsImpl(
+                new byte[32],
+                "dummy",
+                "dummy",
+                authenticators,
+                Collections.emptyList());
+        assertThat(userDetails.findAuthenticator(new byte[]{0x02})).isNull();
+
+        userDetails.getAuthenticators().add(authenticatorB);
+        assertThat(userDetails.findAuthenticator(new byte[]{0x02})).isSameAs(authenticatorB);
+    }
+
+    @Test
+    public void findAuthenticator_test_after_replacement() {
+        Authenticator authenticatorA = createAuthenticator(new byte[]{0x01});
+        Authenticator authenticatorB = createAuthenticator(new byte[]{0x02});
+        WebAuthnUserDetailsImpl userDetails = new WebAuthnUserDetailsImpl(
+                new byte[32],
+                "dummy",
+                "dummy",
+                new ArrayList<>(Collections.singletonList(authenticatorA)),
+                Collections.emptyList());
+        assertThat(userDetails.findAuthenticator(new byte[]{0x01})).isSameAs(authenticatorA);
+
+        userDetails.getAuthenticators().set(0, authenticatorB);
+        assertThat(userDetails.findAuthenticator(new byte[]{0x01})).isNull();
+        assertThat(userDetails.findAuthenticator(new byte[]{0x02})).isSameAs(authenticatorB);
+    }
+
+    @Test
+    public void findAuthenticator_test_does_not_rebuild_index_on_miss() {
+        Authenticator authenticator = spy(createAuthenticator(new byte[]{0x01}));
+        WebAuthnUserDetailsImpl userDetails = new WebAuthnUserDetailsImpl(
+                new byte[32],
+                "dummy",
+                "dummy",
+                new ArrayList<>(Collections.singletonList(authenticator)),
+                Collections.emptyList());
+
+        assertThat(userDetails.findAuthenticator(new byte[]{0x02})).isNull();
+        assertThat(userDetails.findAuthenticator(new byte[]{0x03})).isNull();
+        assertThat(userDetails.findAuthenticator(new byte[]{0x01})).isSameAs(authenticator);
+
+        verify(authenticator, times(1)).getAttestedCredentialData();
+    }
+
+    private Authenticator createAuthenticator(byte[] credentialId) {
+        return new AuthenticatorImpl(new AttestedCredentialData(AAGUID.ZERO, credentialId, null), null, 0);
+    }
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.util;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BloomFilterTest {
+
+    @Test
+    public void mightContain_test() {
+        BloomFilter target = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            target.put(key(i));
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(target.mightContain(key(i))).isTrue();
+        }
+        int falsePositives = 0;
+        for (int i = 10_000; i < 20_000; i++) {
+            if (target.mightContain(key(i))) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives).isLessThan(300);
+    }
+
+    @Test
+    public void mightContain_test_with_empty_filter() {
+        BloomFilter target = new BloomFilter(100, 0.01);
+
+        assertThat(target.mightContain(new byte[0])).isFalse();
+        assertThat(target.mightContain(key(1))).isFalse();
+    }
+
+    private byte[] key(int value) {
+        return ByteBuffer.allocate(16).putInt(value).putInt(12, ~value).array();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.webauthn.util;
+
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ExpiringCacheTest {
+
+    private ExpiringCache<String, String> target = new ExpiringCache<>(160, Duration.ofMinutes(1));
+
+    @Test
+    public void get_test() {
+        target.put("key", "value");
+
+        assertThat(target.get("key")).isEqualTo("value");
+        assertThat(target.get("other")).isNull();
+        assertThat(target.getHitCount()).isEqualTo(1);
+        assertThat(target.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void get_test_with_loader() {
+        AtomicInteger loadCount = new AtomicInteger();
+
+        assertThat(target.get("key", key -> key + loadCount.incrementAndGet())).isEqualTo("key1");
+        assertThat(target.get("key", key -> key + loadCount.incrementAndGet())).isEqualTo("key1");
+        assertThat(loadCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void expiration_test() {
+        Instant now = Instant.now();
+        target.setClock(Clock.fixed(now, ZoneOffset.UTC));
+        target.put("key", "value");
+
+        target.setClock(Clock.fixed(now.plus(Duration.ofMinutes(2)), ZoneOffset.UTC));
+
+        assertThat(target.get("key")).isNull();
+        assertThat(target.size()).isZero();
+    }
+
+    @Test
+    public void refreshAhead_test() {
+        Instant now = Instant.now();
+        target.setClock(Clock.fixed(now, ZoneOffset.UTC));
+        target.setRefreshAfter(Duration.ofSeconds(30));
+        target.setRefreshExecutor(Runnable::run);
+        target.put("key", "old");
+
+        target.setClock(Clock.fixed(now.plus(Duration.ofSeconds(40)), ZoneOffset.UTC));
+
+        assertThat(target.get("key", key -> "new")).isEqualTo("old");
+        assertThat(target.get("key")).isEqualTo("new");
+    }
+
+    @Test
+    public void eviction_test() {
+        for (int i = 0; i < 1000; i++) {
+            target.put("key" + i, "value");
+        }
+
+        assertThat(target.size()).isLessThanOrEqualTo(160);
+        assertThat(target.getEvictionCount()).isEqualTo(1000L - target.size());
+    }
+
+    @Test
+    public void removeIf_test() {
+        target.put("a", "x");
+        target.put("b", "y");
+
+        target.removeIf((key, value) -> value.equals("x"));
+
+        assertThat(target.get("a")).isNull();
+        assertThat(target.get("b")).isEqualTo("y");
+    }
+
+    @Test
+    public void invalidation_during_load_test() {
+        String value = target.get("key", key -> {
+            target.remove(key);
+            return "stale";
+        });
+
+        assertThat(value).isEqualTo("stale");
+        assertThat(target.get("key")).isNull();
+    }
+}
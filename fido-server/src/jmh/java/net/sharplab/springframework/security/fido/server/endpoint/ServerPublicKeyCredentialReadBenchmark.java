@@ -0,0 +1,83 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.fido.server.endpoint;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.webauthn4j.converter.util.JsonConverter;
+import com.webauthn4j.converter.util.ObjectConverter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading an assertion result payload through {@link JsonConverter}, as the endpoint filters do,
+ * with an {@link ObjectReader} built once for the payload type on the same {@link ObjectMapper}.
+ * The difference is the generic type resolution {@link JsonConverter} performs for every call.
+ * <p>
+ * Run with <code>./gradlew :spring-security-webauthn-fido-server:jmh -PjmhInclude=ServerPublicKeyCredentialReadBenchmark</code>.
+ * Allocation per operation, reported with the gc profiler, is more stable than the timings on a busy host.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerPublicKeyCredentialReadBenchmark {
+
+    private static final TypeReference<ServerPublicKeyCredential<ServerAuthenticatorAssertionResponse>> CREDENTIAL_TYPE_REFERENCE
+            = new TypeReference<ServerPublicKeyCredential<ServerAuthenticatorAssertionResponse>>() {
+    };
+
+    private byte[] payload;
+    private JsonConverter jsonConverter;
+    private ObjectReader objectReader;
+
+    @Setup
+    public void setup() {
+        payload = ("{\"id\":\"2PZVbz1ad2jqD3vEz6Wuvi-4VmMgLbwsxuS0hdvS6Us\","
+                + "\"rawId\":\"2PZVbz1ad2jqD3vEz6Wuvi-4VmMgLbwsxuS0hdvS6Us\","
+                + "\"type\":\"public-key\","
+                + "\"response\":{"
+                + "\"clientDataJSON\":\"eyJjaGFsbGVuZ2UiOiJBQUFBQUFBQUFBQUFBQUFBQUFBQUFBIiwib3JpZ2luIjoiaHR0cHM6Ly9leGFtcGxlLmNvbSIsInR5cGUiOiJ3ZWJhdXRobi5nZXQifQ\","
+                + "\"authenticatorData\":\"SZYN5YgOjGh0NBcPZHZgW4_krrmihjLHmVzzuoMdl2MBAAAAAQ\","
+                + "\"signature\":\"MEUCIQCv7EqsBRtf2E4o_BjzZfBwNpP8fLjd5y6TUOLWt5l9DQIgAZR3mHwyWzIcC4dOHj4ku6dT6v8mi-HVKoP1NExKmSQ\","
+                + "\"userHandle\":\"\"},"
+                + "\"clientExtensionResults\":\"\"}").getBytes(StandardCharsets.UTF_8);
+
+        ObjectMapper jsonMapper = new ObjectMapper();
+        jsonConverter = new ObjectConverter(jsonMapper, new ObjectMapper(new CBORFactory())).getJsonConverter();
+        objectReader = jsonMapper.readerFor(CREDENTIAL_TYPE_REFERENCE);
+    }
+
+    @Benchmark
+    public ServerPublicKeyCredential<ServerAuthenticatorAssertionResponse> jsonConverter() {
+        return jsonConverter.readValue(new ByteArrayInputStream(payload), CREDENTIAL_TYPE_REFERENCE);
+    }
+
+    @Benchmark
+    public ServerPublicKeyCredential<ServerAuthenticatorAssertionResponse> objectReader() throws IOException {
+        return objectReader.readValue(new ByteArrayInputStream(payload));
+    }
+}
@@ -16,7 +16,10 @@
 
 package net.sharplab.springframework.security.fido.server.config.configurer;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.metadata.converter.jackson.WebAuthnMetadataJSONModule;
 import net.sharplab.springframework.security.fido.server.endpoint.*;
 import net.sharplab.springframework.security.webauthn.WebAuthnRegistrationRequestValidator;
 import net.sharplab.springframework.security.webauthn.config.configurers.WebAuthnConfigurerUtil;
@@ -47,6 +50,8 @@ public class FidoServerConfigurer<H extends HttpSecurityBuilder<H>> extends Abst
     // ================================================================================================
     private OptionsProvider optionsProvider;
     private ObjectConverter objectConverter;
+    private ObjectMapper jsonMapper;
+    private ObjectMapper cborMapper;
 
     public static FidoServerConfigurer<HttpSecurity> fidoServer() {
         return new FidoServerConfigurer<>();
@@ -60,7 +65,15 @@ public class FidoServerConfigurer<H extends HttpSecurityBuilder<H>> extends Abst
         }
         http.setSharedObject(OptionsProvider.class, optionsProvider);
         if (objectConverter == null) {
-            objectConverter = WebAuthnConfigurerUtil.getObjectConverter(http);
+            ApplicationContext applicationContext = http.getSharedObject(ApplicationContext.class);
+            if (applicationContext.getBeanNamesForType(ObjectConverter.class).length == 0) {
+                // the default mappers are kept, so that the endpoint filters build their payload readers on them
+                ObjectMapper defaultJsonMapper = new ObjectMapper();
+                defaultJsonMapper.registerModule(new WebAuthnMetadataJSONModule());
+                objectMappers(defaultJsonMapper, new ObjectMapper(new CBORFactory()));
+            } else {
+                objectConverter = WebAuthnConfigurerUtil.getObjectConverter(http);
+            }
         }
         http.setSharedObject(ObjectConverter.class, objectConverter);
 
@@ -95,6 +108,25 @@ public class FidoServerConfigurer<H extends HttpSecurityBuilder<H>> extends Abst
     public FidoServerConfigurer<H> jsonConverter(ObjectConverter objectConverter) {
         Assert.notNull(objectConverter, "objectConverter must not be null");
         this.objectConverter = objectConverter;
+        this.jsonMapper = null;
+        this.cborMapper = null;
+        return this;
+    }
+
+    /**
+     * Sets the {@link ObjectMapper}s to build the {@link ObjectConverter} on. Unlike {@link #jsonConverter(ObjectConverter)},
+     * the endpoint filters can then build their payload readers once from the JSON mapper.
+     *
+     * @param jsonMapper JSON {@link ObjectMapper}
+     * @param cborMapper CBOR {@link ObjectMapper}
+     * @return the {@link FidoServerConfigurer} for additional customization
+     */
+    public FidoServerConfigurer<H> objectMappers(ObjectMapper jsonMapper, ObjectMapper cborMapper) {
+        Assert.notNull(jsonMapper, "jsonMapper must not be null");
+        Assert.notNull(cborMapper, "cborMapper must not be null");
+        this.objectConverter = new ObjectConverter(jsonMapper, cborMapper);
+        this.jsonMapper = jsonMapper;
+        this.cborMapper = cborMapper;
         return this;
     }
 
@@ -106,6 +138,9 @@ public class FidoServerConfigurer<H extends HttpSecurityBuilder<H>> extends Abst
 
         @Override
         protected FidoServerAttestationOptionsEndpointFilter createInstance() {
+            if (jsonMapper != null) {
+                return new FidoServerAttestationOptionsEndpointFilter(jsonMapper, cborMapper, optionsProvider);
+            }
             return new FidoServerAttestationOptionsEndpointFilter(objectConverter, optionsProvider);
         }
     }
@@ -176,7 +211,9 @@ public class FidoServerConfigurer<H extends HttpSecurityBuilder<H>> extends Abst
 
         @Override
         protected FidoServerAttestationResultEndpointFilter createInstance() {
-            FidoServerAttestationResultEndpointFilter filter = new FidoServerAttestationResultEndpointFilter(objectConverter, webAuthnUserDetailsService, webAuthnRegistrationRequestValidator);
+            FidoServerAttestationResultEndpointFilter filter = jsonMapper != null
+                    ? new FidoServerAttestationResultEndpointFilter(jsonMapper, cborMapper, webAuthnUserDetailsService, webAuthnRegistrationRequestValidator)
+                    : new FidoServerAttestationResultEndpointFilter(objectConverter, webAuthnUserDetailsService, webAuthnRegistrationRequestValidator);
             filter.setUsernameNotFoundHandler(usernameNotFoundHandler);
             return filter;
         }
@@ -222,6 +259,9 @@ public class FidoServerConfigurer<H extends HttpSecurityBuilder<H>> extends Abst
 
         @Override
         protected FidoServerAssertionOptionsEndpointFilter createInstance() {
+            if (jsonMapper != null) {
+                return new FidoServerAssertionOptionsEndpointFilter(jsonMapper, cborMapper, optionsProvider);
+            }
             return new FidoServerAssertionOptionsEndpointFilter(objectConverter, optionsProvider);
         }
     }
@@ -255,7 +295,9 @@ public class FidoServerConfigurer<H extends HttpSecurityBuilder<H>> extends Abst
             ApplicationContext applicationContext = http.getSharedObject(ApplicationContext.class);
             String[] beanNames = applicationContext.getBeanNamesForType(FidoServerAssertionResultEndpointFilter.class);
             if (beanNames.length == 0) {
-                serverEndpointFilter = new FidoServerAssertionResultEndpointFilter(objectConverter, serverPropertyProvider);
+                serverEndpointFilter = jsonMapper != null
+                        ? new FidoServerAssertionResultEndpointFilter(jsonMapper, cborMapper, serverPropertyProvider)
+                        : new FidoServerAssertionResultEndpointFilter(objectConverter, serverPropertyProvider);
                 if (filterProcessingUrl != null) {
                     serverEndpointFilter.setFilterProcessesUrl(filterProcessingUrl);
                 }
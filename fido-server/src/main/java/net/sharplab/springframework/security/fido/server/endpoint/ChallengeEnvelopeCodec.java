@@ -0,0 +1,176 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.fido.server.endpoint;
+
+import com.webauthn4j.data.UserVerificationRequirement;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fixed-layout binary codec of the envelope which carries request state inside the challenge
+ * between an options request and the following result request.
+ * <p>
+ * Layout:
+ * <pre>
+ * version (1 byte, {@link #VERSION})
+ * random bytes length (2 bytes, big endian) | random bytes
+ * username length (2 bytes, big endian, {@link #NULL_LENGTH} for null) | UTF-8 username
+ * user verification requirement (1 byte)
+ * </pre>
+ * Decoding never throws; a malformed envelope decodes as absent.
+ * Envelopes issued before this layout are CBOR maps, which never start with {@link #VERSION}
+ * (see {@link #isLegacyEnvelope(byte[])}).
+ */
+final class ChallengeEnvelopeCodec {
+
+    static final byte VERSION = 0x01;
+
+    private static final int NULL_LENGTH = 0xFFFF;
+    private static final int MAX_LENGTH = 0xFFFE;
+
+    private static final byte UV_ABSENT = 0;
+    private static final byte UV_REQUIRED = 1;
+    private static final byte UV_PREFERRED = 2;
+    private static final byte UV_DISCOURAGED = 3;
+
+    private ChallengeEnvelopeCodec() {
+    }
+
+    /**
+     * Encodes an envelope
+     *
+     * @param randomBytes      random part of the challenge
+     * @param username         username, nullable
+     * @param userVerification user verification requirement, nullable
+     * @return envelope bytes
+     */
+    static byte[] encode(byte[] randomBytes, String username, UserVerificationRequirement userVerification) {
+        byte[] usernameBytes = username == null ? null : username.getBytes(StandardCharsets.UTF_8);
+        int usernameLength = usernameBytes == null ? 0 : usernameBytes.length;
+        if (randomBytes.length > MAX_LENGTH || usernameLength > MAX_LENGTH) {
+            throw new IllegalArgumentException("challenge envelope field must not exceed " + MAX_LENGTH + " bytes");
+        }
+        byte[] bytes = new byte[1 + 2 + randomBytes.length + 2 + usernameLength + 1];
+        int offset = 0;
+        bytes[offset++] = VERSION;
+        offset = putLength(bytes, offset, randomBytes.length);
+        System.arraycopy(randomBytes, 0, bytes, offset, randomBytes.length);
+        offset += randomBytes.length;
+        offset = putLength(bytes, offset, usernameBytes == null ? NULL_LENGTH : usernameLength);
+        if (usernameBytes != null) {
+            System.arraycopy(usernameBytes, 0, bytes, offset, usernameLength);
+            offset += usernameLength;
+        }
+        bytes[offset] = encodeUserVerification(userVerification);
+        return bytes;
+    }
+
+    /**
+     * Returns true if the bytes look like an envelope issued in the former CBOR map form
+     *
+     * @param bytes challenge value
+     * @return true if the first byte is a CBOR map header
+     */
+    static boolean isLegacyEnvelope(byte[] bytes) {
+        return bytes.length > 0 && (bytes[0] & 0xE0) == 0xA0;
+    }
+
+    /**
+     * Decodes the username
+     *
+     * @param bytes envelope bytes
+     * @return username, or null if absent or malformed
+     */
+    static String decodeUsername(byte[] bytes) {
+        int offset = usernameOffset(bytes);
+        if (offset < 0) {
+            return null;
+        }
+        int length = getLength(bytes, offset);
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        return new String(bytes, offset + 2, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes the user verification requirement
+     *
+     * @param bytes envelope bytes
+     * @return user verification requirement, or null if absent or malformed
+     */
+    static UserVerificationRequirement decodeUserVerification(byte[] bytes) {
+        if (usernameOffset(bytes) < 0) {
+            return null;
+        }
+        switch (bytes[bytes.length - 1]) {
+            case UV_REQUIRED:
+                return UserVerificationRequirement.REQUIRED;
+            case UV_PREFERRED:
+                return UserVerificationRequirement.PREFERRED;
+            case UV_DISCOURAGED:
+                return UserVerificationRequirement.DISCOURAGED;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Validates the layout and returns the offset of the username length field
+     *
+     * @param bytes envelope bytes
+     * @return offset of the username length field, or -1 if the bytes are not a well-formed envelope
+     */
+    private static int usernameOffset(byte[] bytes) {
+        if (bytes.length < 1 + 2 + 2 + 1 || bytes[0] != VERSION) {
+            return -1;
+        }
+        int offset = 1 + 2 + getLength(bytes, 1);
+        if (offset + 2 + 1 > bytes.length) {
+            return -1;
+        }
+        int usernameLength = getLength(bytes, offset);
+        int expectedLength = offset + 2 + (usernameLength == NULL_LENGTH ? 0 : usernameLength) + 1;
+        return expectedLength == bytes.length ? offset : -1;
+    }
+
+    private static byte encodeUserVerification(UserVerificationRequirement userVerification) {
+        if (userVerification == null) {
+            return UV_ABSENT;
+        }
+        switch (userVerification) {
+            case REQUIRED:
+                return UV_REQUIRED;
+            case PREFERRED:
+                return UV_PREFERRED;
+            case DISCOURAGED:
+                return UV_DISCOURAGED;
+            default:
+                throw new IllegalArgumentException("Unknown userVerification: " + userVerification);
+        }
+    }
+
+    private static int putLength(byte[] bytes, int offset, int length) {
+        bytes[offset] = (byte) (length >>> 8);
+        bytes[offset + 1] = (byte) length;
+        return offset + 2;
+    }
+
+    private static int getLength(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+    }
+}
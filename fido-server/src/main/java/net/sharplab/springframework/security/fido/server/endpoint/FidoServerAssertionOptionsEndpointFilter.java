@@ -16,6 +16,7 @@
 
 package net.sharplab.springframework.security.fido.server.endpoint;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.webauthn4j.converter.util.ObjectConverter;
 import com.webauthn4j.data.client.challenge.Challenge;
 import com.webauthn4j.data.client.challenge.DefaultChallenge;
@@ -26,9 +27,6 @@ import net.sharplab.springframework.security.webauthn.options.OptionsProvider;
 import org.springframework.util.Assert;
 
 import javax.servlet.http.HttpServletRequest;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -47,10 +45,28 @@ public class FidoServerAssertionOptionsEndpointFilter extends ServerEndpointFilt
     // ================================================================================================
 
     private OptionsProvider optionsProvider;
+    private ServerPayloadReader<ServerPublicKeyCredentialGetOptionsRequest> payloadReader;
 
     public FidoServerAssertionOptionsEndpointFilter(ObjectConverter objectConverter, OptionsProvider optionsProvider) {
+        this(objectConverter, null, optionsProvider);
+    }
+
+    /**
+     * Constructor with the {@link ObjectMapper}s to build the {@link ObjectConverter} on. The payload reader is built
+     * once from the JSON mapper, instead of resolving the payload type on each request.
+     *
+     * @param jsonMapper JSON {@link ObjectMapper}, configured by the {@link ObjectConverter}
+     * @param cborMapper CBOR {@link ObjectMapper}
+     * @param optionsProvider {@link OptionsProvider}
+     */
+    public FidoServerAssertionOptionsEndpointFilter(ObjectMapper jsonMapper, ObjectMapper cborMapper, OptionsProvider optionsProvider) {
+        this(new ObjectConverter(jsonMapper, cborMapper), jsonMapper, optionsProvider);
+    }
+
+    private FidoServerAssertionOptionsEndpointFilter(ObjectConverter objectConverter, ObjectMapper jsonMapper, OptionsProvider optionsProvider) {
         super(FILTER_URL, objectConverter);
         this.optionsProvider = optionsProvider;
+        this.payloadReader = new ServerPayloadReader<>(objectConverter, jsonMapper, ServerPublicKeyCredentialGetOptionsRequest.class);
         checkConfig();
     }
 
@@ -68,14 +84,7 @@ public class FidoServerAssertionOptionsEndpointFilter extends ServerEndpointFilt
 
     @Override
     protected ServerResponse processRequest(HttpServletRequest request) {
-        InputStream inputStream;
-        try {
-            inputStream = request.getInputStream();
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        }
-        ServerPublicKeyCredentialGetOptionsRequest serverRequest =
-                objectConverter.getJsonConverter().readValue(inputStream, ServerPublicKeyCredentialGetOptionsRequest.class);
+        ServerPublicKeyCredentialGetOptionsRequest serverRequest = payloadReader.read(request);
         String username = serverRequest.getUsername();
         Challenge challenge = serverEndpointFilterUtil.encodeUserVerification(new DefaultChallenge(), serverRequest.getUserVerification());
         AssertionOptions options = optionsProvider.getAssertionOptions(request, username, challenge);
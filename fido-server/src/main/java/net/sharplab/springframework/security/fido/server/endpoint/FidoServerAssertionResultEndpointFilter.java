@@ -17,8 +17,8 @@
 package net.sharplab.springframework.security.fido.server.endpoint;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.webauthn4j.converter.CollectedClientDataConverter;
-import com.webauthn4j.converter.util.JsonConverter;
 import com.webauthn4j.converter.util.ObjectConverter;
 import com.webauthn4j.data.UserVerificationRequirement;
 import com.webauthn4j.data.client.CollectedClientData;
@@ -26,6 +26,7 @@ import com.webauthn4j.server.ServerProperty;
 import com.webauthn4j.util.Base64UrlUtil;
 import net.sharplab.springframework.security.fido.server.validator.ServerPublicKeyCredentialValidator;
 import net.sharplab.springframework.security.webauthn.WebAuthnAssertionAuthenticationToken;
+import net.sharplab.springframework.security.webauthn.challenge.ChallengeRepository;
 import net.sharplab.springframework.security.webauthn.request.WebAuthnAuthenticationRequest;
 import net.sharplab.springframework.security.webauthn.server.ServerPropertyProvider;
 import org.springframework.http.HttpMethod;
@@ -37,9 +38,6 @@ import org.springframework.util.Assert;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.UncheckedIOException;
 import java.util.Collections;
 import java.util.List;
 
@@ -50,12 +48,13 @@ public class FidoServerAssertionResultEndpointFilter extends AbstractAuthenticat
      */
     public static final String FILTER_URL = "/webauthn/assertion/result";
 
-    private JsonConverter jsonConverter;
-    private ServerPropertyProvider serverPropertyProvider;
-    private ServerPublicKeyCredentialValidator<ServerAuthenticatorAssertionResponse> serverPublicKeyCredentialValidator;
-    private TypeReference<ServerPublicKeyCredential<ServerAuthenticatorAssertionResponse>> credentialTypeRef
+    private static final TypeReference<ServerPublicKeyCredential<ServerAuthenticatorAssertionResponse>> CREDENTIAL_TYPE_REFERENCE
             = new TypeReference<ServerPublicKeyCredential<ServerAuthenticatorAssertionResponse>>() {
     };
+
+    private ServerPayloadReader<ServerPublicKeyCredential<ServerAuthenticatorAssertionResponse>> payloadReader;
+    private ServerPropertyProvider serverPropertyProvider;
+    private ServerPublicKeyCredentialValidator<ServerAuthenticatorAssertionResponse> serverPublicKeyCredentialValidator;
     private CollectedClientDataConverter collectedClientDataConverter;
     private ServerEndpointFilterUtil serverEndpointFilterUtil;
 
@@ -65,9 +64,29 @@ public class FidoServerAssertionResultEndpointFilter extends AbstractAuthenticat
             ObjectConverter objectConverter,
             ServerPropertyProvider serverPropertyProvider,
             RequestMatcher requiresAuthenticationRequestMatcher) {
+        this(objectConverter, null, serverPropertyProvider, requiresAuthenticationRequestMatcher);
+    }
+
+    /**
+     * Constructor with the {@link ObjectMapper}s to build the {@link ObjectConverter} on. The payload reader is built
+     * once from the JSON mapper, instead of resolving the payload type on each request.
+     *
+     * @param jsonMapper JSON {@link ObjectMapper}, configured by the {@link ObjectConverter}
+     * @param cborMapper CBOR {@link ObjectMapper}
+     * @param serverPropertyProvider {@link ServerPropertyProvider}
+     */
+    public FidoServerAssertionResultEndpointFilter(ObjectMapper jsonMapper, ObjectMapper cborMapper, ServerPropertyProvider serverPropertyProvider) {
+        this(new ObjectConverter(jsonMapper, cborMapper), jsonMapper, serverPropertyProvider, new AntPathRequestMatcher(FILTER_URL, HttpMethod.POST.name()));
+    }
+
+    private FidoServerAssertionResultEndpointFilter(
+            ObjectConverter objectConverter,
+            ObjectMapper jsonMapper,
+            ServerPropertyProvider serverPropertyProvider,
+            RequestMatcher requiresAuthenticationRequestMatcher) {
         super(requiresAuthenticationRequestMatcher);
 
-        this.jsonConverter = objectConverter.getJsonConverter();
+        this.payloadReader = new ServerPayloadReader<>(objectConverter, jsonMapper, CREDENTIAL_TYPE_REFERENCE);
         this.serverPropertyProvider = serverPropertyProvider;
         this.serverPublicKeyCredentialValidator = new ServerPublicKeyCredentialValidator<>();
 
@@ -101,18 +120,12 @@ public class FidoServerAssertionResultEndpointFilter extends AbstractAuthenticat
 
     @Override
     public Authentication attemptAuthentication(HttpServletRequest request, HttpServletResponse response) {
-        InputStream inputStream;
-        try {
-            inputStream = request.getInputStream();
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        }
-        ServerPublicKeyCredential<ServerAuthenticatorAssertionResponse> credential =
-                jsonConverter.readValue(inputStream, credentialTypeRef);
+        ServerPublicKeyCredential<ServerAuthenticatorAssertionResponse> credential = payloadReader.read(request);
         serverPublicKeyCredentialValidator.validate(credential);
 
         ServerAuthenticatorAssertionResponse assertionResponse = credential.getResponse();
 
+        request.setAttribute(ChallengeRepository.CLIENT_DATA_JSON_ATTR_NAME, assertionResponse.getClientDataJSON());
         ServerProperty serverProperty = serverPropertyProvider.provide(request);
 
         CollectedClientData collectedClientData = collectedClientDataConverter.convert(assertionResponse.getClientDataJSON());
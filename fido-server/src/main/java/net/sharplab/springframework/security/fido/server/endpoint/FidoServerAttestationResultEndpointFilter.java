@@ -17,12 +17,12 @@
 package net.sharplab.springframework.security.fido.server.endpoint;
 
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.webauthn4j.converter.AttestationObjectConverter;
-import com.webauthn4j.converter.CollectedClientDataConverter;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.webauthn4j.converter.util.ObjectConverter;
 import com.webauthn4j.data.attestation.AttestationObject;
 import com.webauthn4j.data.client.CollectedClientData;
 import net.sharplab.springframework.security.fido.server.validator.ServerPublicKeyCredentialValidator;
+import net.sharplab.springframework.security.webauthn.WebAuthnRegistrationRequestValidationResponse;
 import net.sharplab.springframework.security.webauthn.WebAuthnRegistrationRequestValidator;
 import net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticator;
 import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetailsService;
@@ -30,9 +30,6 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.util.Assert;
 
 import javax.servlet.http.HttpServletRequest;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.UncheckedIOException;
 import java.util.Collections;
 import java.util.Set;
 
@@ -43,25 +40,49 @@ public class FidoServerAttestationResultEndpointFilter extends ServerEndpointFil
      */
     public static final String FILTER_URL = "/webauthn/attestation/result";
 
+    private static final TypeReference<ServerPublicKeyCredential<ServerAuthenticatorAttestationResponse>> CREDENTIAL_TYPE_REFERENCE
+            = new TypeReference<ServerPublicKeyCredential<ServerAuthenticatorAttestationResponse>>() {
+    };
+
     private WebAuthnUserDetailsService webAuthnUserDetailsService;
-    private AttestationObjectConverter attestationObjectConverter;
-    private CollectedClientDataConverter collectedClientDataConverter;
     private WebAuthnRegistrationRequestValidator webAuthnRegistrationRequestValidator;
     private ServerPublicKeyCredentialValidator<ServerAuthenticatorAttestationResponse> serverPublicKeyCredentialValidator;
+    private ServerPayloadReader<ServerPublicKeyCredential<ServerAuthenticatorAttestationResponse>> payloadReader;
 
     private UsernameNotFoundHandler usernameNotFoundHandler = new DefaultUsernameNotFoundHandler();
-    private TypeReference<ServerPublicKeyCredential<ServerAuthenticatorAttestationResponse>> credentialTypeRef
-            = new TypeReference<ServerPublicKeyCredential<ServerAuthenticatorAttestationResponse>>() {
-    };
 
     public FidoServerAttestationResultEndpointFilter(
             ObjectConverter objectConverter,
             WebAuthnUserDetailsService webAuthnUserDetailsService,
             WebAuthnRegistrationRequestValidator webAuthnRegistrationRequestValidator) {
+        this(objectConverter, null, webAuthnUserDetailsService, webAuthnRegistrationRequestValidator);
+    }
+
+    /**
+     * Constructor with the {@link ObjectMapper}s to build the {@link ObjectConverter} on. The payload reader is built
+     * once from the JSON mapper, instead of resolving the payload type on each request.
+     *
+     * @param jsonMapper JSON {@link ObjectMapper}, configured by the {@link ObjectConverter}
+     * @param cborMapper CBOR {@link ObjectMapper}
+     * @param webAuthnUserDetailsService           {@link WebAuthnUserDetailsService}
+     * @param webAuthnRegistrationRequestValidator {@link WebAuthnRegistrationRequestValidator}
+     */
+    public FidoServerAttestationResultEndpointFilter(
+            ObjectMapper jsonMapper,
+            ObjectMapper cborMapper,
+            WebAuthnUserDetailsService webAuthnUserDetailsService,
+            WebAuthnRegistrationRequestValidator webAuthnRegistrationRequestValidator) {
+        this(new ObjectConverter(jsonMapper, cborMapper), jsonMapper, webAuthnUserDetailsService, webAuthnRegistrationRequestValidator);
+    }
+
+    private FidoServerAttestationResultEndpointFilter(
+            ObjectConverter objectConverter,
+            ObjectMapper jsonMapper,
+            WebAuthnUserDetailsService webAuthnUserDetailsService,
+            WebAuthnRegistrationRequestValidator webAuthnRegistrationRequestValidator) {
         super(FILTER_URL, objectConverter);
-        this.attestationObjectConverter = new AttestationObjectConverter(objectConverter);
-        this.collectedClientDataConverter = new CollectedClientDataConverter(objectConverter);
         this.serverPublicKeyCredentialValidator = new ServerPublicKeyCredentialValidator<>();
+        this.payloadReader = new ServerPayloadReader<>(objectConverter, jsonMapper, CREDENTIAL_TYPE_REFERENCE);
 
         this.webAuthnUserDetailsService = webAuthnUserDetailsService;
         this.webAuthnRegistrationRequestValidator = webAuthnRegistrationRequestValidator;
@@ -82,25 +103,19 @@ public class FidoServerAttestationResultEndpointFilter extends ServerEndpointFil
 
     @Override
     protected ServerResponse processRequest(HttpServletRequest request) {
-        InputStream inputStream;
-        try {
-            inputStream = request.getInputStream();
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        }
-        ServerPublicKeyCredential<ServerAuthenticatorAttestationResponse> credential =
-                this.objectConverter.getJsonConverter().readValue(inputStream, credentialTypeRef);
+        ServerPublicKeyCredential<ServerAuthenticatorAttestationResponse> credential = payloadReader.read(request);
         serverPublicKeyCredentialValidator.validate(credential);
         ServerAuthenticatorAttestationResponse response = credential.getResponse();
-        CollectedClientData collectedClientData = collectedClientDataConverter.convert(response.getClientDataJSON());
-        AttestationObject attestationObject = attestationObjectConverter.convert(response.getAttestationObject());
         Set<String> transports = Collections.emptySet();
-        webAuthnRegistrationRequestValidator.validate(
+        // the validator parses clientDataJSON and attestationObject, so its result is used rather than parsing them again
+        WebAuthnRegistrationRequestValidationResponse validationResponse = webAuthnRegistrationRequestValidator.validate(
                 request,
                 response.getClientDataJSON(),
                 response.getAttestationObject(),
                 transports,
                 credential.getClientExtensionResults());
+        CollectedClientData collectedClientData = validationResponse.getCollectedClientData();
+        AttestationObject attestationObject = validationResponse.getAttestationObject();
 
         WebAuthnAuthenticator webAuthnAuthenticator =
                 new WebAuthnAuthenticator(
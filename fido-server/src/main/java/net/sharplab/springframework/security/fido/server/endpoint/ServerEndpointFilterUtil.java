@@ -22,6 +22,7 @@ import com.webauthn4j.converter.util.ObjectConverter;
 import com.webauthn4j.data.UserVerificationRequirement;
 import com.webauthn4j.data.client.challenge.Challenge;
 import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import net.sharplab.springframework.security.webauthn.util.ServletUtil;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.security.authentication.InsufficientAuthenticationException;
@@ -43,9 +44,7 @@ class ServerEndpointFilterUtil {
     }
 
     void writeResponse(HttpServletResponse httpServletResponse, ServerResponse response) throws IOException {
-        String responseText = jsonConverter.writeValueAsString(response);
-        httpServletResponse.setContentType("application/json");
-        httpServletResponse.getWriter().print(responseText);
+        ServletUtil.writeJson(httpServletResponse, jsonConverter.writeValueAsBytes(response));
     }
 
     void writeErrorResponse(HttpServletResponse httpServletResponse, RuntimeException e) throws IOException {
@@ -61,46 +60,47 @@ class ServerEndpointFilterUtil {
             errorResponse = new ErrorResponse("The server encountered an internal error");
             statusCode = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
         }
-        String errorResponseText = jsonConverter.writeValueAsString(errorResponse);
-        httpServletResponse.setContentType("application/json");
-        httpServletResponse.getWriter().print(errorResponseText);
         httpServletResponse.setStatus(statusCode);
+        ServletUtil.writeJson(httpServletResponse, jsonConverter.writeValueAsBytes(errorResponse));
     }
 
     Challenge encodeUsername(Challenge challenge, String username) {
-        UsernameEncodedChallengeEnvelope envelope = new UsernameEncodedChallengeEnvelope();
-        envelope.setChallenge(challenge.getValue());
-        envelope.setUsername(username);
-        byte[] bytes = cborConverter.writeValueAsBytes(envelope);
-        return new DefaultChallenge(bytes);
+        return new DefaultChallenge(ChallengeEnvelopeCodec.encode(challenge.getValue(), username, null));
     }
 
     String decodeUsername(Challenge challenge) {
-        try {
-            UsernameEncodedChallengeEnvelope envelope = cborConverter.readValue(challenge.getValue(), UsernameEncodedChallengeEnvelope.class);
-            return envelope.getUsername();
-        } catch (RuntimeException e) {
-            return null;
+        byte[] value = challenge.getValue();
+        if (ChallengeEnvelopeCodec.isLegacyEnvelope(value)) {
+            try {
+                UsernameEncodedChallengeEnvelope envelope = cborConverter.readValue(value, UsernameEncodedChallengeEnvelope.class);
+                return envelope.getUsername();
+            } catch (RuntimeException e) {
+                return null;
+            }
         }
+        return ChallengeEnvelopeCodec.decodeUsername(value);
     }
 
     Challenge encodeUserVerification(Challenge challenge, UserVerificationRequirement userVerification) {
-        UserVerificationEncodedChallengeEnvelope envelope = new UserVerificationEncodedChallengeEnvelope();
-        envelope.setChallenge(challenge.getValue());
-        envelope.setUserVerification(userVerification);
-        byte[] bytes = cborConverter.writeValueAsBytes(envelope);
-        return new DefaultChallenge(bytes);
+        return new DefaultChallenge(ChallengeEnvelopeCodec.encode(challenge.getValue(), null, userVerification));
     }
 
     UserVerificationRequirement decodeUserVerification(Challenge challenge) {
-        try {
-            UserVerificationEncodedChallengeEnvelope envelope = cborConverter.readValue(challenge.getValue(), UserVerificationEncodedChallengeEnvelope.class);
-            return envelope.getUserVerification();
-        } catch (RuntimeException e) {
-            return null;
+        byte[] value = challenge.getValue();
+        if (ChallengeEnvelopeCodec.isLegacyEnvelope(value)) {
+            try {
+                UserVerificationEncodedChallengeEnvelope envelope = cborConverter.readValue(value, UserVerificationEncodedChallengeEnvelope.class);
+                return envelope.getUserVerification();
+            } catch (RuntimeException e) {
+                return null;
+            }
         }
+        return ChallengeEnvelopeCodec.decodeUserVerification(value);
     }
 
+    /**
+     * Envelope in the former CBOR form, kept to decode challenges issued before {@link ChallengeEnvelopeCodec}
+     */
     static class UsernameEncodedChallengeEnvelope {
         private String username;
         private byte[] challenge;
@@ -122,6 +122,9 @@ class ServerEndpointFilterUtil {
         }
     }
 
+    /**
+     * Former CBOR form of the user verification envelope, see {@link UsernameEncodedChallengeEnvelope}
+     */
     static class UserVerificationEncodedChallengeEnvelope {
         private UserVerificationRequirement userVerification;
         private byte[] challenge;
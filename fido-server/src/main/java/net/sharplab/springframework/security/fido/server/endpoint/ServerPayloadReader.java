@@ -0,0 +1,94 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package net.sharplab.springframework.security.fido.server.endpoint;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import com.webauthn4j.converter.exception.DataConversionException;
+import com.webauthn4j.converter.util.JsonConverter;
+import com.webauthn4j.converter.util.ObjectConverter;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Reads the JSON payload of an endpoint request as a fixed type.
+ * <p>
+ * Given the {@link ObjectMapper} the {@link ObjectConverter} was built on, an {@link ObjectReader} specialized for the
+ * type is built once and reused for every request. Otherwise the payload is read through {@link JsonConverter}, which
+ * resolves the type and looks up its deserializer on every call.
+ *
+ * @param <T> payload type
+ */
+class ServerPayloadReader<T> {
+
+    //~ Instance fields
+    // ================================================================================================
+    private final JsonConverter jsonConverter;
+    private final TypeReference<T> typeReference;
+    private final Class<T> type;
+    private final ObjectReader objectReader;
+
+    // ~ Constructors
+    // ===================================================================================================
+
+    ServerPayloadReader(ObjectConverter objectConverter, ObjectMapper jsonMapper, TypeReference<T> typeReference) {
+        this.jsonConverter = objectConverter.getJsonConverter();
+        this.typeReference = typeReference;
+        this.type = null;
+        this.objectReader = jsonMapper == null ? null : jsonMapper.readerFor(typeReference);
+    }
+
+    ServerPayloadReader(ObjectConverter objectConverter, ObjectMapper jsonMapper, Class<T> type) {
+        this.jsonConverter = objectConverter.getJsonConverter();
+        this.typeReference = null;
+        this.type = type;
+        this.objectReader = jsonMapper == null ? null : jsonMapper.readerFor(type);
+    }
+
+    // ~ Methods
+    // ========================================================================================================
+
+    T read(HttpServletRequest request) {
+        InputStream inputStream;
+        try {
+            inputStream = request.getInputStream();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (objectReader == null) {
+            return typeReference != null ? jsonConverter.readValue(inputStream, typeReference) : jsonConverter.readValue(inputStream, type);
+        }
+        try {
+            return objectReader.readValue(inputStream);
+        } catch (MismatchedInputException e) {
+            // same translation as JsonConverter
+            throw new DataConversionException("Input data does not match expected form", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    boolean isPrebuilt() {
+        return objectReader != null;
+    }
+}
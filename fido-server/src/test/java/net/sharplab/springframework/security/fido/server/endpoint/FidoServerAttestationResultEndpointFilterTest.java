@@ -0,0 +1,83 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.fido.server.endpoint;
+
+import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.attestation.AttestationObject;
+import com.webauthn4j.data.attestation.authenticator.AAGUID;
+import com.webauthn4j.data.attestation.authenticator.AttestedCredentialData;
+import com.webauthn4j.data.attestation.authenticator.AuthenticatorData;
+import com.webauthn4j.data.attestation.statement.NoneAttestationStatement;
+import com.webauthn4j.data.client.ClientDataType;
+import com.webauthn4j.data.client.CollectedClientData;
+import com.webauthn4j.data.client.Origin;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
+import net.sharplab.springframework.security.webauthn.WebAuthnRegistrationRequestValidationResponse;
+import net.sharplab.springframework.security.webauthn.WebAuthnRegistrationRequestValidator;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetailsService;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class FidoServerAttestationResultEndpointFilterTest {
+
+    private ObjectConverter objectConverter = new ObjectConverter();
+    private WebAuthnUserDetailsService userDetailsService = mock(WebAuthnUserDetailsService.class);
+    private WebAuthnRegistrationRequestValidator registrationRequestValidator = mock(WebAuthnRegistrationRequestValidator.class);
+
+    private FidoServerAttestationResultEndpointFilter target =
+            new FidoServerAttestationResultEndpointFilter(objectConverter, userDetailsService, registrationRequestValidator);
+
+    @Test
+    public void processRequest_uses_validation_response_test() throws Exception {
+        Challenge challenge = new ServerEndpointFilterUtil(objectConverter).encodeUsername(new DefaultChallenge(), "john");
+        CollectedClientData collectedClientData = new CollectedClientData(ClientDataType.CREATE, challenge, new Origin("https://example.com"), null);
+        AttestedCredentialData attestedCredentialData = new AttestedCredentialData(AAGUID.ZERO, new byte[]{0x01, 0x02}, null);
+        AttestationObject attestationObject = new AttestationObject(
+                new AuthenticatorData<>(new byte[32], (byte) 0x41, 1, attestedCredentialData), new NoneAttestationStatement());
+        when(registrationRequestValidator.validate(any(), any(), any(), any(), any()))
+                .thenReturn(new WebAuthnRegistrationRequestValidationResponse(collectedClientData, attestationObject, null));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", FidoServerAttestationResultEndpointFilter.FILTER_URL);
+        // clientDataJSON and attestationObject are not parseable; only the validator is expected to parse them
+        request.setContent(("{\"id\":\"AQI\",\"rawId\":\"AQI\",\"type\":\"public-key\","
+                + "\"response\":{\"clientDataJSON\":\"clientData\",\"attestationObject\":\"attestationObject\"}}")
+                .getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        target.doFilter(request, response, new MockFilterChain());
+
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+        verify(registrationRequestValidator).validate(eq(request), eq("clientData"), eq("attestationObject"), any(), any());
+        ArgumentCaptor<Authenticator> captor = ArgumentCaptor.forClass(Authenticator.class);
+        verify(userDetailsService).addAuthenticator(eq("john"), captor.capture());
+        assertThat(captor.getValue().getAttestedCredentialData()).isEqualTo(attestedCredentialData);
+        assertThat(captor.getValue().getCounter()).isEqualTo(1);
+    }
+}
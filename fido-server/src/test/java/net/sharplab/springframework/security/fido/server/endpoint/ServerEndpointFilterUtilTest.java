@@ -17,12 +17,16 @@
 package net.sharplab.springframework.security.fido.server.endpoint;
 
 import com.webauthn4j.converter.util.ObjectConverter;
+import com.webauthn4j.data.UserVerificationRequirement;
+import com.webauthn4j.data.client.challenge.Challenge;
+import com.webauthn4j.data.client.challenge.DefaultChallenge;
 import org.junit.Test;
 import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.authentication.InsufficientAuthenticationException;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.util.Arrays;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -40,6 +44,19 @@ public class ServerEndpointFilterUtilTest {
         assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
         assertThat(response.getContentType()).isEqualTo("application/json");
         assertThat(response.getContentAsString()).isEqualTo("{\"status\":\"failed\",\"errorMessage\":\"The server encountered an internal error\"}");
+        assertThat(response.getContentLength()).isEqualTo(response.getContentAsByteArray().length);
+    }
+
+    @Test
+    public void writeResponse_test() throws IOException {
+
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        target.writeResponse(response, new AttestationResultSuccessResponse());
+
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+        assertThat(response.getContentType()).isEqualTo("application/json");
+        assertThat(response.getContentAsString()).isEqualTo("{\"status\":\"ok\",\"errorMessage\":\"\"}");
+        assertThat(response.getContentLength()).isEqualTo(response.getContentAsByteArray().length);
     }
 
     @Test
@@ -53,4 +70,69 @@ public class ServerEndpointFilterUtilTest {
         assertThat(response.getContentType()).isEqualTo("application/json");
         assertThat(response.getContentAsString()).isEqualTo("{\"status\":\"failed\",\"errorMessage\":\"Anonymous access is prohibited\"}");
     }
+
+    @Test
+    public void encodeUsername_decodeUsername_test() {
+        Challenge challenge = target.encodeUsername(new DefaultChallenge(), "john\u00e9");
+
+        assertThat(challenge.getValue()[0]).isEqualTo(ChallengeEnvelopeCodec.VERSION);
+        assertThat(target.decodeUsername(challenge)).isEqualTo("john\u00e9");
+        assertThat(target.decodeUserVerification(challenge)).isNull();
+    }
+
+    @Test
+    public void encodeUsername_with_null_username_test() {
+        Challenge challenge = target.encodeUsername(new DefaultChallenge(), null);
+
+        assertThat(target.decodeUsername(challenge)).isNull();
+    }
+
+    @Test
+    public void encodeUserVerification_decodeUserVerification_test() {
+        for (UserVerificationRequirement userVerification : UserVerificationRequirement.values()) {
+            Challenge challenge = target.encodeUserVerification(new DefaultChallenge(), userVerification);
+
+            assertThat(target.decodeUserVerification(challenge)).isEqualTo(userVerification);
+            assertThat(target.decodeUsername(challenge)).isNull();
+        }
+    }
+
+    @Test
+    public void encode_keeps_random_bytes_test() {
+        DefaultChallenge random = new DefaultChallenge();
+        Challenge first = target.encodeUsername(random, "john");
+        Challenge second = target.encodeUsername(new DefaultChallenge(), "john");
+
+        assertThat(Arrays.copyOfRange(first.getValue(), 3, 3 + random.getValue().length)).isEqualTo(random.getValue());
+        assertThat(first).isNotEqualTo(second);
+    }
+
+    @Test
+    public void decode_legacy_envelope_test() {
+        ObjectConverter objectConverter = new ObjectConverter();
+        ServerEndpointFilterUtil.UsernameEncodedChallengeEnvelope usernameEnvelope = new ServerEndpointFilterUtil.UsernameEncodedChallengeEnvelope();
+        usernameEnvelope.setChallenge(new DefaultChallenge().getValue());
+        usernameEnvelope.setUsername("john");
+        ServerEndpointFilterUtil.UserVerificationEncodedChallengeEnvelope userVerificationEnvelope = new ServerEndpointFilterUtil.UserVerificationEncodedChallengeEnvelope();
+        userVerificationEnvelope.setChallenge(new DefaultChallenge().getValue());
+        userVerificationEnvelope.setUserVerification(UserVerificationRequirement.REQUIRED);
+
+        Challenge usernameChallenge = new DefaultChallenge(objectConverter.getCborConverter().writeValueAsBytes(usernameEnvelope));
+        Challenge userVerificationChallenge = new DefaultChallenge(objectConverter.getCborConverter().writeValueAsBytes(userVerificationEnvelope));
+
+        assertThat(target.decodeUsername(usernameChallenge)).isEqualTo("john");
+        assertThat(target.decodeUserVerification(userVerificationChallenge)).isEqualTo(UserVerificationRequirement.REQUIRED);
+    }
+
+    @Test
+    public void decode_malformed_envelope_test() {
+        byte[] envelope = target.encodeUsername(new DefaultChallenge(), "john").getValue();
+        Challenge truncated = new DefaultChallenge(Arrays.copyOf(envelope, envelope.length - 1));
+        Challenge plain = new DefaultChallenge(new byte[]{0x00, 0x01, 0x02});
+
+        assertThat(target.decodeUsername(truncated)).isNull();
+        assertThat(target.decodeUserVerification(truncated)).isNull();
+        assertThat(target.decodeUsername(plain)).isNull();
+        assertThat(target.decodeUserVerification(new DefaultChallenge(new byte[0]))).isNull();
+    }
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2002-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.sharplab.springframework.security.fido.server.endpoint;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.webauthn4j.converter.exception.DataConversionException;
+import com.webauthn4j.converter.util.ObjectConverter;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ServerPayloadReaderTest {
+
+    private ObjectMapper jsonMapper = new ObjectMapper();
+    private ObjectConverter objectConverter = new ObjectConverter(jsonMapper, new ObjectMapper(new CBORFactory()));
+
+    @Test
+    public void read_test_with_prebuilt_reader() {
+        ServerPayloadReader<ServerPublicKeyCredentialGetOptionsRequest> target =
+                new ServerPayloadReader<>(objectConverter, jsonMapper, ServerPublicKeyCredentialGetOptionsRequest.class);
+
+        assertThat(target.isPrebuilt()).isTrue();
+        assertThat(target.read(createRequest("{\"username\":\"john\"}")).getUsername()).isEqualTo("john");
+    }
+
+    @Test
+    public void read_test_without_mapper() {
+        ServerPayloadReader<ServerPublicKeyCredentialGetOptionsRequest> target =
+                new ServerPayloadReader<>(objectConverter, null, ServerPublicKeyCredentialGetOptionsRequest.class);
+
+        assertThat(target.isPrebuilt()).isFalse();
+        assertThat(target.read(createRequest("{\"username\":\"john\"}")).getUsername()).isEqualTo("john");
+    }
+
+    @Test
+    public void read_test_with_mismatched_input() {
+        ServerPayloadReader<ServerPublicKeyCredentialGetOptionsRequest> target =
+                new ServerPayloadReader<>(objectConverter, jsonMapper, ServerPublicKeyCredentialGetOptionsRequest.class);
+
+        assertThatThrownBy(() -> target.read(createRequest("[\"john\"]"))).isInstanceOf(DataConversionException.class);
+    }
+
+    private MockHttpServletRequest createRequest(String json) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/");
+        request.setContent(json.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+}
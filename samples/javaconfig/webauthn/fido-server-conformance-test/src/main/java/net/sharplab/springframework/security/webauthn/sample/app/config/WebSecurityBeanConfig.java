@@ -39,9 +39,11 @@ import com.webauthn4j.validator.attestation.trustworthiness.certpath.TrustAnchor
 import com.webauthn4j.validator.attestation.trustworthiness.ecdaa.DefaultECDAATrustworthinessValidator;
 import com.webauthn4j.validator.attestation.trustworthiness.self.DefaultSelfAttestationTrustworthinessValidator;
 import net.sharplab.springframework.security.webauthn.WebAuthnRegistrationRequestValidator;
+import net.sharplab.springframework.security.webauthn.anchor.CachingCertPathTrustworthinessValidator;
 import net.sharplab.springframework.security.webauthn.challenge.ChallengeRepository;
 import net.sharplab.springframework.security.webauthn.challenge.HttpSessionChallengeRepository;
 import net.sharplab.springframework.security.webauthn.metadata.JsonFileResourceMetadataStatementsProvider;
+import net.sharplab.springframework.security.webauthn.metadata.RefreshingMetadataItemsProvider;
 import net.sharplab.springframework.security.webauthn.metadata.RestTemplateAdaptorHttpClient;
 import net.sharplab.springframework.security.webauthn.options.OptionsProvider;
 import net.sharplab.springframework.security.webauthn.options.OptionsProviderImpl;
@@ -148,7 +150,7 @@ public class WebSecurityBeanConfig {
 
     @Bean
     public CertPathTrustworthinessValidator certPathTrustworthinessValidator(TrustAnchorsResolver trustAnchorsResolver){
-        TrustAnchorCertPathTrustworthinessValidator trustAnchorCertPathTrustworthinessValidator = new TrustAnchorCertPathTrustworthinessValidator(trustAnchorsResolver);
+        TrustAnchorCertPathTrustworthinessValidator trustAnchorCertPathTrustworthinessValidator = new CachingCertPathTrustworthinessValidator(trustAnchorsResolver);
         trustAnchorCertPathTrustworthinessValidator.setFullChainProhibited(true);
         return trustAnchorCertPathTrustworthinessValidator;
     }
@@ -189,7 +191,8 @@ public class WebSecurityBeanConfig {
             metadataItemsProvider.setFidoMetadataServiceEndpoint(url);
             return metadataItemsProvider;
         }).forEach(list::add);
-        return new AggregatingMetadataItemsProvider(list);
+        // verifies and parses the TOCs in the background instead of on the registration path
+        return new RefreshingMetadataItemsProvider(new AggregatingMetadataItemsProvider(list));
     }
 
     @Bean
@@ -17,6 +17,7 @@
 package net.sharplab.springframework.security.webauthn.sample.domain.component;
 
 import com.webauthn4j.authenticator.Authenticator;
+import com.webauthn4j.data.AuthenticatorTransport;
 import com.webauthn4j.util.Base64UrlUtil;
 import net.sharplab.springframework.security.webauthn.authenticator.WebAuthnAuthenticator;
 import net.sharplab.springframework.security.webauthn.exception.CredentialIdNotFoundException;
@@ -27,6 +28,7 @@ import net.sharplab.springframework.security.webauthn.sample.domain.exception.We
 import net.sharplab.springframework.security.webauthn.sample.domain.exception.WebAuthnSampleEntityNotFoundException;
 import net.sharplab.springframework.security.webauthn.sample.domain.repository.AuthenticatorEntityRepository;
 import net.sharplab.springframework.security.webauthn.sample.domain.repository.UserEntityRepository;
+import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserCredentials;
 import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetails;
 import net.sharplab.springframework.security.webauthn.userdetails.WebAuthnUserDetailsService;
 import org.modelmapper.ModelMapper;
@@ -38,8 +40,15 @@ import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import org.terasoluna.gfw.common.message.ResultMessages;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * {@inheritDoc}
@@ -78,6 +87,26 @@ public class UserManagerImpl implements UserManager, WebAuthnUserDetailsService
                 .orElseThrow(() -> new UsernameNotFoundException(String.format("UserEntity with username'%s' is not found.", username)));
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public WebAuthnUserCredentials loadCredentialsByUsername(String username) {
+        byte[] userHandle = userEntityRepository.findUserHandleByEmailAddress(username)
+                .orElseThrow(() -> new UsernameNotFoundException(String.format("UserEntity with username'%s' is not found.", username)));
+        Map<ByteBuffer, Set<AuthenticatorTransport>> transportsMap = new LinkedHashMap<>();
+        for (Object[] row : authenticatorEntityRepository.findCredentialIdAndTransportByEmailAddress(username)) {
+            Set<AuthenticatorTransport> transports = transportsMap.computeIfAbsent(ByteBuffer.wrap((byte[]) row[0]), key -> new HashSet<>());
+            if (row[1] != null) {
+                transports.add((AuthenticatorTransport) row[1]);
+            }
+        }
+        List<WebAuthnUserCredentials.Credential> credentials = new ArrayList<>(transportsMap.size());
+        transportsMap.forEach((credentialId, transports) -> credentials.add(new WebAuthnUserCredentials.Credential(credentialId.array(), transports)));
+        return new WebAuthnUserCredentials(userHandle, credentials);
+    }
+
     @Override
     public WebAuthnUserDetails loadUserByCredentialId(byte[] credentialId) {
         AuthenticatorEntity authenticatorEntity = authenticatorEntityRepository.findOneByCredentialId(credentialId)
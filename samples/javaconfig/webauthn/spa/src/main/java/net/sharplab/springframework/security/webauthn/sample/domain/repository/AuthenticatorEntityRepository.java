@@ -21,6 +21,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -30,4 +31,11 @@ public interface AuthenticatorEntityRepository extends JpaRepository<Authenticat
 
     @Query("SELECT authenticator FROM AuthenticatorEntity authenticator WHERE authenticator.attestedCredentialData.credentialId = :credentialId")
     Optional<AuthenticatorEntity> findOneByCredentialId(@Param("credentialId") byte[] credentialId);
+
+    /**
+     * Returns pairs of credentialId and transport of the user's authenticators, without loading the entities.
+     * An authenticator appears once per transport, or once with a null transport if it has none.
+     */
+    @Query("SELECT authenticator.attestedCredentialData.credentialId, transport FROM AuthenticatorEntity authenticator LEFT JOIN authenticator.transports transport WHERE authenticator.user.emailAddress = :emailAddress ORDER BY authenticator.id")
+    List<Object[]> findCredentialIdAndTransportByEmailAddress(@Param("emailAddress") String emailAddress);
 }
@@ -36,4 +36,7 @@ public interface UserEntityRepository extends JpaRepository<UserEntity, Integer>
     Page<UserEntity> findAllByKeyword(Pageable pageable, @Param("keyword") String keyword);
 
     Optional<UserEntity> findOneByEmailAddress(String emailAddress);
+
+    @Query("SELECT user.userHandle FROM UserEntity user WHERE user.emailAddress = :emailAddress")
+    Optional<byte[]> findUserHandleByEmailAddress(@Param("emailAddress") String emailAddress);
 }